@@ -0,0 +1,80 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Benchmarks;
+
+import Output.OutputFormat;
+import Tree.BuildTree;
+import Tree.MathObject;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of converting trees into each of the formats shipped with DragMath, with <code>OutputFormat.convert</code>,
+ * which does not use the cache of converted expressions. The format files are read from the directory given by the
+ * system property <code>dragmath.formats</code>, or the <code>formats</code> directory of the working directory.
+ * @author Alex Billingsley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertBenchmark {
+
+    @Param({Corpus.SMALL, Corpus.MEDIUM, Corpus.DEEP, Corpus.WIDE})
+    public String size;
+
+    @Param({"Latex", "MathML", "Maple", "Maxima", "ASCIIMathML", "Tex", "MoodleTex"})
+    public String format;
+
+    private MathObject[] trees;
+    private OutputFormat output;
+    private StringBuffer buffer = new StringBuffer();
+
+    @Setup
+    public void setUp() throws Exception {
+        BuildTree.loadComponents();
+        trees = Corpus.getTrees(size);
+        // The format files are found in "formats/" of the code base, as in the applet
+        File formatDir = new File(System.getProperty("dragmath.formats", "formats")).getAbsoluteFile();
+        output = new OutputFormat(null, null, formatDir.getParentFile().toURI().toURL(), false, false);
+        output.readFormatFile(format);
+        if (output.getFormat() == null) {
+            throw new IllegalStateException("Cannot read format " + format + " from " + formatDir);
+        }
+    }
+
+    @Benchmark
+    public void convert(Blackhole blackhole) throws Exception {
+        int i = 0;
+        while (i < trees.length) {
+            buffer.setLength(0);
+            output.convert(trees[i], buffer);
+            blackhole.consume(buffer.length());
+            i++;
+        }
+    }
+}
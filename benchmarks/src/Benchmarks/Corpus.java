@@ -0,0 +1,127 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Benchmarks;
+
+import Tree.BuildTree;
+import Tree.MathObject;
+
+/**
+ * Expressions the benchmarks are run over, in four sizes: small expressions as typed into a single text box,
+ * medium expressions using most of the components, and deep and wide expressions that test the worst cases
+ * of the parser, tree builder and converters.
+ * @author Alex Billingsley
+ */
+public class Corpus {
+
+    /** Sizes of the corpus, used as the values of the <code>size</code> parameter of the benchmarks */
+    public static final String SMALL = "small";
+    public static final String MEDIUM = "medium";
+    public static final String DEEP = "deep";
+    public static final String WIDE = "wide";
+
+    /** Depth of the deep expressions, within the recursion the JEP parser can manage on a default stack */
+    public static final int DEPTH = 200;
+
+    /** Number of terms in the wide expressions, within the recursion of <code>BuildTree.convertJEPTree</code> on a default stack */
+    public static final int WIDTH = 1000;
+
+    private static final String[] SMALL_EXPRESSIONS = {
+        "x^2", "1/2", "a+b+c", "2x+1", "sin(x)", "\u03b1\u03b2", "x<3", "sqrt(2)", "-y", "abs(x)"
+    };
+
+    private static final String[] MEDIUM_EXPRESSIONS = {
+        "(-b+sqrt(b^2-4a*c))/(2a)",
+        "integrate(sin(x)^2*cos(x),x)",
+        "int(e^(-x^2),x,-\u221e,\u221e)",
+        "sum(1/n^2,n,1,\u221e)-\u03c0^2/6",
+        "product(1+1/k,k,1,n)",
+        "diff(ln(x^2+1),x)",
+        "a*(b+c)*(d+e)-f/(g+h)^2",
+        "arcsin(x)+arccos(x)-\u03c0/2",
+        "union(A,intersection(B,C))",
+        "det(M)*trace(N)<=x^3>=y",
+        "\u03b8-arctan(y/x)+2\u03c0k",
+        "sqrt(x^2+y^2)+abs(z-1)"
+    };
+
+    private Corpus() {
+    }
+
+    /** Returns the linear expressions of a size of corpus
+     * @param size one of <code>SMALL</code>, <code>MEDIUM</code>, <code>DEEP</code> or <code>WIDE</code>
+     * @return The expressions
+     */
+    public static String[] getExpressions(String size) {
+        if (size.equals(SMALL)) {
+            return (String[])SMALL_EXPRESSIONS.clone();
+        } else if (size.equals(MEDIUM)) {
+            return (String[])MEDIUM_EXPRESSIONS.clone();
+        } else if (size.equals(DEEP)) {
+            return new String[] {nest("(", "x", ")", DEPTH), nest("sin(", "x", ")", DEPTH), nest("(1+", "x", ")^2", DEPTH / 2)};
+        } else if (size.equals(WIDE)) {
+            return new String[] {repeat("x+", WIDTH) + "1", repeat("\u03b1\u03b2", WIDTH / 2), repeat("a*b/c-", WIDTH / 4) + "d"};
+        }
+        throw new IllegalArgumentException("Unknown corpus size: " + size);
+    }
+
+    /** Returns the trees of the expressions of a size of corpus
+     * @param size one of <code>SMALL</code>, <code>MEDIUM</code>, <code>DEEP</code> or <code>WIDE</code>
+     * @return The root node of the tree of each expression
+     * @throws org.nfunk.jep.ParseException if an expression cannot be parsed
+     */
+    public static MathObject[] getTrees(String size) throws org.nfunk.jep.ParseException {
+        String[] expressions = getExpressions(size);
+        MathObject[] trees = new MathObject[expressions.length];
+        int i = 0;
+        while (i < expressions.length) {
+            trees[i] = BuildTree.parseExpressionTree(expressions[i]);
+            i++;
+        }
+        return trees;
+    }
+
+    private static String nest(String open, String inner, String close, int depth) {
+        StringBuffer expression = new StringBuffer();
+        int i = 0;
+        while (i < depth) {
+            expression.append(open);
+            i++;
+        }
+        expression.append(inner);
+        i = 0;
+        while (i < depth) {
+            expression.append(close);
+            i++;
+        }
+        return expression.toString();
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuffer expression = new StringBuffer(text.length() * count);
+        int i = 0;
+        while (i < count) {
+            expression.append(text);
+            i++;
+        }
+        return expression.toString();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Benchmarks;
+
+import Tree.BuildTree;
+import Tree.ParseCache;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of parsing linear expressions: the fixes made before parsing, parsing with the JEP parser
+ * into a postfix expression or a tree, and parsing through the cache used by the text boxes.
+ * Each operation parses every expression of the corpus.
+ * @author Alex Billingsley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({Corpus.SMALL, Corpus.MEDIUM, Corpus.DEEP, Corpus.WIDE})
+    public String size;
+
+    private String[] expressions;
+
+    @Setup
+    public void setUp() throws Exception {
+        BuildTree.loadComponents();
+        expressions = Corpus.getExpressions(size);
+    }
+
+    @Benchmark
+    public void validateBeforeParsing(Blackhole blackhole) {
+        int i = 0;
+        while (i < expressions.length) {
+            blackhole.consume(BuildTree.validateBeforeParsing(expressions[i]));
+            i++;
+        }
+    }
+
+    /** Parses into a postfix expression with JEP, without the cache */
+    @Benchmark
+    public void parseExpression(Blackhole blackhole) throws Exception {
+        int i = 0;
+        while (i < expressions.length) {
+            blackhole.consume(BuildTree.parseExpression(expressions[i]));
+            i++;
+        }
+    }
+
+    /** Parses into a tree with JEP, without the cache */
+    @Benchmark
+    public void parseExpressionTree(Blackhole blackhole) throws Exception {
+        int i = 0;
+        while (i < expressions.length) {
+            blackhole.consume(BuildTree.parseExpressionTree(expressions[i]));
+            i++;
+        }
+    }
+
+    /** Parses as the text boxes do, where the expressions are found in the cache after the first operation */
+    @Benchmark
+    public void parseString(Blackhole blackhole) throws Exception {
+        int i = 0;
+        while (i < expressions.length) {
+            blackhole.consume(BuildTree.parseString(expressions[i], new java.util.Stack()));
+            i++;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ParseCache.getShared().clear();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Benchmarks;
+
+import Display.WSHelper;
+import Tree.BuildTree;
+import Tree.MathObject;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of saving and opening trees as strings with <code>WSHelper</code>, as done by the applet's
+ * <code>getFile</code> and <code>setFile</code>.
+ * @author Alex Billingsley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({Corpus.SMALL, Corpus.MEDIUM, Corpus.DEEP, Corpus.WIDE})
+    public String size;
+
+    private MathObject[] trees;
+    private String[] saved;
+
+    @Setup
+    public void setUp() throws Exception {
+        BuildTree.loadComponents();
+        trees = Corpus.getTrees(size);
+        saved = new String[trees.length];
+        int i = 0;
+        while (i < trees.length) {
+            saved[i] = WSHelper.OToS(trees[i]);
+            i++;
+        }
+    }
+
+    @Benchmark
+    public void objectToString(Blackhole blackhole) {
+        int i = 0;
+        while (i < trees.length) {
+            blackhole.consume(WSHelper.OToS(trees[i]));
+            i++;
+        }
+    }
+
+    @Benchmark
+    public void stringToObject(Blackhole blackhole) {
+        int i = 0;
+        while (i < saved.length) {
+            blackhole.consume(WSHelper.SToO(saved[i]));
+            i++;
+        }
+    }
+}
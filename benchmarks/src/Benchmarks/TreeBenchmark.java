@@ -0,0 +1,105 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Benchmarks;
+
+import Tree.BuildTree;
+import Tree.MathObject;
+import Tree.ParseCache;
+
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of building trees from postfix expressions with <code>BuildTree.toTree</code>, and of the
+ * operations on whole trees used by the caches. <code>toTree</code> uses up the postfix expression,
+ * so a copy of each expression is made before each operation, outside the time measured.
+ * @author Alex Billingsley
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark {
+
+    @Param({Corpus.SMALL, Corpus.MEDIUM, Corpus.DEEP, Corpus.WIDE})
+    public String size;
+
+    private Stack[] postfix;
+    private Stack[] copies;
+    private MathObject[] trees;
+
+    @Setup
+    public void setUp() throws Exception {
+        BuildTree.loadComponents();
+        String[] expressions = Corpus.getExpressions(size);
+        postfix = new Stack[expressions.length];
+        copies = new Stack[expressions.length];
+        int i = 0;
+        while (i < expressions.length) {
+            postfix[i] = BuildTree.parseExpression(expressions[i]);
+            i++;
+        }
+        trees = Corpus.getTrees(size);
+    }
+
+    @Setup(Level.Invocation)
+    public void copyPostfix() {
+        int i = 0;
+        while (i < postfix.length) {
+            copies[i] = ParseCache.copyStack(postfix[i]);
+            i++;
+        }
+    }
+
+    @Benchmark
+    public void toTree(Blackhole blackhole) {
+        int i = 0;
+        while (i < copies.length) {
+            MathObject tree = (MathObject)copies[i].pop();
+            BuildTree.toTree(tree, copies[i]);
+            blackhole.consume(tree);
+            i++;
+        }
+    }
+
+    @Benchmark
+    public void treeHashCode(Blackhole blackhole) {
+        int i = 0;
+        while (i < trees.length) {
+            blackhole.consume(trees[i].treeHashCode());
+            i++;
+        }
+    }
+
+    @Benchmark
+    public void copyTree(Blackhole blackhole) {
+        int i = 0;
+        while (i < trees.length) {
+            blackhole.consume(trees[i].copyTree());
+            i++;
+        }
+    }
+}
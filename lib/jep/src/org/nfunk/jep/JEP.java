@@ -160,6 +160,16 @@ public class JEP {
 		symTab = new SymbolTable(new VariableFactory());
 	}
 
+	/**
+	 * Creates a new SlotSymbolTable object as symTab, in which the values
+	 * of variables are kept in an array and can be read without locking.
+	 * It should be called straight after the JEP object is created, before
+	 * any constants or variables are added.
+	 */
+	public void initSlotSymTab() {
+		symTab = new SlotSymbolTable();
+	}
+
 	/**
 	 * Creates a new FunctionTable object as funTab.
 	 */
@@ -0,0 +1,197 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+package org.nfunk.jep;
+
+/**
+ * A SymbolTable which gives each variable a fixed slot when it is created,
+ * usually while an expression is parsed, and keeps the values of the variables
+ * in an array indexed by slot.
+ * <p>
+ * Reading a variable, either through {@link Variable#getValue()} or by slot with
+ * {@link #getValue(int)}, is then a plain array load with no lock taken and no
+ * name looked up, so separate instances can be evaluated concurrently without
+ * contention. Setting a value does not notify the observers of the variable
+ * unless {@link #setNotifyObservers(boolean)} is turned on.
+ * <p>
+ * Variables are still found by name through the Hashtable methods, for instance
+ * by the parser. Use {@link JEP#initSlotSymTab()} to use this table with JEP.
+ * <p>
+ * The slots of variables removed by {@link #remove(Object)}, {@link #clear()} or
+ * {@link #clearNonConstants()} are freed, and the remaining variables are moved
+ * into the lowest slots, so slots found before should be looked up again.
+ * Removed variables keep their last value.
+ *
+ * @see SlotVariable
+ */
+public class SlotSymbolTable extends SymbolTable
+{
+	private static final long serialVersionUID = -4125089367521904283L;
+
+	/** The values of the variables, indexed by slot */
+	Object[] values = new Object[16];
+	private SlotVariable[] variables = new SlotVariable[16];
+	private int size = 0;
+	private boolean notifyObservers = false;
+
+	public SlotSymbolTable()
+	{
+		this(new SlotVariableFactory());
+	}
+
+	private SlotSymbolTable(SlotVariableFactory varFac)
+	{
+		super(varFac);
+		varFac.table = this;
+	}
+
+	/**
+	 * Creates a variable in the next slot.
+	 */
+	SlotVariable newVariable(String name,Object value)
+	{
+		if (size == values.length) {
+			Object[] newValues = new Object[size * 2];
+			System.arraycopy(values,0,newValues,0,size);
+			SlotVariable[] newVariables = new SlotVariable[size * 2];
+			System.arraycopy(variables,0,newVariables,0,size);
+			values = newValues;
+			variables = newVariables;
+		}
+		SlotVariable var = new SlotVariable(name,value,this,size);
+		variables[size] = var;
+		size++;
+		return var;
+	}
+
+	/** Returns the number of slots, one for each variable in the table. */
+	public int getSlotCount() { return size; }
+
+	/**
+	 * Removes a variable, moving the variable in the last slot into its slot.
+	 */
+	public synchronized Object remove(Object key)
+	{
+		Object removed = super.remove(key);
+		if (removed instanceof SlotVariable && ((SlotVariable) removed).getSymbolTable() == this) {
+			SlotVariable var = (SlotVariable) removed;
+			int slot = var.getSlot();
+			var.detach();
+			size--;
+			if (slot != size) moveSlot(size,slot);
+			values[size] = null;
+			variables[size] = null;
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes all the variables, freeing all the slots.
+	 */
+	public synchronized void clear()
+	{
+		super.clear();
+		int i = 0;
+		while (i < size) {
+			variables[i].detach();
+			i++;
+		}
+		values = new Object[16];
+		variables = new SlotVariable[16];
+		size = 0;
+	}
+
+	/**
+	 * Removes all the variables which are not constants, keeping the constants
+	 * in the lowest slots in the order they were created.
+	 */
+	public synchronized void clearNonConstants()
+	{
+		int kept = 0;
+		int i = 0;
+		while (i < size) {
+			SlotVariable var = variables[i];
+			if (var.isConstant()) {
+				if (i != kept) moveSlot(i,kept);
+				kept++;
+			} else {
+				super.remove(var.getName());
+				var.detach();
+			}
+			i++;
+		}
+		while (i > kept) {
+			i--;
+			values[i] = null;
+			variables[i] = null;
+		}
+		size = kept;
+	}
+
+	/** Moves the variable in one slot to another, whose variable has been removed. */
+	private void moveSlot(int from,int to)
+	{
+		values[to] = values[from];
+		variables[to] = variables[from];
+		variables[to].setSlot(to);
+	}
+
+	/**
+	 * Returns the slot of the variable with the given name.
+	 * @return the slot, or -1 if the variable does not exist
+	 */
+	public int getSlot(String name)
+	{
+		Variable var = getVar(name);
+		if (var instanceof SlotVariable) return ((SlotVariable) var).getSlot();
+		return -1;
+	}
+
+	/** Returns the variable in a slot. */
+	public Variable getVar(int slot) { return variables[slot]; }
+
+	/** Returns the value of the variable in a slot. */
+	public Object getValue(int slot) { return values[slot]; }
+
+	/**
+	 * Sets the value of the variable in a slot. Constant values cannot be changed.
+	 * @return false if tried to change a constant value.
+	 */
+	public boolean setValue(int slot,Object value)
+	{
+		return variables[slot].setValue(value);
+	}
+
+	/**
+	 * Sets whether setting the value of a variable notifies its observers, as
+	 * {@link Variable#setValue(Object)} always does. Off by default.
+	 */
+	public void setNotifyObservers(boolean notifyObservers)
+	{
+		this.notifyObservers = notifyObservers;
+	}
+
+	/** Returns true if setting the value of a variable notifies its observers. */
+	public boolean getNotifyObservers() { return notifyObservers; }
+
+	/**
+	 * Creates the variables of a SlotSymbolTable.
+	 */
+	private static class SlotVariableFactory extends VariableFactory
+	{
+		SlotSymbolTable table;
+
+		public Variable createVariable(String name, Object value) {
+			return table.newVariable(name,value);
+		}
+
+		public Variable createVariable(String name)	{
+			return table.newVariable(name,null);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+package org.nfunk.jep;
+
+/**
+ * A variable of a {@link SlotSymbolTable}, whose value is kept in the
+ * table's array of values at a fixed slot.
+ * <p>
+ * Observers are only notified of changes to the value if the table's
+ * {@link SlotSymbolTable#setNotifyObservers(boolean)} is turned on.
+ * <p>
+ * A variable removed from its table is detached: it keeps its value itself,
+ * so expressions parsed before it was removed can still be evaluated, and
+ * has no table or slot.
+ */
+public class SlotVariable extends Variable
+{
+	private SlotSymbolTable table;
+	private int slot;
+	/** The value once the variable has been removed from its table */
+	private Object detachedValue;
+
+	/** Variables should only be created by a SlotSymbolTable. */
+	SlotVariable(String name,Object value,SlotSymbolTable table,int slot)
+	{
+		super(name,value);
+		this.table = table;
+		this.slot = slot;
+		table.values[slot] = value;
+	}
+
+	/** Returns the slot of the variable in its table, or -1 if it has been removed. */
+	public int getSlot() { return slot; }
+
+	/** Moves the variable to another slot of its table. */
+	void setSlot(int slot) { this.slot = slot; }
+
+	/** Returns the table holding the value of the variable, or null if it has been removed. */
+	public SlotSymbolTable getSymbolTable() { return table; }
+
+	/** Keeps the value in the variable, as it is removed from its table. */
+	void detach() {
+		detachedValue = table.values[slot];
+		table = null;
+		slot = -1;
+	}
+
+	public Object getValue() {
+		if(table == null) return detachedValue;
+		return table.values[slot];
+	}
+
+	/**
+	 * Sets the value of the variable. Constant values cannot be changed.
+	 * Observers are only notified if the table notifies observers.
+	 * @return false if tried to change a constant value.
+	 */
+	public boolean setValue(Object object) {
+		if(!setValueRaw(object)) return false;
+		if(table == null || table.getNotifyObservers()) {
+			setChanged();
+			notifyObservers(object);
+		}
+		return true;
+	}
+
+	protected boolean setValueRaw(Object object) {
+		if(isConstant()) return false;
+		setValidValue(true);
+		if(table == null)
+			detachedValue = object;
+		else
+			table.values[slot] = object;
+		return true;
+	}
+
+	public String toString() {
+		Object value = getValue();
+		if(!hasValidValue() || value == null)
+			return name + ": null";
+		else if(isConstant())
+			return name + ": " + value.toString() + " (Constant)";
+		else
+			return name + ": " + value.toString();
+	}
+}
@@ -0,0 +1,562 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+
+package org.nfunk.jep.evaluation;
+
+import java.io.*;
+import java.util.*;
+import org.nfunk.jep.*;
+import org.nfunk.jep.function.*;
+
+/**
+ * Compiles an expression to a JVM class, for expressions which are evaluated
+ * a very large number of times.
+ * <p>
+ * The class generated for an expression extends {@link CompiledExpression} and
+ * evaluates it on the operand stack of the JVM. Addition, subtraction,
+ * multiplication, division, modulus, negation and the functions of
+ * <code>java.lang.Math</code> are compiled to the equivalent instructions,
+ * the power and square root call methods of CompiledExpression which
+ * check whether the value is real, and other functions implementing
+ * {@link RealEvaluationI} are called through that interface.
+ * <p>
+ * Each class is defined by its own class loader so it can be unloaded once the
+ * CompiledExpression is no longer used. Expressions which cannot be evaluated by
+ * a {@link RealEvaluator}, or which are too large for a method, are not compiled
+ * and the CompiledExpression returned evaluates them with the RealEvaluator.
+ */
+public class BytecodeCompiler implements ParserVisitor {
+	private static final String SUPER_CLASS = "org/nfunk/jep/evaluation/CompiledExpression";
+	private static final String CLASS_PREFIX = "org/nfunk/jep/evaluation/GeneratedExpression";
+	private static final int MAX_CODE = 65535;
+
+	private static int classCount = 0;
+
+	// Instructions used by the generated code
+	private static final int ICONST_0 = 0x03;
+	private static final int DCONST_0 = 0x0e;
+	private static final int DCONST_1 = 0x0f;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int LDC2_W = 0x14;
+	private static final int DLOAD = 0x18;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int DALOAD = 0x31;
+	private static final int DSTORE = 0x39;
+	private static final int DASTORE = 0x52;
+	private static final int DADD = 0x63;
+	private static final int DSUB = 0x67;
+	private static final int DMUL = 0x6b;
+	private static final int DDIV = 0x6f;
+	private static final int DREM = 0x73;
+	private static final int DNEG = 0x77;
+	private static final int DRETURN = 0xaf;
+	private static final int RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int WIDE = 0xc4;
+
+	/** Functions compiled to a call of a method of java.lang.Math taking one double */
+	private static final Hashtable MATH_FUNCTIONS = new Hashtable();
+	static {
+		MATH_FUNCTIONS.put(Sine.class, "sin");
+		MATH_FUNCTIONS.put(Cosine.class, "cos");
+		MATH_FUNCTIONS.put(Tangent.class, "tan");
+		MATH_FUNCTIONS.put(ArcSine.class, "asin");
+		MATH_FUNCTIONS.put(ArcCosine.class, "acos");
+		MATH_FUNCTIONS.put(ArcTangent.class, "atan");
+		MATH_FUNCTIONS.put(Exp.class, "exp");
+		MATH_FUNCTIONS.put(Abs.class, "abs");
+		MATH_FUNCTIONS.put(Floor.class, "floor");
+		MATH_FUNCTIONS.put(Ceil.class, "ceil");
+	}
+
+	private Variable[] variables;
+
+	/** The constant pool of the class */
+	private ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private DataOutputStream pool = new DataOutputStream(poolBytes);
+	private Hashtable poolIndex = new Hashtable();
+	private int poolCount = 1;
+
+	/** The code of the run method */
+	private ByteArrayOutputStream code = new ByteArrayOutputStream();
+	private int stackDepth = 0;
+	private int maxStack = 0;
+	private int maxArgs = 0;
+	private Vector functions = new Vector();
+
+	private BytecodeCompiler(Variable[] variables) {
+		this.variables = variables;
+	}
+
+	/**
+	 * Compiles an expression.
+	 * @param topNode the top node of the tree representing the expression
+	 * @param symTab the symbol table passed to the EvaluatorVisitor, can be null
+	 * @return the compiled expression
+	 * @throws ParseException if a variable of the expression is not in the symbol table
+	 */
+	public static CompiledExpression compile(Node topNode,SymbolTable symTab) throws ParseException {
+		RealEvaluator fallback = new RealEvaluator(topNode,symTab);
+		CompiledExpression expression = null;
+		BytecodeCompiler compiler = new BytecodeCompiler(fallback.getVariables());
+		if (fallback.isReal()) {
+			expression = compiler.generate(topNode);
+		}
+		RealEvaluationI[] functions = new RealEvaluationI[compiler.functions.size()];
+		compiler.functions.copyInto(functions);
+		if (expression == null) {
+			expression = new CompiledExpression.Interpreted();
+		}
+		expression.init(fallback,functions,compiler.maxArgs);
+		return expression;
+	}
+
+	/**
+	 * Generates and loads the class.
+	 * @return an instance of the class, or null if it could not be generated or loaded
+	 */
+	private CompiledExpression generate(Node topNode) {
+		try {
+			topNode.jjtAccept(this,null);
+		} catch (ParseException e) {
+			return null;
+		}
+		op(DRETURN);
+		if (code.size() > MAX_CODE) {
+			return null;
+		}
+		String name;
+		synchronized (BytecodeCompiler.class) {
+			name = CLASS_PREFIX + classCount++;
+		}
+		try {
+			byte[] bytes = toClassFile(name);
+			Class c = new Loader(CompiledExpression.class.getClassLoader()).define(name.replace('/', '.'), bytes);
+			return (CompiledExpression)c.getDeclaredConstructor().newInstance();
+		} catch (IOException e) {
+			return null;
+		} catch (SecurityException e) {
+			// class loaders may not be created, for example in an applet
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the class file, with a constructor and the run method.
+	 * The class file version is that of Java 5, which does not need stack map frames.
+	 */
+	private byte[] toClassFile(String name) throws IOException {
+		int thisClass = classConstant(name);
+		int superClass = classConstant(SUPER_CLASS);
+		int superInit = methodConstant(SUPER_CLASS, "<init>", "()V");
+		int initName = utf8("<init>");
+		int initType = utf8("()V");
+		int runName = utf8("run");
+		int runType = utf8("([D)D");
+		int codeName = utf8("Code");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xcafebabe);
+		out.writeShort(0);
+		out.writeShort(49);
+		out.writeShort(poolCount);
+		pool.flush();
+		poolBytes.writeTo(out);
+		out.writeShort(0x0031); // public final super
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(0); // interfaces
+		out.writeShort(0); // fields
+		out.writeShort(2); // methods
+
+		// public <init>() { super(); }
+		out.writeShort(0x0001);
+		out.writeShort(initName);
+		out.writeShort(initType);
+		out.writeShort(1);
+		out.writeShort(codeName);
+		out.writeInt(12 + 5);
+		out.writeShort(1); // max stack
+		out.writeShort(1); // max locals
+		out.writeInt(5);
+		out.writeByte(ALOAD_0);
+		out.writeByte(INVOKESPECIAL);
+		out.writeShort(superInit);
+		out.writeByte(RETURN);
+		out.writeShort(0); // exception table
+		out.writeShort(0); // attributes
+
+		// protected double run(double[] vars)
+		out.writeShort(0x0004);
+		out.writeShort(runName);
+		out.writeShort(runType);
+		out.writeShort(1);
+		out.writeShort(codeName);
+		out.writeInt(12 + code.size());
+		out.writeShort(maxStack);
+		out.writeShort(2 + 2 * maxArgs);
+		out.writeInt(code.size());
+		code.writeTo(out);
+		out.writeShort(0);
+		out.writeShort(0);
+
+		out.writeShort(0); // class attributes
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	// The constant pool, each constant is written once
+
+	private int utf8(String s) throws IOException {
+		String key = "U" + s;
+		Integer index = (Integer)poolIndex.get(key);
+		if (index == null) {
+			pool.writeByte(1);
+			pool.writeUTF(s);
+			index = newConstant(key,1);
+		}
+		return index.intValue();
+	}
+
+	private int classConstant(String name) throws IOException {
+		String key = "C" + name;
+		Integer index = (Integer)poolIndex.get(key);
+		if (index == null) {
+			int nameIndex = utf8(name);
+			pool.writeByte(7);
+			pool.writeShort(nameIndex);
+			index = newConstant(key,1);
+		}
+		return index.intValue();
+	}
+
+	private int methodConstant(String owner,String name,String type) throws IOException {
+		String key = "M" + owner + "." + name + type;
+		Integer index = (Integer)poolIndex.get(key);
+		if (index == null) {
+			int ownerIndex = classConstant(owner);
+			int nameIndex = utf8(name);
+			int typeIndex = utf8(type);
+			pool.writeByte(12);
+			pool.writeShort(nameIndex);
+			pool.writeShort(typeIndex);
+			int nameAndType = newConstant("N" + name + type,1).intValue();
+			pool.writeByte(10);
+			pool.writeShort(ownerIndex);
+			pool.writeShort(nameAndType);
+			index = newConstant(key,1);
+		}
+		return index.intValue();
+	}
+
+	private int fieldConstant(String owner,String name,String type) throws IOException {
+		String key = "F" + owner + "." + name + type;
+		Integer index = (Integer)poolIndex.get(key);
+		if (index == null) {
+			int ownerIndex = classConstant(owner);
+			int nameIndex = utf8(name);
+			int typeIndex = utf8(type);
+			pool.writeByte(12);
+			pool.writeShort(nameIndex);
+			pool.writeShort(typeIndex);
+			int nameAndType = newConstant("N" + name + type,1).intValue();
+			pool.writeByte(9);
+			pool.writeShort(ownerIndex);
+			pool.writeShort(nameAndType);
+			index = newConstant(key,1);
+		}
+		return index.intValue();
+	}
+
+	private int doubleConstant(double value) throws IOException {
+		String key = "D" + Double.doubleToRawLongBits(value);
+		Integer index = (Integer)poolIndex.get(key);
+		if (index == null) {
+			pool.writeByte(6);
+			pool.writeDouble(value);
+			index = newConstant(key,2);
+		}
+		return index.intValue();
+	}
+
+	private int intConstant(int value) throws IOException {
+		String key = "I" + value;
+		Integer index = (Integer)poolIndex.get(key);
+		if (index == null) {
+			pool.writeByte(3);
+			pool.writeInt(value);
+			index = newConstant(key,1);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Records a constant which has been written, doubles take two entries of the pool.
+	 */
+	private Integer newConstant(String key,int size) throws IOException {
+		if (poolCount + size > 0xffff) {
+			throw new IOException("Too many constants to compile the expression");
+		}
+		Integer index = new Integer(poolCount);
+		poolIndex.put(key,index);
+		poolCount += size;
+		return index;
+	}
+
+	// The code of the run method, keeping track of the depth of the stack in words
+
+	private void op(int opcode) {
+		code.write(opcode);
+	}
+
+	private void u2(int value) {
+		code.write(value >> 8);
+		code.write(value);
+	}
+
+	private void push(int words) {
+		stackDepth += words;
+		if (stackDepth > maxStack) {
+			maxStack = stackDepth;
+		}
+	}
+
+	private void pop(int words) {
+		stackDepth -= words;
+	}
+
+	private void pushInt(int value) throws IOException {
+		if (value >= -1 && value <= 5) {
+			op(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			op(BIPUSH);
+			code.write(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			op(SIPUSH);
+			u2(value);
+		} else {
+			op(LDC_W);
+			u2(intConstant(value));
+		}
+		push(1);
+	}
+
+	private void pushDouble(double value) throws IOException {
+		long bits = Double.doubleToRawLongBits(value);
+		if (bits == 0L) {
+			op(DCONST_0);
+		} else if (value == 1.0) {
+			op(DCONST_1);
+		} else {
+			op(LDC2_W);
+			u2(doubleConstant(value));
+		}
+		push(2);
+	}
+
+	private void localDouble(int opcode,int local) {
+		if (local > 255) {
+			op(WIDE);
+			op(opcode);
+			u2(local);
+		} else {
+			op(opcode);
+			code.write(local);
+		}
+	}
+
+	/**
+	 * Calls a method of java.lang.Math on the doubles on the stack.
+	 */
+	private void invokeMath(String name,int nArgs) throws IOException {
+		String type = nArgs == 1 ? "(D)D" : "(DD)D";
+		op(INVOKESTATIC);
+		u2(methodConstant("java/lang/Math", name, type));
+		pop(2 * nArgs);
+		push(2);
+	}
+
+	/**
+	 * Calls a method of CompiledExpression on this and the doubles on the stack.
+	 */
+	private void invokeHelper(String name,int nArgs) throws IOException {
+		String type = nArgs == 1 ? "(D)D" : "(DD)D";
+		op(INVOKEVIRTUAL);
+		u2(methodConstant(SUPER_CLASS, name, type));
+		pop(1 + 2 * nArgs);
+		push(2);
+	}
+
+	/**
+	 * Calls a function through RealEvaluationI, storing its arguments
+	 * in locals then copying them into the args array.
+	 */
+	private void invokeFunction(RealEvaluationI function,int n) throws IOException {
+		int index = functions.indexOf(function);
+		if (index == -1) {
+			index = functions.size();
+			functions.addElement(function);
+		}
+		if (n > maxArgs) {
+			maxArgs = n;
+		}
+		int argsField = fieldConstant(SUPER_CLASS, "args", "[D");
+		int i = n - 1;
+		while (i >= 0) {
+			localDouble(DSTORE,2 + 2 * i);
+			pop(2);
+			i--;
+		}
+		i = 0;
+		while (i < n) {
+			op(ALOAD_0);
+			push(1);
+			op(GETFIELD);
+			u2(argsField);
+			pushInt(i);
+			localDouble(DLOAD,2 + 2 * i);
+			push(2);
+			op(DASTORE);
+			pop(4);
+			i++;
+		}
+		op(ALOAD_0);
+		push(1);
+		pushInt(index);
+		pushInt(n);
+		op(INVOKEVIRTUAL);
+		u2(methodConstant(SUPER_CLASS, "call", "(II)D"));
+		pop(3);
+		push(2);
+	}
+
+	/**
+	 * Returns true if a node is a constant integer, for which a power is always real.
+	 */
+	private boolean isIntegerConstant(Node node) {
+		if (!(node instanceof ASTConstant)) {
+			return false;
+		}
+		Object value = ((ASTConstant)node).getValue();
+		if (!(value instanceof Number)) {
+			return false;
+		}
+		double d = ((Number)value).doubleValue();
+		return d == (int)d;
+	}
+
+	public Object visit(ASTFunNode node, Object data) throws ParseException {
+		PostfixMathCommandI pfmc = node.getPFMC();
+		Class c = pfmc.getClass();
+		int n = node.jjtGetNumChildren();
+		try {
+			if ((c == Add.class || c == Multiply.class) && n > 0) {
+				// a+(b+c) as in Add.run
+				node.childrenAccept(this,data);
+				int i = 1;
+				while (i < n) {
+					op(c == Add.class ? DADD : DMUL);
+					pop(2);
+					i++;
+				}
+			} else if ((c == Subtract.class || c == Divide.class || c == Modulus.class) && n == 2) {
+				node.childrenAccept(this,data);
+				op(c == Subtract.class ? DSUB : c == Divide.class ? DDIV : DREM);
+				pop(2);
+			} else if (c == UMinus.class && n == 1) {
+				node.childrenAccept(this,data);
+				op(DNEG);
+			} else if (MATH_FUNCTIONS.containsKey(c) && n == 1) {
+				node.childrenAccept(this,data);
+				invokeMath((String)MATH_FUNCTIONS.get(c), 1);
+			} else if (c == ArcTangent2.class && n == 2) {
+				node.childrenAccept(this,data);
+				invokeMath("atan2", 2);
+			} else if (c == Power.class && n == 2 && isIntegerConstant(node.jjtGetChild(1))) {
+				node.childrenAccept(this,data);
+				invokeMath("pow", 2);
+			} else if ((c == Power.class && n == 2) || (c == SquareRoot.class && n == 1)) {
+				op(ALOAD_0);
+				push(1);
+				node.childrenAccept(this,data);
+				invokeHelper(c == Power.class ? "power" : "sqrt", n);
+			} else {
+				node.childrenAccept(this,data);
+				invokeFunction((RealEvaluationI)pfmc, n);
+			}
+		} catch (IOException e) {
+			throw new ParseException(e.getMessage());
+		}
+		return data;
+	}
+
+	public Object visit(ASTVarNode node, Object data) throws ParseException {
+		Variable var = node.getVar();
+		try {
+			if (var.isConstant()) {
+				pushDouble(((Number)var.getValue()).doubleValue());
+				return data;
+			}
+			int slot = 0;
+			while (variables[slot] != var) {
+				slot++;
+			}
+			op(ALOAD_1);
+			push(1);
+			pushInt(slot);
+			op(DALOAD);
+			pop(2);
+			push(2);
+		} catch (IOException e) {
+			throw new ParseException(e.getMessage());
+		}
+		return data;
+	}
+
+	public Object visit(ASTConstant node, Object data) throws ParseException {
+		try {
+			pushDouble(((Number)node.getValue()).doubleValue());
+		} catch (IOException e) {
+			throw new ParseException(e.getMessage());
+		}
+		return data;
+	}
+
+	public Object visit(SimpleNode node, Object data) throws ParseException {
+		throw new ParseException("No visit method for " + node.getClass().getName());
+	}
+
+	public Object visit(ASTStart node, Object data) throws ParseException {
+		throw new ParseException("No visit method for " + node.getClass().getName());
+	}
+
+	/**
+	 * Defines a single generated class.
+	 */
+	private static class Loader extends ClassLoader {
+		Loader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class define(String name,byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -4,6 +4,7 @@
  */
 package org.nfunk.jep.evaluation;
 
+import org.nfunk.jep.*;
 import org.nfunk.jep.function.*;
 /**
  * 
@@ -18,6 +19,7 @@ public class CommandElement {
 	private PostfixMathCommandI pfmc;
 	private int                 nParam;
 	private Object              value;
+	private Variable            var;
 
 	/**
 	 * @return The function associated with this element.
@@ -47,6 +49,13 @@ public class CommandElement {
 		return varName;
 	}
 
+	/**
+	 * @return The variable, if it was known when the expression was compiled.
+	 */
+	public final Variable getVar() {
+		return var;
+	}
+
 	/**
 	 * @return The number of parameters.
 	 */
@@ -82,6 +91,13 @@ public class CommandElement {
 		varName = string;
 	}
 
+	/**
+	 * @param variable The variable.
+	 */
+	public final void setVar(Variable variable) {
+		var = variable;
+	}
+
 	/**
 	 * @param i The number of parameters.
 	 */
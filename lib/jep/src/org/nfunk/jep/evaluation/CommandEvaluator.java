@@ -51,8 +51,13 @@ public class CommandEvaluator {
 					break;
 				}
 				case CommandElement.VAR: {
-					// Variable
-					stack.push(symTab.getValue(command.getVarName()));					
+					// Variable, read from its slot if it belongs to the symbol table
+					Variable var = command.getVar();
+					if (var instanceof SlotVariable && ((SlotVariable)var).getSymbolTable() == symTab) {
+						stack.push(var.getValue());
+					} else {
+						stack.push(symTab.getValue(command.getVarName()));
+					}
 					break;
 				}
 				default: {
@@ -0,0 +1,141 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+
+package org.nfunk.jep.evaluation;
+
+import org.nfunk.jep.*;
+import org.nfunk.jep.function.*;
+
+/**
+ * An expression compiled to JVM bytecode by {@link BytecodeCompiler}.
+ * <p>
+ * The generated subclass evaluates the expression over real numbers in its
+ * {@link #run(double[])} method. Whenever it cannot find a real value the
+ * expression is evaluated by a {@link RealEvaluator} instead, so the results
+ * are always those of {@link JEP#evaluate(Node)}.
+ * <p>
+ * Like the EvaluatorVisitor, an instance should only be used by one thread at a time.
+ */
+public abstract class CompiledExpression {
+	/** Evaluates the expression when the generated code cannot */
+	private RealEvaluator fallback;
+	private int nVariables;
+
+	/** Functions called through {@link #call(int, int)} */
+	protected RealEvaluationI[] functions;
+	/** The arguments of the function called through {@link #call(int, int)} */
+	protected double[] args;
+	/** Set when a function's value is not real */
+	protected boolean nonReal;
+
+	protected CompiledExpression() {
+	}
+
+	void init(RealEvaluator fallback,RealEvaluationI[] functions,int maxArgs) {
+		this.fallback = fallback;
+		this.nVariables = fallback.getVariables().length;
+		this.functions = functions;
+		this.args = new double[maxArgs];
+	}
+
+	/**
+	 * Evaluates the expression as a double number.
+	 * @param vars the value of each variable, indexed by slot
+	 * @return the value of the expression. If the value is not a real number
+	 * NaN is returned, as with {@link JEP#getValue()}.
+	 * @throws ParseException if the expression could not be evaluated
+	 */
+	public double eval(double[] vars) throws ParseException {
+		if (vars.length < nVariables) {
+			throw new ParseException("Expected values for " + nVariables + " variables");
+		}
+		nonReal = false;
+		double result = run(vars);
+		if (result == result && !nonReal) {
+			return result;
+		}
+		return fallback.evaluate(vars);
+	}
+
+	/**
+	 * Returns the variables of the expression, the index of each variable
+	 * is its slot in the values passed to {@link #eval(double[])}.
+	 */
+	public Variable[] getVariables() {
+		return fallback.getVariables();
+	}
+
+	/**
+	 * Returns the slot of a variable.
+	 * @param name the name of the variable
+	 * @return the slot, or -1 if the expression does not use the variable
+	 */
+	public int getSlot(String name) {
+		return fallback.getSlot(name);
+	}
+
+	/**
+	 * Returns true if the expression was compiled to bytecode, false if it
+	 * is always evaluated by the RealEvaluator.
+	 */
+	public boolean isCompiled() {
+		return true;
+	}
+
+	/**
+	 * Evaluates the expression, implemented by the generated code.
+	 * @return the value of the expression, or NaN if the RealEvaluator is needed
+	 */
+	protected abstract double run(double[] vars);
+
+	/**
+	 * Calls a function on the first n elements of args.
+	 */
+	protected final double call(int function,int n) {
+		double result = functions[function].evaluate(args,0,n);
+		if (result != result) {
+			nonReal = true;
+		}
+		return result;
+	}
+
+	/**
+	 * The power of real numbers as in {@link Power#evaluate(double[], int, int)}.
+	 */
+	protected final double power(double d1,double d2) {
+		if (d1<0 && d2 != (int)d2) {
+			nonReal = true;
+			return Double.NaN;
+		}
+		return Math.pow(d1,d2);
+	}
+
+	/**
+	 * The square root of real numbers as in {@link SquareRoot#evaluate(double[], int, int)}.
+	 */
+	protected final double sqrt(double value) {
+		if (value < 0.0) {
+			nonReal = true;
+		}
+		return Math.sqrt(value);
+	}
+
+	/**
+	 * Used when the expression cannot be compiled, evaluating it with the RealEvaluator.
+	 */
+	static final class Interpreted extends CompiledExpression {
+		protected double run(double[] vars) {
+			return Double.NaN;
+		}
+
+		public boolean isCompiled() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,458 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+
+package org.nfunk.jep.evaluation;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.nfunk.jep.*;
+import org.nfunk.jep.type.*;
+
+/**
+ * Decides whether two expressions are equal by evaluating them at random points.
+ * <p>
+ * The points are drawn from a <code>Random</code> with a given seed, so a check
+ * always has the same result, and are evaluated across a fork-join pool. Each
+ * expression is evaluated over a block of points by
+ * {@link RealEvaluator#evaluate(double[][], int)}; where a value is not real it
+ * is found as a Complex, and the values at each point are compared as complex
+ * numbers. Points at which either expression is undefined or infinite, such as
+ * the singularities of a rational function, are skipped.
+ * <p>
+ * The expressions are parsed once by each thread taking part in a check, as
+ * the variables of a parsed expression cannot be shared between threads, and
+ * the parsed expressions are dropped when the check ends, so no state is left
+ * behind on the threads of the pool. The parser is created by
+ * {@link #createParser()}, which can be overridden to add functions or
+ * constants. Settings should not be changed while a check is running.
+ */
+public class EquivalenceChecker {
+	/** The expressions are equal at all the points */
+	public static final int EQUIVALENT = 0;
+	/** The expressions differ at a point */
+	public static final int NOT_EQUIVALENT = 1;
+	/** Too few points were valid to decide */
+	public static final int UNDETERMINED = 2;
+
+	/** The number of points evaluated by each task */
+	private static final int TASK_SIZE = 128;
+
+	private String expression1;
+	private String expression2;
+	private String[] variableNames;
+
+	private int samples = 100;
+	private int minimumValid = 50;
+	private double min = -10;
+	private double max = 10;
+	private double tolerance = 1e-9;
+	private long seed = 0;
+	private boolean earlyExit = true;
+
+	/**
+	 * Parses two expressions to be compared.
+	 * @param expression1 the first expression, for instance the model answer
+	 * @param expression2 the second expression, for instance the student's answer
+	 * @throws ParseException if either expression cannot be parsed
+	 */
+	public EquivalenceChecker(String expression1,String expression2) throws ParseException {
+		this.expression1 = expression1;
+		this.expression2 = expression2;
+		Worker worker = new Worker(createParser(),expression1,expression2);
+
+		// the variables of both expressions, in order of appearance
+		Vector names = new Vector();
+		addNames(names,worker.evaluator1.getVariables());
+		addNames(names,worker.evaluator2.getVariables());
+		variableNames = new String[names.size()];
+		names.copyInto(variableNames);
+	}
+
+	private static void addNames(Vector names,Variable[] variables) {
+		int i = 0;
+		while (i < variables.length) {
+			if (!names.contains(variables[i].getName())) {
+				names.addElement(variables[i].getName());
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Creates the parser used by each thread. By default it has a
+	 * {@link SlotSymbolTable}, the standard functions and constants are added,
+	 * along with complex numbers, and implicit multiplication and undeclared
+	 * variables are allowed.
+	 */
+	protected JEP createParser() {
+		JEP jep = new JEP();
+		jep.initSlotSymTab();
+		jep.addStandardFunctions();
+		jep.addStandardConstants();
+		jep.addComplex();
+		jep.setImplicitMul(true);
+		jep.setAllowUndeclared(true);
+		return jep;
+	}
+
+	/** Returns the names of the variables of either expression, in the order of the values of each point */
+	public String[] getVariableNames() {
+		return (String[])variableNames.clone();
+	}
+
+	/** Sets the number of points drawn, 100 by default */
+	public void setSamples(int samples) {
+		this.samples = samples;
+	}
+
+	/** Sets the number of points at which both expressions must be defined to decide they are equal, 50 by default */
+	public void setMinimumValid(int minimumValid) {
+		this.minimumValid = minimumValid;
+	}
+
+	/** Sets the range the value of each variable is drawn from, -10 to 10 by default */
+	public void setRange(double min,double max) {
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Sets the tolerance, 1e-9 by default. Two values a and b are equal if
+	 * |a-b| is no more than the tolerance times the greatest of 1, |a| and |b|.
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/** Sets the seed the points are drawn with, 0 by default */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets whether the check stops at the first point where the expressions differ,
+	 * true by default. When it does, the number of points evaluated and the counterexample
+	 * may vary between checks, but the status does not.
+	 */
+	public void setEarlyExit(boolean earlyExit) {
+		this.earlyExit = earlyExit;
+	}
+
+	/**
+	 * Checks the expressions with the common fork-join pool.
+	 */
+	public Result check() {
+		return check(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Checks the expressions.
+	 * @param pool the pool the points are evaluated in
+	 * @return the result of the check
+	 */
+	public Result check(ForkJoinPool pool) {
+		Random random = new Random(seed);
+		double[][] points = new double[variableNames.length][samples];
+		int k = 0;
+		while (k < samples) {
+			int i = 0;
+			while (i < variableNames.length) {
+				points[i][k] = min + (max - min) * random.nextDouble();
+				i++;
+			}
+			k++;
+		}
+		Result result = new Result(variableNames.length);
+		// the parsed expressions of each thread taking part, by thread
+		Hashtable workers = new Hashtable();
+		pool.invoke(new CheckTask(points,result,workers,0,samples));
+		if (result.mismatches.get() > 0) {
+			result.status = NOT_EQUIVALENT;
+		} else if (result.valid.get() >= minimumValid) {
+			result.status = EQUIVALENT;
+		} else {
+			result.status = UNDETERMINED;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the parsed expressions of the current thread for a check, parsing them
+	 * if the thread has not taken part in the check yet.
+	 */
+	private Worker getWorker(Hashtable workers) {
+		Thread thread = Thread.currentThread();
+		Worker worker = (Worker)workers.get(thread);
+		if (worker == null) {
+			try {
+				worker = new Worker(createParser(),expression1,expression2);
+			} catch (ParseException e) {
+				// both expressions were parsed by the constructor
+				throw new IllegalStateException(e.getMessage());
+			}
+			worker.map(variableNames);
+			workers.put(thread,worker);
+		}
+		return worker;
+	}
+
+	/**
+	 * Compares the expressions at a range of points.
+	 */
+	private void checkRange(double[][] points,Result result,Hashtable workers,int start,int end) {
+		Worker worker = getWorker(workers);
+		int n = end - start;
+		double[] values1 = worker.evaluate(worker.evaluator1,worker.slots1,points,start,n);
+		double[] values2 = worker.evaluate(worker.evaluator2,worker.slots2,points,start,n);
+		int valid = 0;
+		int k = 0;
+		while (k < n && !(earlyExit && result.mismatches.get() > 0)) {
+			double a = values1[k];
+			double b = values2[k];
+			int comparison;
+			if (a - a == 0 && b - b == 0) {
+				// both finite
+				comparison = Math.abs(a - b) <= tolerance * Math.max(1, Math.max(Math.abs(a), Math.abs(b))) ? 0 : 1;
+			} else if (a == a && b == b) {
+				// an infinite value
+				comparison = -1;
+			} else {
+				comparison = compareComplex(worker,points,start + k);
+			}
+			if (comparison == 0) {
+				valid++;
+			} else if (comparison == 1) {
+				valid++;
+				result.mismatch(points,start + k);
+			}
+			k++;
+		}
+		result.evaluated.addAndGet(k);
+		result.valid.addAndGet(valid);
+	}
+
+	/**
+	 * Compares the expressions at a point where either is not real, evaluating each as an object.
+	 * @return 0 if equal, 1 if different, or -1 if either is undefined
+	 */
+	private int compareComplex(Worker worker,double[][] points,int k) {
+		Complex a = toComplex(worker.getValue(worker.evaluator1,worker.slots1,points,k));
+		Complex b = toComplex(worker.getValue(worker.evaluator2,worker.slots2,points,k));
+		if (a == null || b == null) {
+			return -1;
+		}
+		double scale = Math.max(1, Math.max(a.abs(), b.abs()));
+		return a.sub(b).abs() <= tolerance * scale ? 0 : 1;
+	}
+
+	/**
+	 * Returns a value as a Complex, or null if it is not a finite number.
+	 */
+	private static Complex toComplex(Object value) {
+		Complex c;
+		if (value instanceof Complex) {
+			c = (Complex)value;
+		} else if (value instanceof Number) {
+			c = new Complex(((Number)value).doubleValue(),0);
+		} else {
+			return null;
+		}
+		if (c.re() - c.re() != 0 || c.im() - c.im() != 0) {
+			return null;
+		}
+		return c;
+	}
+
+	private class CheckTask extends RecursiveAction {
+		private final double[][] points;
+		private final Result result;
+		private final Hashtable workers;
+		private final int start;
+		private final int end;
+
+		CheckTask(double[][] points,Result result,Hashtable workers,int start,int end) {
+			this.points = points;
+			this.result = result;
+			this.workers = workers;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute() {
+			if (earlyExit && result.mismatches.get() > 0) {
+				return;
+			}
+			if (end - start <= TASK_SIZE) {
+				checkRange(points,result,workers,start,end);
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new CheckTask(points,result,workers,start,middle),
+						new CheckTask(points,result,workers,middle,end));
+			}
+		}
+	}
+
+	/**
+	 * The expressions parsed by one thread, with the columns they are evaluated over.
+	 */
+	private static class Worker {
+		RealEvaluator evaluator1;
+		RealEvaluator evaluator2;
+		/** The index in the points of the variable in each slot of the evaluators */
+		int[] slots1;
+		int[] slots2;
+		double[][] columns1;
+		double[][] columns2;
+		double[] point1;
+		double[] point2;
+
+		Worker(JEP jep,String expression1,String expression2) throws ParseException {
+			evaluator1 = new RealEvaluator(jep.parse(expression1),jep.getSymbolTable());
+			evaluator2 = new RealEvaluator(jep.parse(expression2),jep.getSymbolTable());
+		}
+
+		void map(String[] names) {
+			slots1 = slots(evaluator1,names);
+			slots2 = slots(evaluator2,names);
+			columns1 = new double[slots1.length][TASK_SIZE];
+			columns2 = new double[slots2.length][TASK_SIZE];
+			point1 = new double[slots1.length];
+			point2 = new double[slots2.length];
+		}
+
+		private int[] slots(RealEvaluator evaluator,String[] names) {
+			Variable[] variables = evaluator.getVariables();
+			int[] slots = new int[variables.length];
+			int i = 0;
+			while (i < variables.length) {
+				slots[i] = Arrays.asList(names).indexOf(variables[i].getName());
+				i++;
+			}
+			return slots;
+		}
+
+		/**
+		 * Evaluates an expression at a range of points, giving NaN where it cannot be evaluated.
+		 */
+		double[] evaluate(RealEvaluator evaluator,int[] slots,double[][] points,int start,int n) {
+			double[][] columns = evaluator == evaluator1 ? columns1 : columns2;
+			int i = 0;
+			while (i < slots.length) {
+				System.arraycopy(points[slots[i]],start,columns[i],0,n);
+				i++;
+			}
+			try {
+				return evaluator.evaluate(columns,n);
+			} catch (ParseException e) {
+				// evaluate each point on its own so only the points which fail are lost
+				double[] values = new double[n];
+				double[] point = evaluator == evaluator1 ? point1 : point2;
+				int k = 0;
+				while (k < n) {
+					i = 0;
+					while (i < slots.length) {
+						point[i] = columns[i][k];
+						i++;
+					}
+					try {
+						values[k] = evaluator.evaluate(point);
+					} catch (ParseException ex) {
+						values[k] = Double.NaN;
+					}
+					k++;
+				}
+				return values;
+			}
+		}
+
+		/**
+		 * Evaluates an expression at a point as an object, giving null if it cannot be evaluated.
+		 */
+		Object getValue(RealEvaluator evaluator,int[] slots,double[][] points,int k) {
+			double[] point = evaluator == evaluator1 ? point1 : point2;
+			int i = 0;
+			while (i < slots.length) {
+				point[i] = points[slots[i]][k];
+				i++;
+			}
+			try {
+				return evaluator.getValue(point);
+			} catch (ParseException e) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * The result of a check.
+	 */
+	public static class Result {
+		private int status;
+		private AtomicInteger evaluated = new AtomicInteger();
+		private AtomicInteger valid = new AtomicInteger();
+		private AtomicInteger mismatches = new AtomicInteger();
+		private int counterexampleIndex = -1;
+		private double[] counterexample;
+
+		Result(int nVariables) {
+			counterexample = new double[nVariables];
+		}
+
+		/** Records a point where the expressions differ, keeping the first in the order they were drawn */
+		synchronized void mismatch(double[][] points,int k) {
+			mismatches.incrementAndGet();
+			if (counterexampleIndex == -1 || k < counterexampleIndex) {
+				counterexampleIndex = k;
+				int i = 0;
+				while (i < counterexample.length) {
+					counterexample[i] = points[i][k];
+					i++;
+				}
+			}
+		}
+
+		/** Returns EQUIVALENT, NOT_EQUIVALENT or UNDETERMINED */
+		public int getStatus() {
+			return status;
+		}
+
+		/** Returns true if the expressions were found to be equal */
+		public boolean isEquivalent() {
+			return status == EQUIVALENT;
+		}
+
+		/** Returns the number of points evaluated */
+		public int getEvaluated() {
+			return evaluated.get();
+		}
+
+		/** Returns the number of points at which both expressions were defined */
+		public int getValid() {
+			return valid.get();
+		}
+
+		/** Returns the number of points at which the expressions differ */
+		public int getMismatches() {
+			return mismatches.get();
+		}
+
+		/**
+		 * Returns a point where the expressions differ, the values being in the order of
+		 * {@link EquivalenceChecker#getVariableNames()}, or null if there is none.
+		 */
+		public synchronized double[] getCounterexample() {
+			if (counterexampleIndex == -1) {
+				return null;
+			}
+			return (double[])counterexample.clone();
+		}
+	}
+}
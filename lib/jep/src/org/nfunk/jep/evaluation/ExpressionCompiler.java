@@ -50,6 +50,7 @@ public class ExpressionCompiler implements ParserVisitor {
 		CommandElement c = new CommandElement();
 		c.setType(CommandElement.VAR);
 		c.setVarName(node.getName());
+		c.setVar(node.getVar());
 		commands.addElement(c);
 
 		return data;
@@ -0,0 +1,525 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+
+package org.nfunk.jep.evaluation;
+
+import java.util.*;
+import org.nfunk.jep.*;
+import org.nfunk.jep.function.*;
+import org.nfunk.jep.type.*;
+
+/**
+ * Evaluates an expression over real numbers many times, for example at a
+ * large number of sample points.
+ * <p>
+ * The expression is compiled once into a postfix program whose operands
+ * are kept on a <code>double[]</code> stack, so no objects are created while
+ * evaluating. Each variable which is not a constant is given a slot and its
+ * value is passed in a <code>double[]</code> indexed by slot rather than
+ * set on the {@link Variable}. Many points can be evaluated together with
+ * {@link #evaluate(double[][], int)}, given a column of values for each variable.
+ * <p>
+ * Only functions implementing {@link RealEvaluationI} are evaluated this way.
+ * If the expression contains other functions or constants which are not
+ * numbers, or if a real result cannot be found (because the value would be
+ * a Complex), the values are set on the variables and the expression is
+ * evaluated by an {@link EvaluatorVisitor} instead, which gives the same
+ * results as {@link JEP#evaluate(Node)}.
+ * <p>
+ * Like the EvaluatorVisitor, an instance should only be used by one thread at a time.
+ */
+public class RealEvaluator {
+	private static final int CONST = 0;
+	private static final int VAR   = 1;
+	private static final int FUNC  = 2;
+
+	/** How a function is evaluated over a block of points */
+	private static final int CALL  = 0;
+	private static final int ADD   = 1;
+	private static final int SUB   = 2;
+	private static final int MUL   = 3;
+	private static final int DIV   = 4;
+	private static final int MOD   = 5;
+	private static final int NEG   = 6;
+	private static final int POW   = 7;
+	private static final int SQRT  = 8;
+
+	/** The number of points evaluated together by {@link #evaluate(double[][], int)} */
+	private static final int BLOCK = 256;
+
+	private Node topNode;
+	private SymbolTable symTab;
+	/** The variables of the expression, in slot order */
+	private Variable[] variables;
+	/** Whether the whole expression can be evaluated by the real program */
+	private boolean real;
+
+	/** The program, one entry per instruction */
+	private int[] types;
+	private double[] constants;
+	private int[] operands;
+	private RealEvaluationI[] functions;
+	private double[] stack;
+
+	/** The stack of columns used for blocks of points, created when first needed */
+	private int[] kinds;
+	private double[][] columnStack;
+	private boolean[] nonReal;
+	private double[] args;
+	private double[] point;
+
+	/** Used when the real program cannot be */
+	private EvaluatorVisitor ev;
+
+	/**
+	 * Compiles an expression.
+	 * @param topNode the top node of the tree representing the expression
+	 * @param symTab the symbol table passed to the EvaluatorVisitor, can be null
+	 * @throws ParseException if a variable of the expression is not in the symbol table
+	 */
+	public RealEvaluator(Node topNode,SymbolTable symTab) throws ParseException {
+		if (topNode == null) {
+			throw new ParseException("topNode parameter is null");
+		}
+		this.topNode = topNode;
+		this.symTab = symTab;
+		ev = new EvaluatorVisitor();
+
+		Compiler compiler = new Compiler();
+		topNode.jjtAccept(compiler,null);
+		real = compiler.real;
+		variables = new Variable[compiler.variables.size()];
+		compiler.variables.copyInto(variables);
+
+		int n = compiler.types.size();
+		types = new int[n];
+		constants = new double[n];
+		operands = new int[n];
+		functions = new RealEvaluationI[n];
+		int i = 0;
+		while (i < n) {
+			types[i] = ((Integer)compiler.types.elementAt(i)).intValue();
+			constants[i] = ((Double)compiler.constants.elementAt(i)).doubleValue();
+			operands[i] = ((Integer)compiler.operands.elementAt(i)).intValue();
+			functions[i] = (RealEvaluationI)compiler.functions.elementAt(i);
+			i++;
+		}
+		stack = new double[compiler.maxDepth];
+		point = new double[variables.length];
+	}
+
+	/**
+	 * Returns the variables of the expression, the index of each variable
+	 * is its slot in the values passed to {@link #evaluate(double[])}.
+	 */
+	public Variable[] getVariables() {
+		return variables.clone();
+	}
+
+	/**
+	 * Returns the slot of a variable.
+	 * @param name the name of the variable
+	 * @return the slot, or -1 if the expression does not use the variable
+	 */
+	public int getSlot(String name) {
+		int i = 0;
+		while (i < variables.length) {
+			if (variables[i].getName().equals(name)) {
+				return i;
+			}
+			i++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns true if the expression is evaluated without the EvaluatorVisitor
+	 * whenever its value is real.
+	 */
+	public boolean isReal() {
+		return real;
+	}
+
+	/**
+	 * Evaluates the expression as a double number.
+	 * @param values the value of each variable, indexed by slot
+	 * @return the value of the expression. If the value is not a real number
+	 * NaN is returned, as with {@link JEP#getValue()}.
+	 * @throws ParseException if the expression could not be evaluated
+	 */
+	public double evaluate(double[] values) throws ParseException {
+		checkValues(values);
+		if (real) {
+			double result = run(values);
+			if (result == result) {
+				return result;
+			}
+		}
+		Object value = evaluateGeneral(values);
+		if (value instanceof Complex) {
+			Complex c = (Complex)value;
+			if (c.im() != 0.0) return Double.NaN;
+			return c.re();
+		}
+		if (value instanceof Number) {
+			return ((Number)value).doubleValue();
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Evaluates the expression as an object.
+	 * @param values the value of each variable, indexed by slot
+	 * @return the value of the expression, a Double if it was found by the
+	 * real program, otherwise the value found by the EvaluatorVisitor
+	 * @throws ParseException if the expression could not be evaluated
+	 */
+	public Object getValue(double[] values) throws ParseException {
+		checkValues(values);
+		if (real) {
+			double result = run(values);
+			if (result == result) {
+				return new Double(result);
+			}
+		}
+		return evaluateGeneral(values);
+	}
+
+	/**
+	 * Evaluates the expression at many points, a column of values being given for each variable.
+	 * The points are evaluated a block at a time, each instruction of the program being
+	 * applied to the whole block before the next, with the result of each point being
+	 * that of {@link #evaluate(double[])}.
+	 * @param columns the values of each variable, indexed by slot then by point
+	 * @param n the number of points
+	 * @return the value of the expression at each point
+	 * @throws ParseException if the expression could not be evaluated
+	 */
+	public double[] evaluate(double[][] columns,int n) throws ParseException {
+		if (columns.length < variables.length) {
+			throw new ParseException("Expected values for " + variables.length + " variables");
+		}
+		int i = 0;
+		while (i < variables.length) {
+			if (columns[i].length < n) {
+				throw new ParseException("Expected " + n + " values for " + variables[i].getName());
+			}
+			i++;
+		}
+		double[] results = new double[n];
+		if (real) {
+			if (kinds == null) {
+				initColumns();
+			}
+			int start = 0;
+			while (start < n) {
+				runColumns(columns,start,Math.min(BLOCK,n - start),results);
+				start += BLOCK;
+			}
+		} else {
+			Arrays.fill(results,Double.NaN);
+		}
+		// the points the program could not evaluate are evaluated one at a time
+		int k = 0;
+		while (k < n) {
+			if (results[k] != results[k]) {
+				i = 0;
+				while (i < variables.length) {
+					point[i] = columns[i][k];
+					i++;
+				}
+				results[k] = evaluate(point);
+			}
+			k++;
+		}
+		return results;
+	}
+
+	private void initColumns() {
+		kinds = new int[types.length];
+		int maxArgs = 0;
+		int i = 0;
+		while (i < types.length) {
+			if (types[i] == FUNC) {
+				Class c = functions[i].getClass();
+				int n = operands[i];
+				if (c == Add.class && n > 0) kinds[i] = ADD;
+				else if (c == Multiply.class && n > 0) kinds[i] = MUL;
+				else if (c == Subtract.class && n == 2) kinds[i] = SUB;
+				else if (c == Divide.class && n == 2) kinds[i] = DIV;
+				else if (c == Modulus.class && n == 2) kinds[i] = MOD;
+				else if (c == UMinus.class && n == 1) kinds[i] = NEG;
+				else if (c == Power.class && n == 2) kinds[i] = POW;
+				else if (c == SquareRoot.class && n == 1) kinds[i] = SQRT;
+				else kinds[i] = CALL;
+				maxArgs = Math.max(maxArgs,n);
+			}
+			i++;
+		}
+		columnStack = new double[stack.length][BLOCK];
+		nonReal = new boolean[BLOCK];
+		args = new double[maxArgs];
+	}
+
+	/**
+	 * Runs the program over a block of points, leaving NaN for the points whose value is not
+	 * real or for which a function returned NaN.
+	 */
+	private void runColumns(double[][] columns,int start,int m,double[] results) {
+		double[][] s = columnStack;
+		Arrays.fill(nonReal,0,m,false);
+		int sp = 0;
+		int i = 0;
+		while (i < types.length) {
+			switch (types[i]) {
+				case CONST:
+					Arrays.fill(s[sp],0,m,constants[i]);
+					sp++;
+					break;
+				case VAR:
+					System.arraycopy(columns[operands[i]],start,s[sp],0,m);
+					sp++;
+					break;
+				default:
+					sp -= operands[i];
+					runFunction(i,sp,m);
+					sp++;
+			}
+			i++;
+		}
+		double[] r = s[0];
+		int k = 0;
+		while (k < m) {
+			results[start + k] = nonReal[k] ? Double.NaN : r[k];
+			k++;
+		}
+	}
+
+	/**
+	 * Applies a function to a block, the arguments being the columns from first,
+	 * and the result replacing the first argument.
+	 */
+	private void runFunction(int i,int first,int m) {
+		double[][] s = columnStack;
+		double[] r = s[first];
+		int n = operands[i];
+		int k;
+		switch (kinds[i]) {
+			case ADD: {
+				// a+(b+c) as in Add.run
+				int j = first + n - 2;
+				while (j >= first) {
+					double[] a = s[j];
+					double[] b = s[j + 1];
+					for (k = 0; k < m; k++) a[k] = a[k] + b[k];
+					j--;
+				}
+				break;
+			}
+			case MUL: {
+				int j = first + n - 2;
+				while (j >= first) {
+					double[] a = s[j];
+					double[] b = s[j + 1];
+					for (k = 0; k < m; k++) a[k] = a[k] * b[k];
+					j--;
+				}
+				break;
+			}
+			case SUB: {
+				double[] b = s[first + 1];
+				for (k = 0; k < m; k++) r[k] = r[k] - b[k];
+				break;
+			}
+			case DIV: {
+				double[] b = s[first + 1];
+				for (k = 0; k < m; k++) r[k] = r[k] / b[k];
+				break;
+			}
+			case MOD: {
+				double[] b = s[first + 1];
+				for (k = 0; k < m; k++) r[k] = r[k] % b[k];
+				break;
+			}
+			case NEG:
+				for (k = 0; k < m; k++) r[k] = -r[k];
+				break;
+			case POW: {
+				double[] b = s[first + 1];
+				for (k = 0; k < m; k++) {
+					double d1 = r[k];
+					double d2 = b[k];
+					if (d1<0 && d2 != (int)d2) {
+						nonReal[k] = true;
+					}
+					r[k] = Math.pow(d1,d2);
+				}
+				break;
+			}
+			case SQRT:
+				for (k = 0; k < m; k++) {
+					if (r[k] < 0.0) {
+						nonReal[k] = true;
+					}
+					r[k] = Math.sqrt(r[k]);
+				}
+				break;
+			default: {
+				RealEvaluationI function = functions[i];
+				double[] a = args;
+				for (k = 0; k < m; k++) {
+					int j = 0;
+					while (j < n) {
+						a[j] = s[first + j][k];
+						j++;
+					}
+					double result = function.evaluate(a,0,n);
+					if (result != result) {
+						nonReal[k] = true;
+					}
+					r[k] = result;
+				}
+			}
+		}
+	}
+
+	private void checkValues(double[] values) throws ParseException {
+		if (values.length < variables.length) {
+			throw new ParseException("Expected values for " + variables.length + " variables");
+		}
+	}
+
+	/**
+	 * Runs the real program.
+	 * @return the value of the expression, or NaN if any function returns NaN
+	 */
+	private double run(double[] values) {
+		double[] s = stack;
+		int sp = 0;
+		int i = 0;
+		int n = types.length;
+		while (i < n) {
+			switch (types[i]) {
+				case CONST:
+					s[sp++] = constants[i];
+					break;
+				case VAR:
+					s[sp++] = values[operands[i]];
+					break;
+				default: {
+					sp -= operands[i];
+					double result = functions[i].evaluate(s,sp,operands[i]);
+					if (result != result) {
+						return Double.NaN;
+					}
+					s[sp++] = result;
+				}
+			}
+			i++;
+		}
+		return s[0];
+	}
+
+	/**
+	 * Sets the values on the variables and evaluates the expression with the EvaluatorVisitor.
+	 */
+	private Object evaluateGeneral(double[] values) throws ParseException {
+		int i = 0;
+		while (i < variables.length) {
+			variables[i].setValue(new Double(values[i]));
+			i++;
+		}
+		return ev.getValue(topNode,symTab);
+	}
+
+	/**
+	 * Visits the tree in postfix order, adding an instruction for each node.
+	 */
+	private static class Compiler implements ParserVisitor {
+		Vector types = new Vector();
+		Vector constants = new Vector();
+		Vector operands = new Vector();
+		Vector functions = new Vector();
+		Vector variables = new Vector();
+		boolean real = true;
+		int depth = 0;
+		int maxDepth = 1;
+
+		private void add(int type,double constant,int operand,RealEvaluationI function) {
+			types.addElement(new Integer(type));
+			constants.addElement(new Double(constant));
+			operands.addElement(new Integer(operand));
+			functions.addElement(function);
+			if (type == FUNC) {
+				depth -= operand;
+			}
+			depth++;
+			if (depth > maxDepth) {
+				maxDepth = depth;
+			}
+		}
+
+		public Object visit(ASTFunNode node, Object data) throws ParseException {
+			PostfixMathCommandI pfmc = node.getPFMC();
+			if (!(pfmc instanceof RealEvaluationI)
+					|| pfmc instanceof SpecialEvaluationI
+					|| pfmc instanceof CallbackEvaluationI) {
+				real = false;
+				// the children are still visited for their variables
+			}
+			node.childrenAccept(this,data);
+			if (real) {
+				add(FUNC,0,node.jjtGetNumChildren(),(RealEvaluationI)pfmc);
+			}
+			return data;
+		}
+
+		public Object visit(ASTVarNode node, Object data) throws ParseException {
+			Variable var = node.getVar();
+			if (var == null) {
+				String message = "Could not evaluate " + node.getName() + ": ";
+				throw new ParseException(message + "the variable was not found in the symbol table");
+			}
+			if (var.isConstant()) {
+				if (var.getValue() instanceof Number) {
+					add(CONST,((Number)var.getValue()).doubleValue(),0,null);
+				} else {
+					real = false;
+				}
+				return data;
+			}
+			int slot = variables.indexOf(var);
+			if (slot == -1) {
+				slot = variables.size();
+				variables.addElement(var);
+			}
+			add(VAR,0,slot,null);
+			return data;
+		}
+
+		public Object visit(ASTConstant node, Object data) {
+			if (node.getValue() instanceof Number) {
+				add(CONST,((Number)node.getValue()).doubleValue(),0,null);
+			} else {
+				real = false;
+			}
+			return data;
+		}
+
+		public Object visit(SimpleNode node, Object data) {
+			real = false;
+			return data;
+		}
+
+		public Object visit(ASTStart node, Object data) {
+			real = false;
+			return data;
+		}
+	}
+}
@@ -13,7 +13,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class Abs extends PostfixMathCommand
+public class Abs extends PostfixMathCommand implements RealEvaluationI
 {
 	public Abs()
 	{
@@ -45,4 +45,7 @@ public class Abs extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 
+	public double evaluate(double[] args,int first,int n) {
+		return Math.abs(args[first]);
+	}
 }
@@ -18,7 +18,7 @@ import org.nfunk.jep.type.*;
  * only 2 parameters are used. 
  * @author nathan
  */
-public class Add extends PostfixMathCommand
+public class Add extends PostfixMathCommand implements RealEvaluationI
 {
 	
 	public Add()
@@ -97,4 +97,17 @@ public class Add extends PostfixMathCommand
 	public Complex add(Complex c, Number d) {
 		return new Complex(c.re() + d.doubleValue(), c.im());
 	}	
+
+	/**
+	 * Adds the arguments in the same order as {@link #run(Stack)}.
+	 */
+	public double evaluate(double[] args,int first,int n) {
+		int i = first + n - 1;
+		double sum = args[i];
+		while (i > first) {
+			i--;
+			sum = args[i] + sum;
+		}
+		return sum;
+	}
 }
@@ -18,7 +18,7 @@ import org.nfunk.jep.type.*;
  * @author Nathan Funk
  * TODO How to handle acos(x) for real x with x>1 or x<-1
  */
-public class ArcCosine extends PostfixMathCommand
+public class ArcCosine extends PostfixMathCommand implements RealEvaluationI
 {
 	public ArcCosine()
 	{
@@ -50,4 +50,7 @@ public class ArcCosine extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 	
+	public double evaluate(double[] args,int first,int n) {
+		return Math.acos(args[first]);
+	}
 }
@@ -13,7 +13,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class ArcSine extends PostfixMathCommand
+public class ArcSine extends PostfixMathCommand implements RealEvaluationI
 {
 	public ArcSine()
 	{
@@ -45,4 +45,7 @@ public class ArcSine extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 	
+	public double evaluate(double[] args,int first,int n) {
+		return Math.asin(args[first]);
+	}
 }
@@ -13,7 +13,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class ArcTangent extends PostfixMathCommand
+public class ArcTangent extends PostfixMathCommand implements RealEvaluationI
 {
 	public ArcTangent()
 	{
@@ -44,4 +44,7 @@ public class ArcTangent extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 
+	public double evaluate(double[] args,int first,int n) {
+		return Math.atan(args[first]);
+	}
 }
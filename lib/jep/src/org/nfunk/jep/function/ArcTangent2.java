@@ -17,7 +17,7 @@ import org.nfunk.jep.*;
  * atan2(y, x) Returns the angle whose tangent is y/x. 
  * @author nathan
  */
-public class ArcTangent2 extends PostfixMathCommand
+public class ArcTangent2 extends PostfixMathCommand implements RealEvaluationI
 {
 	public ArcTangent2()
 	{
@@ -41,4 +41,8 @@ public class ArcTangent2 extends PostfixMathCommand
 			throw new ParseException("Invalid parameter type");
 		return;
 	}
+
+	public double evaluate(double[] args,int first,int n) {
+		return Math.atan2(args[first], args[first+1]);
+	}
 }
@@ -21,7 +21,7 @@ import org.nfunk.jep.*;
  * @see Math#ceil(double)
  */
 
-public class Ceil extends PostfixMathCommand
+public class Ceil extends PostfixMathCommand implements RealEvaluationI
 {
 	public Ceil()
 	{
@@ -49,4 +49,7 @@ public class Ceil extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 
+	public double evaluate(double[] args,int first,int n) {
+		return Math.ceil(args[first]);
+	}
 }
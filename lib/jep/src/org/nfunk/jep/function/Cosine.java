@@ -13,7 +13,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class Cosine extends PostfixMathCommand
+public class Cosine extends PostfixMathCommand implements RealEvaluationI
 {
 	public Cosine()
 	{
@@ -44,4 +44,7 @@ public class Cosine extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 
+	public double evaluate(double[] args,int first,int n) {
+		return Math.cos(args[first]);
+	}
 }
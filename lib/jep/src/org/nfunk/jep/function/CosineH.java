@@ -13,7 +13,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class CosineH extends PostfixMathCommand
+public class CosineH extends PostfixMathCommand implements RealEvaluationI
 {
 	public CosineH()
 	{
@@ -45,4 +45,8 @@ public class CosineH extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 
+	public double evaluate(double[] args,int first,int n) {
+		double value = args[first];
+		return (Math.exp(value) + Math.exp(-value))/2;
+	}
 }
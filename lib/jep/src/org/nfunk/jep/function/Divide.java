@@ -12,7 +12,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class Divide extends PostfixMathCommand
+public class Divide extends PostfixMathCommand implements RealEvaluationI
 {
 	public Divide()
 	{
@@ -123,4 +123,8 @@ public class Divide extends PostfixMathCommand
 		
 		return result;
 	}	
+
+	public double evaluate(double[] args,int first,int n) {
+		return args[first] / args[first+1];
+	}
 }
@@ -26,7 +26,7 @@ import org.nfunk.jep.function.PostfixMathCommand;
  * @author Rich Morris
  * Created on 20-Jun-2003
  */
-public class Exp extends PostfixMathCommand
+public class Exp extends PostfixMathCommand implements RealEvaluationI
 {
 	public Exp()
 	{
@@ -60,4 +60,8 @@ public class Exp extends PostfixMathCommand
 
 		throw new ParseException("Invalid parameter type");
 	}
+
+	public double evaluate(double[] args,int first,int n) {
+		return Math.exp(args[first]);
+	}
 }
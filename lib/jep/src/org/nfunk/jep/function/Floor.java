@@ -21,7 +21,7 @@ import org.nfunk.jep.*;
  * @see Math#floor(double)
  */
 
-public class Floor extends PostfixMathCommand
+public class Floor extends PostfixMathCommand implements RealEvaluationI
 {
 	public Floor()
 	{
@@ -49,4 +49,7 @@ public class Floor extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 
+	public double evaluate(double[] args,int first,int n) {
+		return Math.floor(args[first]);
+	}
 }
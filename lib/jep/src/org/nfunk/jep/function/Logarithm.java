@@ -19,7 +19,7 @@ import org.nfunk.jep.type.*;
  * RJM change return real results for positive real arguments.
  * Speedup by using static final fields.
  */
-public class Logarithm extends PostfixMathCommand
+public class Logarithm extends PostfixMathCommand implements RealEvaluationI
 {
 	private static final double LOG10 = Math.log(10);
 	private static final Complex CLOG10 = new Complex(Math.log(10),0);
@@ -58,4 +58,13 @@ public class Logarithm extends PostfixMathCommand
 	}
 	
 
+	/**
+	 * Returns NaN for negative numbers as {@link #log(Object)} would return a Complex.
+	 */
+	public double evaluate(double[] args,int first,int n) {
+		double num = args[first];
+		if (num >= 0)
+			return Math.log(num)/LOG10;
+		return Double.NaN;
+	}
 }
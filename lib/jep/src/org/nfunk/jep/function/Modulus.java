@@ -12,7 +12,7 @@ package org.nfunk.jep.function;
 import java.util.*;
 import org.nfunk.jep.*;
 
-public class Modulus extends PostfixMathCommand
+public class Modulus extends PostfixMathCommand implements RealEvaluationI
 {
 	public Modulus()
 	{
@@ -41,4 +41,8 @@ public class Modulus extends PostfixMathCommand
 		}
 		return;
 	}
+
+	public double evaluate(double[] args,int first,int n) {
+		return args[first] % args[first+1];
+	}
 }
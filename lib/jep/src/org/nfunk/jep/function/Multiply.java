@@ -12,7 +12,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class Multiply extends PostfixMathCommand
+public class Multiply extends PostfixMathCommand implements RealEvaluationI
 {
 	
 	public Multiply() {
@@ -110,4 +110,17 @@ public class Multiply extends PostfixMathCommand
 		
 		return result;
 	}	
+
+	/**
+	 * Multiplies the arguments in the same order as {@link #run(Stack)}.
+	 */
+	public double evaluate(double[] args,int first,int n) {
+		int i = first + n - 1;
+		double product = args[i];
+		while (i > first) {
+			i--;
+			product = args[i] * product;
+		}
+		return product;
+	}
 }
@@ -18,7 +18,7 @@ import org.nfunk.jep.type.*;
  *
  * RJM Change: fixed so ln(positive Double) is Double.
  */
-public class NaturalLogarithm extends PostfixMathCommand
+public class NaturalLogarithm extends PostfixMathCommand implements RealEvaluationI
 {
 	public NaturalLogarithm()
 	{
@@ -59,4 +59,14 @@ public class NaturalLogarithm extends PostfixMathCommand
 
 		throw new ParseException("Invalid parameter type");
 	}
+
+	/**
+	 * Returns NaN for negative numbers as {@link #ln(Object)} would return a Complex.
+	 */
+	public double evaluate(double[] args,int first,int n) {
+		double num = args[first];
+		if (num >= 0)
+			return Math.log(num);
+		return Double.NaN;
+	}
 }
@@ -13,7 +13,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class Power extends PostfixMathCommand
+public class Power extends PostfixMathCommand implements RealEvaluationI
 {
 	public Power()
 	{
@@ -93,4 +93,15 @@ public class Power extends PostfixMathCommand
 			return temp;
 	}
 	
+	/**
+	 * Returns NaN for a negative base and a non integer exponent
+	 * as {@link #power(Number, Number)} would return a Complex.
+	 */
+	public double evaluate(double[] args,int first,int n) {
+		double d1 = args[first];
+		double d2 = args[first+1];
+		if (d1<0 && d2 != (int)d2)
+			return Double.NaN;
+		return Math.pow(d1,d2);
+	}
 }
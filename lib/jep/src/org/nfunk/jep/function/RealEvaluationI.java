@@ -0,0 +1,36 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+
+package org.nfunk.jep.function;
+
+/**
+ * Functions which can be evaluated on real numbers without boxing should implement this interface.
+ * It is used by {@link org.nfunk.jep.evaluation.RealEvaluator} which keeps its operands on a
+ * <code>double[]</code> stack rather than the <code>Stack</code> of objects used by
+ * {@link PostfixMathCommandI#run(java.util.Stack)}.
+ * <p>
+ * For real arguments the result must be exactly the value <code>run</code> would
+ * push as a <code>Double</code>. Where <code>run</code> would push a <code>Complex</code>
+ * (the square root of a negative number for instance) the method returns NaN, and
+ * the caller repeats the evaluation with the general method.
+ *
+ * @see org.nfunk.jep.evaluation.RealEvaluator
+ */
+public interface RealEvaluationI {
+
+	/**
+	 * Evaluates the function on real arguments.
+	 *
+	 * @param args	The stack holding the arguments
+	 * @param first	The index of the first argument in args
+	 * @param n		The number of arguments, args[first] to args[first+n-1] from left to right
+	 * @return the value of the function, or NaN if it is not a real number
+	 */
+	public double evaluate(double[] args,int first,int n);
+}
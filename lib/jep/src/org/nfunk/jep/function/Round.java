@@ -19,7 +19,7 @@ import org.nfunk.jep.*;
  * @author Richard Morris
  *
  */
-public class Round extends PostfixMathCommand
+public class Round extends PostfixMathCommand implements RealEvaluationI
 {
 	public Round()
 	{
@@ -66,4 +66,11 @@ public class Round extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 
+	public double evaluate(double[] args,int first,int n) {
+		if (n == 1)
+			return Math.rint(args[first]);
+		int dp = (int)args[first+1];
+		double mul = Math.pow(10,dp);
+		return Math.rint(args[first]*mul)/mul;
+	}
 }
@@ -14,7 +14,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class Sine extends PostfixMathCommand
+public class Sine extends PostfixMathCommand implements RealEvaluationI
 {
 	public Sine()
 	{
@@ -42,4 +42,8 @@ public class Sine extends PostfixMathCommand
 		
 		throw new ParseException("Invalid parameter type");
 	}
+
+	public double evaluate(double[] args,int first,int n) {
+		return Math.sin(args[first]);
+	}
 }
@@ -13,7 +13,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class SquareRoot extends PostfixMathCommand
+public class SquareRoot extends PostfixMathCommand implements RealEvaluationI
 {
 	public SquareRoot() {
 		numberOfParameters = 1;
@@ -53,4 +53,11 @@ public class SquareRoot extends PostfixMathCommand
 
 		throw new ParseException("Invalid parameter type");
 	}
+
+	/**
+	 * Returns NaN for negative numbers as {@link #sqrt(Object)} would return a Complex.
+	 */
+	public double evaluate(double[] args,int first,int n) {
+		return Math.sqrt(args[first]);
+	}
 }
@@ -12,7 +12,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class Subtract extends PostfixMathCommand
+public class Subtract extends PostfixMathCommand implements RealEvaluationI
 {
 	public Subtract()
 	{
@@ -80,4 +80,8 @@ public class Subtract extends PostfixMathCommand
 	{
 		return new Complex(d.doubleValue() - c.re(), -c.im());
 	}
+
+	public double evaluate(double[] args,int first,int n) {
+		return args[first] - args[first+1];
+	}
 }
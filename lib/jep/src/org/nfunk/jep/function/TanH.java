@@ -13,7 +13,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class TanH extends PostfixMathCommand
+public class TanH extends PostfixMathCommand implements RealEvaluationI
 {
 	public TanH()
 	{
@@ -44,4 +44,8 @@ public class TanH extends PostfixMathCommand
 		throw new ParseException("Invalid parameter type");
 	}
 
+	public double evaluate(double[] args,int first,int n) {
+		double value = args[first];
+		return (Math.exp(value)-Math.exp(-value))/(Math.pow(Math.E,value)+Math.pow(Math.E,-value));
+	}
 }
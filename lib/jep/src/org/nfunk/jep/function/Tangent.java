@@ -13,7 +13,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
 
-public class Tangent extends PostfixMathCommand
+public class Tangent extends PostfixMathCommand implements RealEvaluationI
 {
 	public Tangent()
 	{
@@ -39,4 +39,8 @@ public class Tangent extends PostfixMathCommand
 
 		throw new ParseException("Invalid parameter type");
 	}
+
+	public double evaluate(double[] args,int first,int n) {
+		return Math.tan(args[first]);
+	}
 }
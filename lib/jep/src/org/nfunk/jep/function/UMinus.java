@@ -12,7 +12,7 @@ import java.util.*;
 import org.nfunk.jep.*;
 import org.nfunk.jep.type.*;
  
-public class UMinus extends PostfixMathCommand
+public class UMinus extends PostfixMathCommand implements RealEvaluationI
 {
 	public UMinus() {
 		numberOfParameters = 1;
@@ -35,4 +35,8 @@ public class UMinus extends PostfixMathCommand
 
 		throw new ParseException("Invalid parameter type");
 	}
+
+	public double evaluate(double[] args,int first,int n) {
+		return -args[first];
+	}
 }
@@ -93,16 +93,25 @@ public class AddComponent {
     
     // Returns the unique ID of the math component as an int
     public static int getID(String name) {
+        // Tags of the components in CompConfig.xml are found without parsing the string
+        ComponentRegistry registry = ComponentRegistry.getShared();
+        if (registry != null) {
+            int id = registry.getIDByTag(name);
+            if (id != -1) {
+                return id;
+            }
+        }
+        
         int id = -1;
-        try {
+        if (name != null) {
             int i = name.indexOf('-');
-            id = Integer.parseInt(name.substring(0,i));
-        } catch (NullPointerException ex) {
-            // returns -1 if ID could not be obtained
-        } catch (NumberFormatException ex) {
-            // returns -1 if ID could not be obtained
-        } catch (IndexOutOfBoundsException ex) {
-            // returns -1 if ID could not be obtained
+            if (i > 0) {
+                try {
+                    id = Integer.parseInt(name.substring(0,i));
+                } catch (NumberFormatException ex) {
+                    // returns -1 if ID could not be obtained
+                }
+            }
         }
         return id;
     }
@@ -111,7 +120,7 @@ public class AddComponent {
     public static int getGroup(String name) {
         int i = getID(name);
         if (i != -1) {
-            return inputComponents[getID(name)].getGroup();
+            return inputComponents[i].getGroup();
         } else {
             return -1;
         }
@@ -121,6 +130,14 @@ public class AddComponent {
     
     // Returns the unique name of the math component as a string
     public static String getName(String tag) {
+        ComponentRegistry registry = ComponentRegistry.getShared();
+        if (registry != null) {
+            int id = registry.getIDByTag(tag);
+            if (id != -1) {
+                return registry.getName(id);
+            }
+        }
+        
         int i;
         String name = "";
         try {
@@ -1059,337 +1076,355 @@ public class AddComponent {
     public void pasteTree(JPanel layer, int n, MathObject start, int status) {
         
         if (start != null) {
+            start.accept(new PasteVisitor(layer, n, status), null);
+        }
+        layer.repaint();
+        layer.revalidate();
+    }
+    
+    // Adds the components for each type of node at position n of layer
+    private class PasteVisitor implements MathObjectVisitor {
+        
+        private JPanel layer;
+        private int n;
+        private int status;
+        
+        PasteVisitor(JPanel layer, int n, int status) {
+            this.layer = layer;
+            this.n = n;
+            this.status = status;
+        }
+        
+        public Object visit(Text textObj, Object data) {
+            layer.add(createBox(false), n);
+            JTextField temp = (JTextField)layer.getComponent(n);
+            temp.setText(textObj.getText());
             
-            if (start.getClass().getName().equals("Tree.Text")) {
-                Text textObj = (Text)start;
-                layer.add(createBox(false), n);
-                JTextField temp = (JTextField)layer.getComponent(n);
-                temp.setText(textObj.getText());
-                
-                if (temp.getText().length() > 0) {
-                    temp.setBorder(new EmptyBorder(temp.getInsets()));
-                }
+            if (temp.getText().length() > 0) {
+                temp.setBorder(new EmptyBorder(temp.getInsets()));
             }
-            
-            if (start.getClass().getName().equals("Tree.Variable")) {
-                Variable variableObj = (Variable)start;
-                layer.add(createBox(false), n);
-                JTextField temp = (JTextField)layer.getComponent(n);
-                temp.setText(String.valueOf(variableObj.getVarName()));
-                if (temp.getText().length() > 0) {
-                    temp.setBorder(new EmptyBorder(temp.getInsets()));
-                }
+            return null;
+        }
+        
+        public Object visit(Variable variableObj, Object data) {
+            layer.add(createBox(false), n);
+            JTextField temp = (JTextField)layer.getComponent(n);
+            temp.setText(String.valueOf(variableObj.getVarName()));
+            if (temp.getText().length() > 0) {
+                temp.setBorder(new EmptyBorder(temp.getInsets()));
             }
+            return null;
+        }
+        
+        public Object visit(RealNumber numberObj, Object data) {
+            layer.add(createBox(false), n);
+            JTextField temp = (JTextField)layer.getComponent(n);
+            // Gets number as double or int depending on user settings
+            temp.setText(numberObj.getNumber(keepAsDouble));
+            if (temp.getText().length() > 0) {
+                temp.setBorder(new EmptyBorder(temp.getInsets()));
+            }
+            return null;
+        }
+        
+        public Object visit(BinaryOperator binaryObj, Object data) {
             
-            if (start.getClass().getName().equals("Tree.RealNumber")) {
-                RealNumber numberObj = (RealNumber)start;
-                layer.add(createBox(false), n);
-                JTextField temp = (JTextField)layer.getComponent(n);
-                // Gets number as double or int depending on user settings
-                temp.setText(numberObj.getNumber(keepAsDouble));
-                if (temp.getText().length() > 0) {
-                    temp.setBorder(new EmptyBorder(temp.getInsets()));
+            // Decide if brackets are required using precedence table and location in the tree
+            boolean brackets = false;
+            // If parent is not fraction - as precedence is explicit in display
+            if (binaryObj.getParent() != null && binaryObj.getParent().getID() != 1) {
+                // If precedence is lower
+                if (Precedence.value[binaryObj.getID()] < Precedence.value[binaryObj.getParent().getID()]) {
+                    brackets=true;
                 }
             }
-            
-            if (start.getClass().getName().equals("Tree.BinaryOperator")) {
-                BinaryOperator binaryObj = (BinaryOperator)start;
+            if (brackets) {
+                Grouping newBrackets = new Grouping(31, "BracketsRnd");
+                newBrackets.setChild(binaryObj);
+                binaryObj.setParent(newBrackets);
+                pasteTree(layer, n, newBrackets, 0);
                 
-                // Decide if brackets are required using precedence table and location in the tree
-                boolean brackets = false;
-                // If parent is not fraction - as precedence is explicit in display
-                if (binaryObj.getParent() != null && binaryObj.getParent().getID() != 1) {
-                    // If precedence is lower
-                    if (Precedence.value[binaryObj.getID()] < Precedence.value[binaryObj.getParent().getID()]) {
-                        brackets=true;
-                    }
-                }
-                if (brackets) {
-                    Grouping newBrackets = new Grouping(31, "BracketsRnd");
-                    newBrackets.setChild(binaryObj);
-                    binaryObj.setParent(newBrackets);
-                    pasteTree(layer, n, newBrackets, 0);
-                    
-                } else {
-                    
-                    JPanel tempArgument = null;
-                    
-                    int first = -1;
-                    int second = -1;
-                    // Fraction
-                    if (binaryObj.getID() == 1) {
-                        first=2;
-                        second=1;
-                    }
-                    // Unknown function
-                    if (binaryObj.getID() == 50) {
-                        first=0;
-                        second=3;
-                    }
-                    
-                    // Superscript or Subscript
-                    if (binaryObj.getID() == 7 || binaryObj.getID() == 8) {
-                        first=0;
-                        second=1;
-                    }
-                    // N-th root
-                    if (binaryObj.getID() == 6) {
-                        first=3;
-                        second=2;
-                    }
-                    
-                    if (first != -1) {
-                        addLayout(layer, n, inputComponents[binaryObj.getID()], status, false, 0, 0, null);
-                        JPanel tempLayer = (JPanel)layer.getComponent(n);
-                        tempArgument = (JPanel)tempLayer.getComponent(first);
-                        tempArgument.remove(0);
-                        pasteTree(tempArgument, 0, binaryObj.getLeftChild(), 0);
-                        tempArgument = (JPanel)tempLayer.getComponent(second);
-                        tempArgument.remove(0);
-                        pasteTree(tempArgument, 0, binaryObj.getRightChild(), 0);
-                    } else {
-                        addOperator(layer, n, inputComponents[binaryObj.getID()], status, false, null);
-                        JComponent temp = (JComponent)layer.getComponent(n+2);
-                        layer.remove(n);
-                        pasteTree(layer, n, binaryObj.getLeftChild(), 0);
-                        
-                        int i = getComponentPosition(layer, temp);
-                        layer.remove(i);
-                        pasteTree(layer, i, binaryObj.getRightChild(), 0);
-                    }
+            } else {
+                
+                JPanel tempArgument = null;
+                
+                int first = -1;
+                int second = -1;
+                // Fraction
+                if (binaryObj.getID() == 1) {
+                    first=2;
+                    second=1;
                 }
-            }
-            
-            if (start.getClass().getName().equals("Tree.NaryFunction")) {
-                NaryFunction naryFunctionObj = (NaryFunction)start;
-                // Product + Sum
-                if (naryFunctionObj.getID() == 54 || naryFunctionObj.getID() == 55) {
-                    addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
-                    JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
-                    
-                    tempArgument = (JPanel)tempLayer.getComponent(0);
-                    tempArgument = (JPanel)tempArgument.getComponent(2);
-                    tempArgument = (JPanel)tempArgument.getComponent(0);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
-                    
-                    tempArgument = (JPanel)tempLayer.getComponent(0);
-                    tempArgument = (JPanel)tempArgument.getComponent(2);
-                    tempArgument = (JPanel)tempArgument.getComponent(2);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(2), 0);
-                    
-                    tempArgument = (JPanel)tempLayer.getComponent(0);
-                    tempArgument = (JPanel)tempArgument.getComponent(0);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(3), 0);
+                // Unknown function
+                if (binaryObj.getID() == 50) {
+                    first=0;
+                    second=3;
                 }
-                // Definite Integral
-                if (naryFunctionObj.getID() == 53) {
-                    addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
-                    JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(3);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
-                    
-                    tempArgument = (JPanel)tempLayer.getComponent(2);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
-                    
-                    tempArgument = (JPanel)tempLayer.getComponent(0);
-                    tempArgument = (JPanel)tempArgument.getComponent(2);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(2), 0);
-                    
-                    tempArgument = (JPanel)tempLayer.getComponent(0);
-                    tempArgument = (JPanel)tempArgument.getComponent(0);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(3), 0);
+                
+                // Superscript or Subscript
+                if (binaryObj.getID() == 7 || binaryObj.getID() == 8) {
+                    first=0;
+                    second=1;
                 }
-                // Limit
-                if (naryFunctionObj.getID() == 56) {
-                    addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
-                    JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
-                    
-                    tempArgument = (JPanel)tempLayer.getComponent(0);
-                    tempArgument = (JPanel)tempArgument.getComponent(1);
-                    tempArgument = (JPanel)tempArgument.getComponent(0);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
-                    
-                    tempArgument = (JPanel)tempLayer.getComponent(0);
-                    tempArgument = (JPanel)tempArgument.getComponent(1);
-                    tempArgument = (JPanel)tempArgument.getComponent(2);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(2), 0);
+                // N-th root
+                if (binaryObj.getID() == 6) {
+                    first=3;
+                    second=2;
                 }
-                // Evaluate
-                if (naryFunctionObj.getID() == 57) {
-                    addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
+                
+                if (first != -1) {
+                    addLayout(layer, n, inputComponents[binaryObj.getID()], status, false, 0, 0, null);
                     JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(2);
+                    tempArgument = (JPanel)tempLayer.getComponent(first);
                     tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
-                    
-                    tempArgument = (JPanel)tempLayer.getComponent(1);
-                    tempArgument = (JPanel)tempArgument.getComponent(0);
+                    pasteTree(tempArgument, 0, binaryObj.getLeftChild(), 0);
+                    tempArgument = (JPanel)tempLayer.getComponent(second);
                     tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
+                    pasteTree(tempArgument, 0, binaryObj.getRightChild(), 0);
+                } else {
+                    addOperator(layer, n, inputComponents[binaryObj.getID()], status, false, null);
+                    JComponent temp = (JComponent)layer.getComponent(n+2);
+                    layer.remove(n);
+                    pasteTree(layer, n, binaryObj.getLeftChild(), 0);
                     
-                    tempArgument = (JPanel)tempLayer.getComponent(1);
-                    tempArgument = (JPanel)tempArgument.getComponent(2);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(2), 0);
-                }
-                // Integral
-                if (naryFunctionObj.getID() == 45) {
-                    addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
-                    JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(3);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
-                    tempArgument = (JPanel)tempLayer.getComponent(2);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
-                }
-                // Differential, Partial Differential
-                if (naryFunctionObj.getID() == 46 || naryFunctionObj.getID() == 84) {
-                    addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
-                    JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
-                    tempArgument = (JPanel)tempLayer.getComponent(0);
-                    tempArgument = (JPanel)tempArgument.getComponent(2);
-                    tempArgument = (JPanel)tempArgument.getComponent(1);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
+                    int i = getComponentPosition(layer, temp);
+                    layer.remove(i);
+                    pasteTree(layer, i, binaryObj.getRightChild(), 0);
                 }
             }
-            
-            
-            if (start.getClass().getName().equals("Tree.Function")) {
-                Function functionObj = (Function)start;
-                // Square root
-                if (functionObj.getID() == 5) {
-                    addLayout(layer, n, inputComponents[functionObj.getID()], status, false, 0, 0, null);
-                    JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(2);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, functionObj.getChild(), 0);
-                    // Exponential
-                } else  if (functionObj.getID() == 29) {
-                    addLayout(layer, n, inputComponents[functionObj.getID()], status, false, 0, 0, null);
-                    JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, functionObj.getChild(), 0);
-                    // Factorial
-                } else  if (functionObj.getID() == 37) {
-                    addLayout(layer, n, inputComponents[functionObj.getID()], status, false, 0, 0, null);
-                    JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, functionObj.getChild(), 0);
-                } else {
-                    addFunction(layer, n, inputComponents[functionObj.getID()], status, false, null);
-                    JPanel tempLayer = (JPanel)layer.getComponent(n);
-                    JPanel tempArgument = (JPanel)tempLayer.getComponent(2);
-                    tempArgument.remove(0);
-                    pasteTree(tempArgument, 0, functionObj.getChild(), 0);
-                }
+            return null;
+        }
+        
+        public Object visit(NaryFunction naryFunctionObj, Object data) {
+            // Product + Sum
+            if (naryFunctionObj.getID() == 54 || naryFunctionObj.getID() == 55) {
+                addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
+                JPanel tempLayer = (JPanel)layer.getComponent(n);
+                
+                JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
+                
+                tempArgument = (JPanel)tempLayer.getComponent(0);
+                tempArgument = (JPanel)tempArgument.getComponent(2);
+                tempArgument = (JPanel)tempArgument.getComponent(0);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
+                
+                tempArgument = (JPanel)tempLayer.getComponent(0);
+                tempArgument = (JPanel)tempArgument.getComponent(2);
+                tempArgument = (JPanel)tempArgument.getComponent(2);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(2), 0);
+                
+                tempArgument = (JPanel)tempLayer.getComponent(0);
+                tempArgument = (JPanel)tempArgument.getComponent(0);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(3), 0);
             }
-            
-            if (start.getClass().getName().equals("Tree.Matrix")) {
-                Matrix matrixObj = (Matrix)start;
+            // Definite Integral
+            if (naryFunctionObj.getID() == 53) {
+                addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
+                JPanel tempLayer = (JPanel)layer.getComponent(n);
+                
+                JPanel tempArgument = (JPanel)tempLayer.getComponent(3);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
+                
+                tempArgument = (JPanel)tempLayer.getComponent(2);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
                 
-                int matrix_m = matrixObj.getM();
-                int matrix_n = matrixObj.getN();
-                addLayout(layer, n, inputComponents[matrixObj.getID()], status, false, matrix_m, matrix_n, null);
+                tempArgument = (JPanel)tempLayer.getComponent(0);
+                tempArgument = (JPanel)tempArgument.getComponent(2);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(2), 0);
+                
+                tempArgument = (JPanel)tempLayer.getComponent(0);
+                tempArgument = (JPanel)tempArgument.getComponent(0);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(3), 0);
+            }
+            // Limit
+            if (naryFunctionObj.getID() == 56) {
+                addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
                 JPanel tempLayer = (JPanel)layer.getComponent(n);
-                JPanel argumentLayer = (JPanel)tempLayer.getComponent(1);
-                Component[] components = argumentLayer.getComponents();
                 
-                MathObject[][] array = matrixObj.getArray();
+                JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
                 
-                int x=0; int y=0;
-                while (y < matrix_m) {
-                    while (x < matrix_n) {
-                        int i = x + (y*matrix_n);
-                        JPanel temp = (JPanel)components[i];
-                        temp.remove(0);
-                        pasteTree(temp, 0, matrixObj.getElement(y,x), 0);
-                        x++;
-                    }
-                    x=0;
-                    y++;
-                }
+                tempArgument = (JPanel)tempLayer.getComponent(0);
+                tempArgument = (JPanel)tempArgument.getComponent(1);
+                tempArgument = (JPanel)tempArgument.getComponent(0);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
+                
+                tempArgument = (JPanel)tempLayer.getComponent(0);
+                tempArgument = (JPanel)tempArgument.getComponent(1);
+                tempArgument = (JPanel)tempArgument.getComponent(2);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(2), 0);
             }
-            
-            if (start.getClass().getName().equals("Tree.Grouping")) {
-                Grouping groupingObj = (Grouping)start;
-                addGrouping(layer, n, inputComponents[groupingObj.getID()], status, false, null);
+            // Evaluate
+            if (naryFunctionObj.getID() == 57) {
+                addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
+                JPanel tempLayer = (JPanel)layer.getComponent(n);
+                
+                JPanel tempArgument = (JPanel)tempLayer.getComponent(2);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
+                
+                tempArgument = (JPanel)tempLayer.getComponent(1);
+                tempArgument = (JPanel)tempArgument.getComponent(0);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
+                
+                tempArgument = (JPanel)tempLayer.getComponent(1);
+                tempArgument = (JPanel)tempArgument.getComponent(2);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(2), 0);
+            }
+            // Integral
+            if (naryFunctionObj.getID() == 45) {
+                addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
+                JPanel tempLayer = (JPanel)layer.getComponent(n);
+                JPanel tempArgument = (JPanel)tempLayer.getComponent(3);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
+                tempArgument = (JPanel)tempLayer.getComponent(2);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
+            }
+            // Differential, Partial Differential
+            if (naryFunctionObj.getID() == 46 || naryFunctionObj.getID() == 84) {
+                addLayout(layer, n, inputComponents[naryFunctionObj.getID()], status, false, 0, 0, null);
                 JPanel tempLayer = (JPanel)layer.getComponent(n);
                 JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
                 tempArgument.remove(0);
-                pasteTree(tempArgument, 0, groupingObj.getChild(), 0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(0), 0);
+                tempArgument = (JPanel)tempLayer.getComponent(0);
+                tempArgument = (JPanel)tempArgument.getComponent(2);
+                tempArgument = (JPanel)tempArgument.getComponent(1);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, naryFunctionObj.getChild(1), 0);
+            }
+            return null;
+        }
+        
+        public Object visit(Function functionObj, Object data) {
+            // Square root
+            if (functionObj.getID() == 5) {
+                addLayout(layer, n, inputComponents[functionObj.getID()], status, false, 0, 0, null);
+                JPanel tempLayer = (JPanel)layer.getComponent(n);
+                JPanel tempArgument = (JPanel)tempLayer.getComponent(2);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, functionObj.getChild(), 0);
+                // Exponential
+            } else  if (functionObj.getID() == 29) {
+                addLayout(layer, n, inputComponents[functionObj.getID()], status, false, 0, 0, null);
+                JPanel tempLayer = (JPanel)layer.getComponent(n);
+                JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, functionObj.getChild(), 0);
+                // Factorial
+            } else  if (functionObj.getID() == 37) {
+                addLayout(layer, n, inputComponents[functionObj.getID()], status, false, 0, 0, null);
+                JPanel tempLayer = (JPanel)layer.getComponent(n);
+                JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, functionObj.getChild(), 0);
+            } else {
+                addFunction(layer, n, inputComponents[functionObj.getID()], status, false, null);
+                JPanel tempLayer = (JPanel)layer.getComponent(n);
+                JPanel tempArgument = (JPanel)tempLayer.getComponent(2);
+                tempArgument.remove(0);
+                pasteTree(tempArgument, 0, functionObj.getChild(), 0);
+            }
+            return null;
+        }
+        
+        public Object visit(Matrix matrixObj, Object data) {
+            
+            int matrix_m = matrixObj.getM();
+            int matrix_n = matrixObj.getN();
+            addLayout(layer, n, inputComponents[matrixObj.getID()], status, false, matrix_m, matrix_n, null);
+            JPanel tempLayer = (JPanel)layer.getComponent(n);
+            JPanel argumentLayer = (JPanel)tempLayer.getComponent(1);
+            Component[] components = argumentLayer.getComponents();
+            
+            MathObject[][] array = matrixObj.getArray();
+            
+            int x=0; int y=0;
+            while (y < matrix_m) {
+                while (x < matrix_n) {
+                    int i = x + (y*matrix_n);
+                    JPanel temp = (JPanel)components[i];
+                    temp.remove(0);
+                    pasteTree(temp, 0, matrixObj.getElement(y,x), 0);
+                    x++;
+                }
+                x=0;
+                y++;
             }
+            return null;
+        }
+        
+        public Object visit(Grouping groupingObj, Object data) {
+            addGrouping(layer, n, inputComponents[groupingObj.getID()], status, false, null);
+            JPanel tempLayer = (JPanel)layer.getComponent(n);
+            JPanel tempArgument = (JPanel)tempLayer.getComponent(1);
+            tempArgument.remove(0);
+            pasteTree(tempArgument, 0, groupingObj.getChild(), 0);
+            return null;
+        }
+        
+        public Object visit(NaryOperator naryObj, Object data) {
             
-            if (start.getClass().getName().equals("Tree.NaryOperator")) {
-                NaryOperator naryObj = (NaryOperator)start;
+            // Decide if brackets are required using precedence table and location in the tree
+            boolean brackets = false;
+            // If parent is not fraction - as precedence is explicit in display
+            if (naryObj.getParent() != null  && naryObj.getParent().getID() != 1) {
+                // If precedence is lower
+                if (Precedence.value[naryObj.getID()] < Precedence.value[naryObj.getParent().getID()]) {
+                    brackets=true;
+                }
+            }
+            if (brackets) {
+                Grouping newBrackets = new Grouping(31, "BracketsRnd");
+                newBrackets.setChild(naryObj);
+                naryObj.setParent(newBrackets);
+                pasteTree(layer, n, newBrackets, 0);
                 
-                // Decide if brackets are required using precedence table and location in the tree
-                boolean brackets = false;
-                // If parent is not fraction - as precedence is explicit in display
-                if (naryObj.getParent() != null  && naryObj.getParent().getID() != 1) {
-                    // If precedence is lower
-                    if (Precedence.value[naryObj.getID()] < Precedence.value[naryObj.getParent().getID()]) {
-                        brackets=true;
-                    }
+            } else {
+                
+                addOperator(layer, n, inputComponents[naryObj.getID()], status, false, null);
+                int i = naryObj.getSize()-2;
+                int j=n;
+                while (i > 0) {
+                    j=j+2;
+                    addOperator(layer, j, inputComponents[naryObj.getID()], 1, false, null);
+                    i--;
                 }
-                if (brackets) {
-                    Grouping newBrackets = new Grouping(31, "BracketsRnd");
-                    newBrackets.setChild(naryObj);
-                    naryObj.setParent(newBrackets);
-                    pasteTree(layer, n, newBrackets, 0);
-                    
-                } else {
-                    
-                    addOperator(layer, n, inputComponents[naryObj.getID()], status, false, null);
-                    int i = naryObj.getSize()-2;
-                    int j=n;
-                    while (i > 0) {
-                        j=j+2;
-                        addOperator(layer, j, inputComponents[naryObj.getID()], 1, false, null);
-                        i--;
-                    }
-                    
-                    i = naryObj.getSize();
-                    JComponent temp = null;
-                    while (i > 1) {
-                        temp = (JComponent)layer.getComponent(n+2);
-                        layer.remove(n);
-                        pasteTree(layer, n, naryObj.getChild(i-1), 0);
-                        n = getComponentPosition(layer, temp);
-                        i--;
-                    }
+                
+                i = naryObj.getSize();
+                JComponent temp = null;
+                while (i > 1) {
+                    temp = (JComponent)layer.getComponent(n+2);
                     layer.remove(n);
                     pasteTree(layer, n, naryObj.getChild(i-1), 0);
+                    n = getComponentPosition(layer, temp);
+                    i--;
                 }
+                layer.remove(n);
+                pasteTree(layer, n, naryObj.getChild(i-1), 0);
             }
+            return null;
+        }
+        
+        public Object visit(MathObject node, Object data) {
+            return null;
         }
-        layer.repaint();
-        layer.revalidate();
     }
     
     
@@ -0,0 +1,214 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Display;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.jdom.Element;
+
+/**
+ * The components of the component configuration file, CompConfig.xml, read once so the ID, group and name
+ * of a component can be found without reading the XML or parsing strings. Components can be found by their ID,
+ * their name, their tag (the name of the display component, e.g. "2-Add") or the class of the JEP function
+ * that parses them. The registry is not changed after it is created, so it can be used from any thread.
+ * @author Alex Billingsley
+ */
+public class ComponentRegistry {
+
+    // Package of the functions added to the JEP parser
+    private static final String JEP_FUNCTION_PACKAGE = "org.nfunk.jep.function.";
+
+    private static volatile ComponentRegistry shared = null;
+
+    private final Element inpComps;
+    // Indexed by ID, with null or -1 for IDs that are not used
+    private final String[] names;
+    private final String[] tags;
+    private final int[] groups;
+    private final Element[] elements;
+    // Name, tag and JEP class name of each component, to its ID
+    private final Map byName = new HashMap();
+    private final Map byTag = new HashMap();
+    private final Map byClass = new HashMap();
+
+    /** Creates a new instance of ComponentRegistry
+     * @param inpComps the root element of CompConfig.xml
+     * @throws NumberFormatException if the ID or group of a component is not a number
+     */
+    public ComponentRegistry(Element inpComps) throws java.lang.NumberFormatException {
+        this.inpComps = inpComps;
+
+        int maxID = -1;
+        Iterator iterator = inpComps.getChildren().iterator();
+        while (iterator.hasNext()) {
+            Element comp = (Element)iterator.next();
+            if (comp.getAttributeValue("ID") != null) {
+                maxID = Math.max(maxID, Integer.parseInt(comp.getAttributeValue("ID")));
+            }
+        }
+
+        names = new String[maxID + 1];
+        tags = new String[maxID + 1];
+        groups = new int[maxID + 1];
+        elements = new Element[maxID + 1];
+        java.util.Arrays.fill(groups, -1);
+
+        iterator = inpComps.getChildren().iterator();
+        while (iterator.hasNext()) {
+            Element comp = (Element)iterator.next();
+            if (comp.getAttributeValue("ID") != null && comp.getAttributeValue("group") != null) {
+                int id = Integer.parseInt(comp.getAttributeValue("ID"));
+                String name = comp.getName();
+                names[id] = name;
+                tags[id] = id + "-" + name;
+                groups[id] = Integer.parseInt(comp.getAttributeValue("group"));
+                elements[id] = comp;
+
+                Integer key = Integer.valueOf(id);
+                byName.put(name, key);
+                byTag.put(tags[id], key);
+                byClass.put(JEP_FUNCTION_PACKAGE + name, key);
+            }
+        }
+    }
+
+    /** Returns the registry for a component configuration, creating it if the configuration is not the one
+     * of the registry last returned. The registry is then returned by <code>getShared</code>.
+     * @param inpComps the root element of CompConfig.xml
+     * @return The registry
+     */
+    public static ComponentRegistry getRegistry(Element inpComps) {
+        ComponentRegistry registry = shared;
+        if (registry == null || registry.inpComps != inpComps) {
+            registry = new ComponentRegistry(inpComps);
+            shared = registry;
+        }
+        return registry;
+    }
+
+    /** Returns the registry last returned by <code>getRegistry</code>, which is the one for the component
+     * configuration loaded by the applet
+     * @return The registry, or null if no configuration has been loaded
+     */
+    public static ComponentRegistry getShared() {
+        return shared;
+    }
+
+    /** Returns the component configuration the registry was created from
+     * @return The root element of CompConfig.xml
+     */
+    public Element getComponents() {
+        return inpComps;
+    }
+
+    /** Returns the greatest ID of the components
+     * @return The greatest ID
+     */
+    public int getMaxID() {
+        return names.length - 1;
+    }
+
+    /** Returns the ID of a component from its name
+     * @param name the name of the component, e.g. "Add"
+     * @return The ID, or -1 if there is no component with the name
+     */
+    public int getID(String name) {
+        return lookup(byName, name);
+    }
+
+    /** Returns the ID of a component from its tag, the name given to the components of the display
+     * @param tag the tag, e.g. "2-Add"
+     * @return The ID, or -1 if there is no component with the tag
+     */
+    public int getIDByTag(String tag) {
+        return lookup(byTag, tag);
+    }
+
+    /** Returns the ID of the component parsed by a function of the JEP parser
+     * @param className the full name of the class of the function, e.g. "org.nfunk.jep.function.Add"
+     * @return The ID, or -1 if the function is not a component
+     */
+    public int getIDByClass(String className) {
+        int id = lookup(byClass, className);
+        if (id == -1 && className != null) {
+            // Functions in other packages are found by the name of the class
+            id = getID(className.substring(className.lastIndexOf(".") + 1));
+        }
+        return id;
+    }
+
+    /** Returns the name of a component
+     * @param id the ID of the component
+     * @return The name, or null if there is no component with the ID
+     */
+    public String getName(int id) {
+        if (id < 0 || id >= names.length) {
+            return null;
+        }
+        return names[id];
+    }
+
+    /** Returns the tag of a component, the name given to the components of the display
+     * @param id the ID of the component
+     * @return The tag, or null if there is no component with the ID
+     */
+    public String getTag(int id) {
+        if (id < 0 || id >= tags.length) {
+            return null;
+        }
+        return tags[id];
+    }
+
+    /** Returns the group of a component, as in the constants of <code>AddComponent</code>
+     * @param id the ID of the component
+     * @return The group, or -1 if there is no component with the ID
+     */
+    public int getGroup(int id) {
+        if (id < 0 || id >= groups.length) {
+            return -1;
+        }
+        return groups[id];
+    }
+
+    /** Returns the element of a component in CompConfig.xml, for its other attributes
+     * @param id the ID of the component
+     * @return The element, or null if there is no component with the ID
+     */
+    public Element getElement(int id) {
+        if (id < 0 || id >= elements.length) {
+            return null;
+        }
+        return elements[id];
+    }
+
+    private static int lookup(Map map, String key) {
+        if (key == null) {
+            return -1;
+        }
+        Integer id = (Integer)map.get(key);
+        if (id == null) {
+            return -1;
+        }
+        return id.intValue();
+    }
+}
@@ -24,7 +24,6 @@ package Display;
 import javax.swing.*;
 import javax.swing.border.*;
 import java.awt.event.*;
-import java.util.Stack;
 import Tree.BuildTree;
 
 /**
@@ -74,19 +73,9 @@ public class FocListener implements FocusListener {
             target.setText(newContent);
         }
         
-        Stack boxStack;
         try {
-            boxStack = BuildTree.parseString(target.getText(), new Stack());
-            int i=0;
-            Stack outputStack = new Stack();
-            while (i < boxStack.size()) {
-                outputStack.push(boxStack.get(i));
-                i++;
-            }
-            if (outputStack.size() > 1) {
-                Tree.MathObject tree = (Tree.MathObject)outputStack.pop();
-                BuildTree.toTree(tree, outputStack);
-                
+            Tree.MathObject tree = BuildTree.parseTree(target.getText());
+            if (BuildTree.isLeaf(tree) == false) {
                 JPanel parent = (JPanel)target.getParent();
                 int j = addComponent.getComponentPosition(parent, target);
                 parent.remove(target);
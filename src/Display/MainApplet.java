@@ -34,7 +34,6 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.*;
 import javax.imageio.ImageIO;
-import java.util.Stack;
 import java.io.*;
 
 import org.jdom.*;
@@ -325,12 +324,9 @@ public class MainApplet extends javax.swing.JApplet {
     }
     
     public void openWithExpression(String expression) {
-        Stack outputStack;
         try {
-            outputStack = BuildTree.parseString(expression, new Stack());
-            if (outputStack.size() > 1) {
-                Tree.MathObject tree = (Tree.MathObject)outputStack.pop();
-                BuildTree.toTree(tree, outputStack);
+            Tree.MathObject tree = BuildTree.parseTree(expression);
+            if (BuildTree.isLeaf(tree) == false) {
                 addComponent.pasteTree(jPanelWorkspace, 0, tree, 0);
                 System.out.println("Expression loaded");
             }
@@ -377,6 +373,7 @@ public class MainApplet extends javax.swing.JApplet {
         try{
             componentFile = builder.build(this.getClass().getResourceAsStream("/Display/CompConfig.xml"));
             inpComps = componentFile.getRootElement();
+            ComponentRegistry.getRegistry(inpComps);
         } catch (IOException ex) {
             JOptionPane.showMessageDialog(null, "Error loading internal component file - please correct", "DragMath", JOptionPane.ERROR_MESSAGE);
         } catch (JDOMException ex) {
@@ -2709,8 +2706,8 @@ public class MainApplet extends javax.swing.JApplet {
                 if (DrgmFileFilter.isDrgmFile(chooser.getSelectedFile()) == false) {
                     filePath = filePath + ".drgm";
                 }
-                ObjectOutputStream expressionFile = new ObjectOutputStream(new FileOutputStream(filePath));
-                expressionFile.writeObject(buildTree.generateTree(jPanelWorkspace, false, 0, 0));
+                Tree.TreeWriter expressionFile = new Tree.TreeWriter(new BufferedOutputStream(new FileOutputStream(filePath)));
+                expressionFile.writeTree(buildTree.generateTree(jPanelWorkspace, false, 0, 0));
                 expressionFile.close();
                 statusBar.println("Expression saved");
             } catch (FileNotFoundException ex) {
@@ -2731,17 +2728,13 @@ public class MainApplet extends javax.swing.JApplet {
         if(returnVal == JFileChooser.APPROVE_OPTION) {
             Tree.MathObject tree = null;
             try {
-                String temp = chooser.getSelectedFile().getPath();
-                ObjectInputStream expressionFile = new ObjectInputStream(new FileInputStream(chooser.getSelectedFile().getPath()));
-                tree = (Tree.MathObject) expressionFile.readObject();
-                expressionFile.close();
+                // Files saved by earlier versions are read with Java serialization
+                tree = Tree.TreeReader.read(chooser.getSelectedFile());
                 jPanelWorkspace.removeAll();
                 addComponent.pasteTree(jPanelWorkspace, 0, tree, 0);
                 addComponent.resetUndoRedo();
             } catch (FileNotFoundException ex) {
                 JOptionPane.showMessageDialog(null, langMan.readLangFile("LoadingExp"), "DragMath", JOptionPane.ERROR_MESSAGE);
-            } catch (ClassNotFoundException ex) {
-                JOptionPane.showMessageDialog(null, langMan.readLangFile("LoadingExp"), "DragMath", JOptionPane.ERROR_MESSAGE);
             } catch (IOException ex) {
                 JOptionPane.showMessageDialog(null, langMan.readLangFile("LoadingExp"), "DragMath", JOptionPane.ERROR_MESSAGE);
             }
@@ -79,75 +79,82 @@ public class TreeDisplay extends javax.swing.JFrame {
     
     // Traverses the tree left-to-right, adding nodes into the JTree at each stage
     public void traverse(MathObject start, DefaultMutableTreeNode currentNode) throws java.lang.NullPointerException {
+        start.accept(new NodeBuilder(), currentNode);
+    }
+    
+    // Adds a JTree node for each type of node of the tree to the JTree node passed as the data of the visitor
+    private class NodeBuilder implements MathObjectVisitor {
         
-        if (start.getClass().getName().equals("Tree.Text")) {
-            Tree.Text textObj = (Tree.Text)start;
+        public Object visit(Tree.Text textObj, Object currentNode) {
             DefaultMutableTreeNode text = new DefaultMutableTreeNode(textObj.getText());
-            currentNode.add(text);
+            ((DefaultMutableTreeNode)currentNode).add(text);
+            return null;
         }
         
-        if (start.getClass().getName().equals("Tree.Variable")) {
-            Tree.Variable variableObj = (Tree.Variable)start;
-             DefaultMutableTreeNode var = new DefaultMutableTreeNode(String.valueOf(variableObj.getVarName()));
-            currentNode.add(var);
+        public Object visit(Tree.Variable variableObj, Object currentNode) {
+            DefaultMutableTreeNode var = new DefaultMutableTreeNode(String.valueOf(variableObj.getVarName()));
+            ((DefaultMutableTreeNode)currentNode).add(var);
+            return null;
         }
         
-        if (start.getClass().getName().equals("Tree.RealNumber")) {
-            Tree.RealNumber numberObj = (Tree.RealNumber)start;
+        public Object visit(Tree.RealNumber numberObj, Object currentNode) {
             DefaultMutableTreeNode number = new DefaultMutableTreeNode(numberObj.getNumber(true));
-            currentNode.add(number);
+            ((DefaultMutableTreeNode)currentNode).add(number);
+            return null;
         }
         
-        if (start.getClass().getName().equals("Tree.BinaryOperator")) {
-            BinaryOperator binaryObj = (BinaryOperator)start;
+        public Object visit(BinaryOperator binaryObj, Object currentNode) {
             DefaultMutableTreeNode binary = new DefaultMutableTreeNode(inputComponents[binaryObj.getID()].getDisplayText());
-            currentNode.add(binary);
-            traverse(binaryObj.getRightChild(), binary);
-            traverse(binaryObj.getLeftChild(), binary);
+            ((DefaultMutableTreeNode)currentNode).add(binary);
+            binaryObj.getRightChild().accept(this, binary);
+            binaryObj.getLeftChild().accept(this, binary);
+            return null;
         }
         
-        if (start.getClass().getName().equals("Tree.Function")) {
-            Function functionObj = (Function)start;
+        public Object visit(Function functionObj, Object currentNode) {
             DefaultMutableTreeNode function = new DefaultMutableTreeNode(inputComponents[functionObj.getID()].getDisplayText());
-            currentNode.add(function);
-            traverse(functionObj.getChild(), function);
-            
+            ((DefaultMutableTreeNode)currentNode).add(function);
+            functionObj.getChild().accept(this, function);
+            return null;
         }
         
-        if (start.getClass().getName().equals("Tree.NaryFunction")) {
-            NaryFunction naryFunctionObj = (NaryFunction)start;
+        public Object visit(NaryFunction naryFunctionObj, Object currentNode) {
             DefaultMutableTreeNode nary = new DefaultMutableTreeNode(inputComponents[naryFunctionObj.getID()].getDisplayText());
-            currentNode.add(nary);
+            ((DefaultMutableTreeNode)currentNode).add(nary);
             int i=0;
             while (i < naryFunctionObj.getSize()) {
-                traverse(naryFunctionObj.getChild(i), nary);
+                naryFunctionObj.getChild(i).accept(this, nary);
                 i++;
             }
+            return null;
         }
         
-        if (start.getClass().getName().equals("Tree.Matrix")) {
-            Matrix matrixObj = (Matrix)start;
+        public Object visit(Matrix matrixObj, Object currentNode) {
             DefaultMutableTreeNode matrix = new DefaultMutableTreeNode(inputComponents[matrixObj.getID()].getDisplayText());
-            currentNode.add(matrix);
+            ((DefaultMutableTreeNode)currentNode).add(matrix);
+            return null;
         }
         
-        if (start.getClass().getName().equals("Tree.Grouping")) {
-            Grouping groupingObj = (Grouping)start;
+        public Object visit(Grouping groupingObj, Object currentNode) {
             DefaultMutableTreeNode grouping = new DefaultMutableTreeNode(inputComponents[groupingObj.getID()].getDisplayText());
-            currentNode.add(grouping);
-            traverse(groupingObj.getChild(), grouping);
-            
+            ((DefaultMutableTreeNode)currentNode).add(grouping);
+            groupingObj.getChild().accept(this, grouping);
+            return null;
         }
         
-        if (start.getClass().getName().equals("Tree.NaryOperator")) {
-            NaryOperator naryObj = (NaryOperator)start;
+        public Object visit(NaryOperator naryObj, Object currentNode) {
             DefaultMutableTreeNode nary = new DefaultMutableTreeNode(inputComponents[naryObj.getID()].getDisplayText());
-            currentNode.add(nary);
+            ((DefaultMutableTreeNode)currentNode).add(nary);
             int i=0;
             while (i < naryObj.getSize()) {
-                traverse(naryObj.getChild(i), nary);
+                naryObj.getChild(i).accept(this, nary);
                 i++;
             }
+            return null;
+        }
+        
+        public Object visit(MathObject node, Object currentNode) {
+            return null;
         }
     }
     
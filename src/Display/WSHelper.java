@@ -8,64 +8,97 @@
  */
 
 package Display;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import Tree.MathObject;
+import Tree.TreeReader;
+import Tree.TreeWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-
-import sun.misc.BASE64Decoder;
-import sun.misc.BASE64Encoder;
+import java.util.Base64;
 
 /**
- *
+ * Saves trees as strings and opens them again, for the <code>getFile</code> and <code>setFile</code> methods
+ * of the applet. The tree is written in the binary format of <code>TreeWriter</code>, encoded in base 64.
+ * Strings saved by earlier versions, which are serialized trees in base 64 with line breaks, can still be opened.
  * @author Alex Billingsley
  */
 public class WSHelper {
     
-    static private BASE64Encoder encode = new BASE64Encoder();
-    static private BASE64Decoder decode = new BASE64Decoder();
+    private static volatile WSMetrics metrics = null;
+    
+    /** Sets the receiver of the time taken to save and open expressions
+     * @param newMetrics the receiver, or null for none
+     */
+    static public void setMetrics(WSMetrics newMetrics) {
+        metrics = newMetrics;
+    }
+    
+    /** Returns the receiver of the time taken to save and open expressions
+     * @return The receiver, or null if there is none
+     */
+    static public WSMetrics getMetrics() {
+        return metrics;
+    }
     
+    /** Saves a tree as a string
+     * @param obj the root node of the tree
+     * @return The tree in base 64, or null if obj is not a tree or cannot be saved
+     */
     static public String OToS(Object obj) {
-        
-        long start=System.currentTimeMillis();
+        WSMetrics current = metrics;
+        long start = 0;
+        if (current != null) {
+            start = System.nanoTime();
+        }
         String out = null;
-        if (obj != null) {
+        if (obj instanceof MathObject) {
             try {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(baos);
-                oos.writeObject(obj);
-                out = encode.encode(baos.toByteArray());
+                // Encoding the whole tree at once is faster than encoding each byte as it is written
+                out = Base64.getEncoder().encodeToString(TreeWriter.toBytes((MathObject)obj));
             } catch (IOException e) {
                 e.printStackTrace();
+                if (current != null) {
+                    current.failed(e);
+                }
                 return null;
             }
         }
-        
-        long end=System.currentTimeMillis();
-        System.out.println("Encode:"+(end-start));
+        if (current != null && out != null) {
+            current.encoded(System.nanoTime() - start, out.length());
+        }
         return out;
     }
     
+    /** Opens a tree saved as a string
+     * @param str the tree in base 64, saved by this or an earlier version
+     * @return The root node of the tree, or null if the string is not a saved tree
+     */
     static public Object SToO(String str) {
-        long start=System.currentTimeMillis();
+        WSMetrics current = metrics;
+        long start = 0;
+        if (current != null) {
+            start = System.nanoTime();
+        }
         Object out = null;
         if (str != null) {
             try {
-                ByteArrayInputStream bios = new
-                        ByteArrayInputStream(decode.decodeBuffer(str));
-                ObjectInputStream ois = new ObjectInputStream(bios);
-                out = ois.readObject();
+                // The MIME decoder ignores the line breaks of strings saved by earlier versions
+                out = TreeReader.read(Base64.getMimeDecoder().decode(str));
             } catch (IOException e) {
                 e.printStackTrace();
+                if (current != null) {
+                    current.failed(e);
+                }
                 return null;
-            } catch (ClassNotFoundException e) {
+            } catch (IllegalArgumentException e) {
                 e.printStackTrace();
+                if (current != null) {
+                    current.failed(e);
+                }
                 return null;
             }
+            if (current != null) {
+                current.decoded(System.nanoTime() - start, str.length());
+            }
         }
-        long end=System.currentTimeMillis();
-        System.out.println("Decode:"+(end-start));
         return out;
     }
 }
@@ -0,0 +1,48 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Display;
+
+/**
+ * Receives the time taken to save and open expressions with <code>WSHelper</code>, for the
+ * <code>getFile</code> and <code>setFile</code> methods of the applet. Set with <code>WSHelper.setMetrics</code>.
+ * The methods may be called from any thread, and should return quickly.
+ * @author Alex Billingsley
+ */
+public interface WSMetrics {
+
+    /** Called after a tree is saved as a string
+     * @param nanos the time taken, in nanoseconds
+     * @param length the length of the string
+     */
+    public void encoded(long nanos, int length);
+
+    /** Called after a string is opened as a tree
+     * @param nanos the time taken, in nanoseconds
+     * @param length the length of the string
+     */
+    public void decoded(long nanos, int length);
+
+    /** Called when a tree cannot be saved or a string cannot be opened
+     * @param ex the error
+     */
+    public void failed(Exception ex);
+}
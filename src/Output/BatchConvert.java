@@ -0,0 +1,518 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Output;
+
+import Tree.*;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command line batch conversion of many expressions into every configured format in one pass.
+ * The input is a file of linear expressions, one per line, a directory of .drgm files, or an archive of trees (.drga).
+ * Each expression is parsed once and converted to every format in a single traversal of the tree,
+ * with the work spread across a fork-join pool. For each format a file <code>Name.txt</code> is written to the output directory,
+ * with one line for each expression in the same order as the input.
+ * With <code>-pack</code> the input is not converted, but written into an archive that can be converted later.
+ * <pre>
+ * java Output.BatchConvert [-formats Latex,MathML,...] [-formatDir formats] [-out dir]
+ *                          [-threads n] [-implicitMult] [-keepDecimals] input
+ * java Output.BatchConvert -pack archive.drga input
+ * </pre>
+ * @author Alex Billingsley
+ */
+public class BatchConvert {
+
+    /** The formats shipped with DragMath, converted to if no formats are given */
+    public static final String[] FORMATS = {"Latex", "MathML", "Maple", "Maxima", "ASCIIMathML", "Tex", "MoodleTex"};
+
+    // Number of expressions read, converted and written at a time
+    private static final int BLOCK_SIZE = 8192;
+
+    // Number of expressions below which a task is not split further
+    private static final int TASK_SIZE = 64;
+
+    private final MultiFormatConverter multiConverter;
+    private final FormatConverter[] converters;
+    private final ForkJoinPool pool;
+
+    private long expressions;
+    // Counted by the threads converting the items
+    private final AtomicLong unreadable = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /** Creates a new instance of BatchConvert
+     * @param formats the compiled formats to output
+     * @param implicitMult true if multiplication should not be output
+     * @param keepAsDouble true if whole numbers should be output as decimals
+     * @param pool the pool to run the conversions in
+     */
+    public BatchConvert(CompiledFormat[] formats, boolean implicitMult, boolean keepAsDouble, ForkJoinPool pool) {
+        multiConverter = new MultiFormatConverter(formats, implicitMult, keepAsDouble);
+        converters = new FormatConverter[formats.length];
+        int i = 0;
+        while (i < formats.length) {
+            converters[i] = new FormatConverter(formats[i], implicitMult, keepAsDouble);
+            i++;
+        }
+        this.pool = pool;
+    }
+
+    /** Parses a linear expression into a tree, in the same way as the text boxes of the applet.
+     * If the expression cannot be parsed it is kept as text.
+     * @param expression the linear expression
+     * @return The root node of the tree
+     */
+    public static MathObject parseExpression(String expression) {
+        MathObject tree;
+        try {
+            tree = BuildTree.parseTree(expression);
+        } catch (org.nfunk.jep.ParseException ex) {
+            tree = new Tree.Text(expression);
+        }
+        return tree;
+    }
+
+    /** Reads a tree saved in a .drgm file
+     * @param file the file to read
+     * @return The root node of the tree
+     * @throws IOException if the file cannot be read or does not contain a tree
+     */
+    public static MathObject readFile(File file) throws IOException {
+        return TreeReader.read(file);
+    }
+
+    /** Converts a block of expressions or .drgm files into every format, in parallel
+     * @param items the expressions (<code>String</code>), files (<code>File</code>), trees (<code>MathObject</code>)
+     * or trees in an archive (<code>TreeArchive.Entry</code>) to convert
+     * @param count the number of items in the block
+     * @param results the array to store the results in, indexed by [format][item]
+     */
+    public void convertBlock(Object[] items, int count, String[][] results) {
+        pool.invoke(new ConvertTask(items, results, 0, count));
+        expressions = expressions + count;
+    }
+
+    // Converts a range of items into every format, splitting the range between threads
+    private class ConvertTask extends RecursiveAction {
+
+        private final Object[] items;
+        private final String[][] results;
+        private final int start;
+        private final int end;
+
+        ConvertTask(Object[] items, String[][] results, int start, int end) {
+            this.items = items;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute() {
+            if (end - start <= TASK_SIZE) {
+                int i = start;
+                while (i < end) {
+                    convertItem(i);
+                    i++;
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ConvertTask(items, results, start, middle), new ConvertTask(items, results, middle, end));
+            }
+        }
+
+        private void convertItem(int i) {
+            MathObject tree = null;
+            String error = null;
+            try {
+                if (items[i] instanceof File) {
+                    tree = readFile((File)items[i]);
+                } else if (items[i] instanceof MathObject) {
+                    tree = (MathObject)items[i];
+                } else if (items[i] instanceof TreeArchive.Entry) {
+                    tree = ((TreeArchive.Entry)items[i]).getTree();
+                } else {
+                    tree = parseExpression((String)items[i]);
+                }
+            } catch (IOException ex) {
+                error = ex.getMessage();
+            } catch (RuntimeException ex) {
+                error = ex.toString();
+            }
+            if (error != null) {
+                unreadable.incrementAndGet();
+            }
+            if (tree != null) {
+                try {
+                    // All formats are converted in one traversal of the tree
+                    String[] outputs = multiConverter.convertToStrings(tree);
+                    int j = 0;
+                    while (j < outputs.length) {
+                        results[j][i] = outputs[j];
+                        j++;
+                    }
+                    return;
+                } catch (RuntimeException ex) {
+                    // convert each format separately so that only the failing formats are errors
+                }
+            }
+            int j = 0;
+            while (j < converters.length) {
+                if (tree != null) {
+                    try {
+                        results[j][i] = converters[j].convertToString(tree);
+                    } catch (RuntimeException ex) {
+                        results[j][i] = "ERROR: " + ex;
+                        errors.incrementAndGet();
+                    }
+                } else {
+                    results[j][i] = "ERROR: " + error;
+                    errors.incrementAndGet();
+                }
+                j++;
+            }
+        }
+    }
+
+    /** Returns the number of expressions converted so far
+     * @return The number of expressions
+     */
+    public long getExpressionCount() {
+        return expressions;
+    }
+
+    /** Returns the number of expressions or files that could not be read or parsed
+     * @return The number of expressions
+     */
+    public long getUnreadableCount() {
+        return unreadable.get();
+    }
+
+    /** Returns the number of conversions that failed, in any format. An expression that cannot be read
+     * is a failed conversion in every format.
+     * @return The number of errors
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /** Converts a file of linear expressions, one per line
+     * @param input the file of expressions
+     * @param outputs a writer for each format
+     * @throws IOException if reading or writing fails
+     */
+    public void convertExpressions(File input, Writer[] outputs) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), "UTF-8"));
+        try {
+            Object[] items = new Object[BLOCK_SIZE];
+            String[][] results = new String[converters.length][BLOCK_SIZE];
+            int count = 0;
+            String line = reader.readLine();
+            while (line != null) {
+                items[count] = line;
+                count++;
+                if (count == BLOCK_SIZE) {
+                    convertBlock(items, count, results);
+                    writeBlock(results, count, null, outputs);
+                    count = 0;
+                }
+                line = reader.readLine();
+            }
+            if (count > 0) {
+                convertBlock(items, count, results);
+                writeBlock(results, count, null, outputs);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Converts every .drgm file in a directory, in order of file name
+     * @param directory the directory containing the files
+     * @param outputs a writer for each format
+     * @throws IOException if reading or writing fails
+     */
+    public void convertFiles(File directory, Writer[] outputs) throws IOException {
+        File[] files = listFiles(directory);
+        String[][] results = new String[converters.length][BLOCK_SIZE];
+        Object[] items = new Object[BLOCK_SIZE];
+        int i = 0;
+        while (i < files.length) {
+            int count = Math.min(BLOCK_SIZE, files.length - i);
+            System.arraycopy(files, i, items, 0, count);
+            convertBlock(items, count, results);
+            writeBlock(results, count, items, outputs);
+            i = i + count;
+        }
+    }
+
+    // Returns the .drgm files in a directory, in order of file name
+    private static File[] listFiles(File directory) throws IOException {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase().endsWith(".drgm");
+            }
+        });
+        if (files == null) {
+            throw new IOException("Cannot read directory " + directory);
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    /** Converts every tree in an archive, in the order they were added. The trees are read from the archive
+     * by the threads that convert them.
+     * @param archive the archive
+     * @param outputs a writer for each format
+     * @throws IOException if writing fails
+     */
+    public void convertArchive(TreeArchive archive, Writer[] outputs) throws IOException {
+        String[][] results = new String[converters.length][BLOCK_SIZE];
+        Object[] items = new Object[BLOCK_SIZE];
+        int i = 0;
+        while (i < archive.getSize()) {
+            int count = Math.min(BLOCK_SIZE, archive.getSize() - i);
+            int j = 0;
+            while (j < count) {
+                items[j] = archive.getEntry(i + j);
+                j++;
+            }
+            convertBlock(items, count, results);
+            writeBlock(results, count, items, outputs);
+            i = i + count;
+        }
+    }
+
+    /** Writes a file of linear expressions or a directory of .drgm files into an archive. Expressions are named
+     * by their line number and files by their file name. Files that cannot be read are left out, with an error
+     * for each printed to <code>System.err</code>.
+     * @param input the file of expressions or directory of files
+     * @param archive the archive to write
+     * @return The number of trees written
+     * @throws IOException if reading or writing fails
+     */
+    public static int pack(File input, File archive) throws IOException {
+        TreeArchiveWriter writer = new TreeArchiveWriter(archive);
+        try {
+            if (input.isDirectory()) {
+                File[] files = listFiles(input);
+                int i = 0;
+                while (i < files.length) {
+                    MathObject tree = null;
+                    boolean read = false;
+                    try {
+                        tree = readFile(files[i]);
+                        read = true;
+                    } catch (IOException ex) {
+                        System.err.println("Skipped " + files[i].getName() + ": " + ex.getMessage());
+                    } catch (RuntimeException ex) {
+                        System.err.println("Skipped " + files[i].getName() + ": " + ex);
+                    }
+                    if (read) {
+                        writer.add(files[i].getName(), tree);
+                    }
+                    i++;
+                }
+            } else {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), "UTF-8"));
+                try {
+                    String line = reader.readLine();
+                    while (line != null) {
+                        writer.add(Integer.toString(writer.getSize() + 1), parseExpression(line));
+                        line = reader.readLine();
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return writer.getSize();
+    }
+
+    // Writes one line for each item to each output, prefixed with the file name if there are names
+    private static void writeBlock(String[][] results, int count, Object[] names, Writer[] outputs) throws IOException {
+        int j = 0;
+        while (j < outputs.length) {
+            int i = 0;
+            while (i < count) {
+                if (names != null) {
+                    if (names[i] instanceof TreeArchive.Entry) {
+                        outputs[j].write(((TreeArchive.Entry)names[i]).getName());
+                    } else {
+                        outputs[j].write(((File)names[i]).getName());
+                    }
+                    outputs[j].write('\t');
+                }
+                outputs[j].write(results[j][i]);
+                outputs[j].write('\n');
+                results[j][i] = null;
+                i++;
+            }
+            j++;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java Output.BatchConvert [-formats Latex,MathML,...] [-formatDir dir] [-out dir]");
+        System.err.println("                                [-threads n] [-implicitMult] [-keepDecimals] input");
+        System.err.println("       java Output.BatchConvert -pack archive.drga input");
+        System.err.println("input is a file of linear expressions, one per line, a directory of .drgm files, or an archive (.drga)");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) {
+        String[] formats = FORMATS;
+        File formatDir = new File("formats");
+        File outDir = new File(".");
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean implicitMult = false;
+        boolean keepAsDouble = false;
+        File input = null;
+        File packArchive = null;
+
+        int i = 0;
+        try {
+            while (i < args.length) {
+                if (args[i].equals("-formats")) {
+                    i++;
+                    formats = args[i].split(",");
+                } else if (args[i].equals("-formatDir")) {
+                    i++;
+                    formatDir = new File(args[i]);
+                } else if (args[i].equals("-out")) {
+                    i++;
+                    outDir = new File(args[i]);
+                } else if (args[i].equals("-threads")) {
+                    i++;
+                    threads = Integer.parseInt(args[i]);
+                } else if (args[i].equals("-pack")) {
+                    i++;
+                    packArchive = new File(args[i]);
+                } else if (args[i].equals("-implicitMult")) {
+                    implicitMult = true;
+                } else if (args[i].equals("-keepDecimals")) {
+                    keepAsDouble = true;
+                } else if (input == null && args[i].startsWith("-") == false) {
+                    input = new File(args[i]);
+                } else {
+                    usage();
+                }
+                i++;
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            usage();
+        } catch (NumberFormatException ex) {
+            usage();
+        }
+        if (input == null || threads < 1) {
+            usage();
+        }
+
+        if (packArchive != null) {
+            try {
+                BuildTree.loadComponents();
+                long start = System.nanoTime();
+                int count = pack(input, packArchive);
+                System.err.println("Packed " + count + " expressions into " + packArchive + " in "
+                        + String.format("%.3f", (System.nanoTime() - start) / 1e9) + " s");
+            } catch (org.jdom.JDOMException ex) {
+                System.err.println("Error reading component file: " + ex.getMessage());
+                System.exit(2);
+            } catch (IOException ex) {
+                System.err.println("Error: " + ex.getMessage());
+                System.exit(2);
+            }
+            return;
+        }
+
+        Writer[] outputs = new Writer[formats.length];
+        try {
+            BuildTree.loadComponents();
+
+            CompiledFormat[] compiled = new CompiledFormat[formats.length];
+            i = 0;
+            while (i < formats.length) {
+                compiled[i] = CompiledFormat.compile(formats[i], new File(formatDir, formats[i] + ".xml").toURI().toURL());
+                i++;
+            }
+
+            outDir.mkdirs();
+            i = 0;
+            while (i < formats.length) {
+                outputs[i] = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(outDir, formats[i] + ".txt")), "UTF-8"));
+                i++;
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            BatchConvert batch = new BatchConvert(compiled, implicitMult, keepAsDouble, pool);
+            long start = System.nanoTime();
+            if (input.isDirectory()) {
+                batch.convertFiles(input, outputs);
+            } else if (input.getName().toLowerCase().endsWith(".drga")) {
+                batch.convertArchive(new TreeArchive(input), outputs);
+            } else {
+                batch.convertExpressions(input, outputs);
+            }
+            i = 0;
+            while (i < outputs.length) {
+                outputs[i].flush();
+                i++;
+            }
+            long end = System.nanoTime();
+            pool.shutdown();
+
+            double seconds = (end - start) / 1e9;
+            long count = batch.getExpressionCount();
+            System.err.println("Converted " + count + " expressions into " + formats.length + " formats ("
+                    + (count * formats.length) + " conversions, " + batch.getErrorCount() + " errors, "
+                    + batch.getUnreadableCount() + " expressions not read) in "
+                    + String.format("%.3f", seconds) + " s");
+            if (seconds > 0) {
+                System.err.println("Throughput: " + String.format("%.0f", count / seconds) + " expressions/s, "
+                        + String.format("%.0f", count * formats.length / seconds) + " conversions/s using " + threads + " threads");
+            }
+        } catch (org.jdom.JDOMException ex) {
+            System.err.println("Error reading format file: " + ex.getMessage());
+            System.exit(2);
+        } catch (IOException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.exit(2);
+        } finally {
+            i = 0;
+            while (i < outputs.length) {
+                if (outputs[i] != null) {
+                    try {
+                        outputs[i].close();
+                    } catch (IOException ex) {
+                        // already reported
+                    }
+                }
+                i++;
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Output;
+
+import Tree.MathObject;
+import Tree.Precedence;
+
+import org.jdom.*;
+import org.jdom.input.*;
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Immutable, pre-compiled form of a format file. Each component of the file is compiled into a
+ * <code>FormatTemplate</code> once when the format is loaded, and stored in a table indexed by the
+ * ID of the component, so converting an expression does not need to search the XML document.
+ * @author Alex Billingsley
+ */
+public class CompiledFormat {
+
+    private static HashMap componentIDs;
+
+    private final String name;
+    private final boolean autoBrackets;
+    private final HashMap templates;
+    private final FormatTemplate[] components;
+    private final char[] symbols;
+    private final String[] symbolOutputs;
+
+    /** Creates a new instance of CompiledFormat from the root element of a format file
+     * @param name the name of the format, e.g. Latex
+     * @param root the root element of the format file
+     * @throws JDOMException if the format file contains an invalid attribute
+     */
+    public CompiledFormat(String name, Element root) throws JDOMException {
+        this.name = name;
+
+        Element nameElement = root.getChild("name");
+        autoBrackets = (nameElement != null && "true".equals(nameElement.getAttributeValue("AutoBrackets")));
+
+        templates = new HashMap();
+        components = new FormatTemplate[Precedence.value.length];
+        HashMap ids = getComponentIDs();
+
+        // Single character elements (e.g. greek letters) are kept in a sorted table for variables
+        char[] symbolKeys = new char[root.getChildren().size()];
+        HashMap symbolTexts = new HashMap();
+        int symbolCount = 0;
+
+        List children = root.getChildren();
+        int i = 0;
+        while (i < children.size()) {
+            Element element = (Element)children.get(i);
+            String tag = element.getName();
+            // Only the first element with a name is used, as with Element.getChild()
+            if (templates.containsKey(tag) == false) {
+                FormatTemplate template = new FormatTemplate(element);
+                templates.put(tag, template);
+
+                Integer id = (Integer)ids.get(tag);
+                if (id != null && id.intValue() >= 0 && id.intValue() < components.length) {
+                    components[id.intValue()] = template;
+                }
+                if (tag.length() == 1 && template.hasOutput()) {
+                    symbolKeys[symbolCount] = tag.charAt(0);
+                    symbolTexts.put(tag, template.getOutput());
+                    symbolCount++;
+                }
+            }
+            i++;
+        }
+
+        symbols = new char[symbolCount];
+        System.arraycopy(symbolKeys, 0, symbols, 0, symbolCount);
+        Arrays.sort(symbols);
+        symbolOutputs = new String[symbolCount];
+        i = 0;
+        while (i < symbolCount) {
+            symbolOutputs[i] = (String)symbolTexts.get(String.valueOf(symbols[i]));
+            i++;
+        }
+    }
+
+    /** Reads and compiles a format file
+     * @param name the name of the format, e.g. Latex
+     * @param in the stream to read the format file from
+     * @return The compiled format
+     * @throws JDOMException if the format file is not well formed
+     * @throws IOException if the format file cannot be read
+     */
+    public static CompiledFormat compile(String name, InputStream in) throws JDOMException, IOException {
+        Document formatDoc = new SAXBuilder().build(in);
+        return new CompiledFormat(name, formatDoc.getRootElement());
+    }
+
+    /** Reads and compiles a format file
+     * @param name the name of the format, e.g. Latex
+     * @param path the location of the format file
+     * @return The compiled format
+     * @throws JDOMException if the format file is not well formed
+     * @throws IOException if the format file cannot be read
+     */
+    public static CompiledFormat compile(String name, java.net.URL path) throws JDOMException, IOException {
+        Document formatDoc = new SAXBuilder().build(path);
+        return new CompiledFormat(name, formatDoc.getRootElement());
+    }
+
+    // Maps component names to IDs, from the component configuration file
+    private static synchronized HashMap getComponentIDs() {
+        if (componentIDs == null) {
+            componentIDs = new HashMap();
+            try {
+                InputStream in = CompiledFormat.class.getResourceAsStream("/Display/CompConfig.xml");
+                if (in != null) {
+                    List comps = new SAXBuilder().build(in).getRootElement().getChildren();
+                    int i = 0;
+                    while (i < comps.size()) {
+                        Element comp = (Element)comps.get(i);
+                        try {
+                            componentIDs.put(comp.getName(), Integer.valueOf(comp.getAttributeValue("ID")));
+                        } catch (NumberFormatException ex) {
+                            // component is only found by name
+                        }
+                        i++;
+                    }
+                    in.close();
+                }
+            } catch (JDOMException ex) {
+                // components are only found by name
+            } catch (IOException ex) {
+                // components are only found by name
+            }
+        }
+        return componentIDs;
+    }
+
+    /** Returns the name of the format
+     * @return The name of the format, e.g. Latex
+     */
+    public String getName() {
+        return name;
+    }
+
+    /** Returns whether the format uses automatic bracketing
+     * @return true if the AutoBrackets attribute is true
+     */
+    public boolean isAutoBrackets() {
+        return autoBrackets;
+    }
+
+    /** Returns the template for a component with the given name
+     * @param tag the name of the element in the format file
+     * @return The template, or null if the component is not in the file
+     */
+    public FormatTemplate getTemplate(String tag) {
+        return (FormatTemplate)templates.get(tag);
+    }
+
+    /** Returns the template for a node of the tree, found by the ID of the node
+     * @param node the node to find the template for
+     * @return The template, or null if the component is not in the file
+     */
+    public FormatTemplate getTemplate(MathObject node) {
+        int id = node.getID();
+        if (id >= 0 && id < components.length && components[id] != null) {
+            return components[id];
+        }
+        return (FormatTemplate)templates.get(node.getName());
+    }
+
+    /** Returns the output for a single character symbol, e.g. a greek letter
+     * @param symbol the character
+     * @return The text of the <code>output</code> tag, or null if the symbol is not in the file
+     */
+    public String getSymbol(char symbol) {
+        int i = Arrays.binarySearch(symbols, symbol);
+        if (i >= 0) {
+            return symbolOutputs[i];
+        }
+        return null;
+    }
+}
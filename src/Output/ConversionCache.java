@@ -0,0 +1,168 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Output;
+
+import Tree.MathObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of converted expressions, so an expression that has already been converted to a format
+ * is not converted again. Expressions are found by the structure of their tree (<code>MathObject.treeHashCode</code>
+ * and <code>treeEquals</code>), the format and the implicit multiplication and decimal settings.
+ * The least recently used expression is removed when the cache is full. The cache keeps a copy of each tree,
+ * so trees can be changed after they are converted. The cache can be used from any thread.
+ * @author Alex Billingsley
+ */
+public class ConversionCache {
+
+    /** Default number of converted expressions kept */
+    public static final int DEFAULT_SIZE = 4096;
+
+    private static final ConversionCache shared = new ConversionCache(DEFAULT_SIZE);
+
+    private final Map entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    // Finds a converted expression by its tree and the settings it was converted with
+    private static class Key {
+        final MathObject tree;
+        final int treeHash;
+        final CompiledFormat format;
+        final boolean implicitMult;
+        final boolean keepAsDouble;
+
+        Key(MathObject tree, int treeHash, FormatConverter converter) {
+            this.tree = tree;
+            this.treeHash = treeHash;
+            // The compiled format rather than its name, so a format reloaded from a changed file is not mixed up with the old one
+            this.format = converter.getFormat();
+            this.implicitMult = converter.isImplicitMult();
+            this.keepAsDouble = converter.isKeepAsDouble();
+        }
+
+        public int hashCode() {
+            int hash = treeHash;
+            hash = 31*hash + format.hashCode();
+            hash = 31*hash + (implicitMult ? 1 : 0);
+            hash = 31*hash + (keepAsDouble ? 1 : 0);
+            return hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (obj instanceof Key == false) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return treeHash == other.treeHash && format == other.format && implicitMult == other.implicitMult
+                    && keepAsDouble == other.keepAsDouble && tree.treeEquals(other.tree);
+        }
+    }
+
+    /** Creates a new instance of ConversionCache
+     * @param maxSize the greatest number of converted expressions to keep
+     */
+    public ConversionCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        // Access ordered, so the eldest entry is the least recently used
+        entries = new LinkedHashMap(maxSize + 1, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /** Returns the cache shared by the whole process
+     * @return The shared cache
+     */
+    public static ConversionCache getShared() {
+        return shared;
+    }
+
+    /** Returns the expression converted to a format, converting it only if it is not in the cache
+     * @param startNode the root node of the tree to convert
+     * @param converter the converter for the format and settings to convert with
+     * @return The expression in the format, as returned by <code>FormatConverter.convertToString</code>
+     * @throws NullPointerException if the format file is missing data for a component of the tree
+     */
+    public String convertToString(MathObject startNode, FormatConverter converter) throws java.lang.NullPointerException {
+        Key key = new Key(startNode, startNode.treeHashCode(), converter);
+        String output;
+        synchronized (entries) {
+            output = (String)entries.get(key);
+            if (output != null) {
+                hits++;
+                return output;
+            }
+            misses++;
+        }
+
+        // Converted outside the lock, so a large expression does not hold up other threads
+        output = converter.convertToString(startNode);
+        Key stored = new Key(startNode.copyTree(), key.treeHash, converter);
+        synchronized (entries) {
+            entries.put(stored, output);
+        }
+        return output;
+    }
+
+    /** Returns the number of conversions found in the cache
+     * @return The number of hits
+     */
+    public long getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    /** Returns the number of conversions not found in the cache
+     * @return The number of misses
+     */
+    public long getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    /** Returns the number of converted expressions in the cache
+     * @return The number of expressions
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** Removes every expression from the cache and sets the hit and miss counts to zero
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            hits = 0;
+            misses = 0;
+        }
+    }
+}
@@ -0,0 +1,497 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Output;
+
+import Tree.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts expressions over HTTP, so DragMath can be used by other programs without the applet.
+ * The server does not create any windows, and by default only accepts connections from the same machine.
+ * Requests are handled by a pool of threads, and connections are kept open between requests.
+ * Each request can hold many expressions, which are converted in parallel in the same way as <code>BatchConvert</code>.
+ * <p>
+ * <code>POST /convert</code> converts the expressions in the body of the request. The parameters of the URL are
+ * <ul>
+ * <li><code>formats</code> - the formats to convert to, separated by commas (default: all the formats shipped with DragMath)</li>
+ * <li><code>input</code> - <code>linear</code> for linear expressions, one on each line (default), or <code>tree</code>
+ * for trees saved by the applet's <code>getFile</code>, separated by blank lines</li>
+ * <li><code>implicitMult</code>, <code>keepDecimals</code> - <code>true</code> to set the options of the applet</li>
+ * </ul>
+ * The response has one line for each expression, with the output in each format separated by tabs. Backslashes, tabs
+ * and line breaks in the output are written as <code>\\</code>, <code>\t</code>, <code>\n</code> and <code>\r</code>.
+ * An expression that cannot be converted has a line starting with <code>ERROR: </code>.
+ * <p>
+ * <code>GET /formats</code> lists the formats that can be converted to, one on each line.
+ * <pre>
+ * java Output.ExpressionServer [-port 8095] [-host 127.0.0.1] [-formatDir formats] [-threads n]
+ * </pre>
+ * @author Alex Billingsley
+ */
+public class ExpressionServer {
+
+    /** Default port the server listens on */
+    public static final int DEFAULT_PORT = 8095;
+
+    /** Largest request body accepted, in bytes */
+    public static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final ForkJoinPool pool;
+    private final File formatDir;
+
+    /** Creates a new instance of ExpressionServer, which is not started until <code>start</code> is called
+     * @param address the address and port to listen on
+     * @param formatDir the directory containing the format files
+     * @param threads the number of threads handling requests, and converting the expressions of a request
+     * @throws IOException if the server cannot listen on the address
+     */
+    public ExpressionServer(InetSocketAddress address, File formatDir, int threads) throws IOException {
+        this.formatDir = formatDir;
+        // Responses are sent as soon as they are written, rather than waiting for more data to fill a packet
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(address, 0);
+        workers = Executors.newFixedThreadPool(threads);
+        pool = new ForkJoinPool(threads);
+        server.setExecutor(workers);
+        server.createContext("/convert", new ConvertHandler());
+        server.createContext("/formats", new FormatsHandler());
+    }
+
+    /** Starts accepting requests */
+    public void start() {
+        server.start();
+    }
+
+    /** Stops the server, waiting up to a given time for requests being handled to finish
+     * @param delay the greatest number of seconds to wait
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        workers.shutdown();
+        pool.shutdown();
+    }
+
+    /** Returns the address the server is listening on
+     * @return The address and port
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /** Returns the names of the formats in the format directory
+     * @return The names of the formats, without the .xml extension
+     */
+    public String[] getFormatNames() {
+        String[] files = formatDir.list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".xml") && isFormatName(name.substring(0, name.length() - 4));
+            }
+        });
+        if (files == null) {
+            return new String[0];
+        }
+        java.util.Arrays.sort(files);
+        int i = 0;
+        while (i < files.length) {
+            files[i] = files[i].substring(0, files[i].length() - 4);
+            i++;
+        }
+        return files;
+    }
+
+    // Format names are used as file names, so they can only contain letters and digits
+    private static boolean isFormatName(String name) {
+        if (name.length() == 0) {
+            return false;
+        }
+        int i = 0;
+        while (i < name.length()) {
+            if (Character.isLetterOrDigit(name.charAt(i)) == false) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    /** Reads a format from the format directory, compiling it only if it has changed since it was last read
+     * @param name the name of the format
+     * @return The compiled format
+     * @throws IOException if there is no format with the name or it cannot be read
+     * @throws org.jdom.JDOMException if the format file is not well formed
+     */
+    public CompiledFormat getFormat(String name) throws IOException, org.jdom.JDOMException {
+        File file = new File(formatDir, name + ".xml");
+        if (isFormatName(name) == false || file.isFile() == false) {
+            throw new FileNotFoundException("Unknown format: " + name);
+        }
+        return FormatCache.getShared().getFormat(name, file.toURI().toURL());
+    }
+
+    /** Converts linear expressions or trees into every format
+     * @param items the linear expressions (<code>String</code>) or trees (<code>MathObject</code>)
+     * @param formats the formats to convert to
+     * @param implicitMult true if multiplication should not be output
+     * @param keepAsDouble true if whole numbers should be output as decimals
+     * @return The output for each item, indexed by [format][item]
+     */
+    public String[][] convert(Object[] items, CompiledFormat[] formats, boolean implicitMult, boolean keepAsDouble) {
+        String[][] results = new String[formats.length][items.length];
+        if (items.length > 0) {
+            BatchConvert batch = new BatchConvert(formats, implicitMult, keepAsDouble, pool);
+            batch.convertBlock(items, items.length, results);
+        }
+        return results;
+    }
+
+    // Converts the expressions in the body of a request
+    private class ConvertHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (exchange.getRequestMethod().equals("POST") == false) {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    sendText(exchange, 405, "Use POST to convert expressions\n");
+                    return;
+                }
+                Map parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+                boolean implicitMult = "true".equals(parameters.get("implicitMult"));
+                boolean keepAsDouble = "true".equals(parameters.get("keepDecimals"));
+                String input = (String)parameters.get("input");
+
+                String[] names = BatchConvert.FORMATS;
+                if (parameters.get("formats") != null) {
+                    names = ((String)parameters.get("formats")).split(",");
+                }
+                CompiledFormat[] formats = new CompiledFormat[names.length];
+                int i = 0;
+                while (i < names.length) {
+                    formats[i] = getFormat(names[i]);
+                    i++;
+                }
+
+                String body = readBody(exchange);
+                if (body == null) {
+                    sendText(exchange, 413, "Request is larger than " + MAX_REQUEST_SIZE + " bytes\n");
+                    return;
+                }
+
+                String[][] results;
+                if (input == null || input.equals("linear")) {
+                    results = convert(splitLines(body), formats, implicitMult, keepAsDouble);
+                } else if (input.equals("tree")) {
+                    results = convertTrees(splitTrees(body), formats, implicitMult, keepAsDouble);
+                } else {
+                    sendText(exchange, 400, "Unknown input: " + input + "\n");
+                    return;
+                }
+                sendText(exchange, 200, formatResults(results));
+            } catch (FileNotFoundException ex) {
+                sendText(exchange, 404, ex.getMessage() + "\n");
+            } catch (org.jdom.JDOMException ex) {
+                sendText(exchange, 500, "Error reading format file: " + ex.getMessage() + "\n");
+            } catch (RuntimeException ex) {
+                sendText(exchange, 500, ex.toString() + "\n");
+            } catch (StackOverflowError ex) {
+                // A tree too deep for the stack, which only fails this request
+                sendText(exchange, 500, "Expression is too deeply nested\n");
+            } catch (OutOfMemoryError ex) {
+                sendText(exchange, 500, "Not enough memory to convert the request\n");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    // Lists the formats that can be converted to
+    private class FormatsHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                String[] names = getFormatNames();
+                StringBuilder list = new StringBuilder();
+                int i = 0;
+                while (i < names.length) {
+                    list.append(names[i]).append('\n');
+                    i++;
+                }
+                sendText(exchange, 200, list.toString());
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    // Converts saved trees, giving an error for each tree that cannot be read
+    private String[][] convertTrees(String[] encoded, CompiledFormat[] formats, boolean implicitMult, boolean keepAsDouble) {
+        String[] errors = new String[encoded.length];
+        ArrayList trees = new ArrayList();
+        int i = 0;
+        while (i < encoded.length) {
+            try {
+                trees.add(readTree(encoded[i]));
+            } catch (IOException ex) {
+                errors[i] = "ERROR: " + ex.getMessage();
+            } catch (StackOverflowError ex) {
+                errors[i] = "ERROR: Saved expression is too deeply nested";
+            }
+            i++;
+        }
+
+        String[][] converted = convert(trees.toArray(), formats, implicitMult, keepAsDouble);
+        String[][] results = new String[formats.length][encoded.length];
+        int next = 0;
+        i = 0;
+        while (i < encoded.length) {
+            int j = 0;
+            while (j < formats.length) {
+                if (errors[i] != null) {
+                    results[j][i] = errors[i];
+                } else {
+                    results[j][i] = converted[j][next];
+                }
+                j++;
+            }
+            if (errors[i] == null) {
+                next++;
+            }
+            i++;
+        }
+        return results;
+    }
+
+    /** Reads a tree saved by the applet's <code>getFile</code>, in the binary format or serialized by earlier versions.
+     * Only the classes of the tree can be read, so other objects cannot be created from the data of a request.
+     * @param encoded the saved tree, in base 64
+     * @return The root node of the tree
+     * @throws IOException if the data is not a saved tree
+     */
+    public static MathObject readTree(String encoded) throws IOException {
+        byte[] data;
+        try {
+            data = java.util.Base64.getMimeDecoder().decode(encoded);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Not a saved expression: " + ex.getMessage());
+        }
+        return TreeReader.read(data);
+    }
+
+    // Splits a body into lines, ignoring a line break at the end
+    private static String[] splitLines(String body) {
+        ArrayList lines = new ArrayList();
+        int start = 0;
+        while (start < body.length()) {
+            int end = body.indexOf('\n', start);
+            if (end == -1) {
+                end = body.length();
+            }
+            int next = end + 1;
+            if (end > start && body.charAt(end - 1) == '\r') {
+                end--;
+            }
+            lines.add(body.substring(start, end));
+            start = next;
+        }
+        return (String[])lines.toArray(new String[lines.size()]);
+    }
+
+    // Splits a body into saved trees, which are separated by blank lines
+    private static String[] splitTrees(String body) {
+        String[] lines = splitLines(body);
+        ArrayList trees = new ArrayList();
+        StringBuilder tree = new StringBuilder();
+        int i = 0;
+        while (i <= lines.length) {
+            if (i == lines.length || lines[i].trim().length() == 0) {
+                if (tree.length() > 0) {
+                    trees.add(tree.toString());
+                    tree.setLength(0);
+                }
+            } else {
+                tree.append(lines[i].trim());
+            }
+            i++;
+        }
+        return (String[])trees.toArray(new String[trees.size()]);
+    }
+
+    // Writes one line for each expression, with the output in each format separated by tabs
+    private static String formatResults(String[][] results) {
+        StringBuilder response = new StringBuilder();
+        int count = results.length > 0 ? results[0].length : 0;
+        int i = 0;
+        while (i < count) {
+            int j = 0;
+            while (j < results.length) {
+                if (j > 0) {
+                    response.append('\t');
+                }
+                escape(results[j][i], response);
+                j++;
+            }
+            response.append('\n');
+            i++;
+        }
+        return response.toString();
+    }
+
+    private static void escape(String output, StringBuilder response) {
+        int i = 0;
+        while (i < output.length()) {
+            char c = output.charAt(i);
+            if (c == '\\') {
+                response.append("\\\\");
+            } else if (c == '\t') {
+                response.append("\\t");
+            } else if (c == '\n') {
+                response.append("\\n");
+            } else if (c == '\r') {
+                response.append("\\r");
+            } else {
+                response.append(c);
+            }
+            i++;
+        }
+    }
+
+    private static Map parseQuery(String query) throws UnsupportedEncodingException {
+        Map parameters = new HashMap();
+        if (query != null) {
+            String[] pairs = query.split("&");
+            int i = 0;
+            while (i < pairs.length) {
+                int equals = pairs[i].indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(pairs[i].substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(pairs[i].substring(equals + 1), "UTF-8"));
+                } else if (pairs[i].length() > 0) {
+                    parameters.put(URLDecoder.decode(pairs[i], "UTF-8"), "true");
+                }
+                i++;
+            }
+        }
+        return parameters;
+    }
+
+    // Reads the body of a request as UTF-8, or returns null if it is too large
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read = in.read(buffer);
+        while (read != -1) {
+            if (body.size() + read > MAX_REQUEST_SIZE) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+            read = in.read(buffer);
+        }
+        return body.toString("UTF-8");
+    }
+
+    // Sends a response with its length, so the connection can be kept open for the next request
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] data = text.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, data.length == 0 ? -1 : data.length);
+        if (data.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(data);
+            out.close();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java Output.ExpressionServer [-port n] [-host address] [-formatDir dir] [-threads n]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) {
+        // No windows are needed, so AWT is never started for a display
+        System.setProperty("java.awt.headless", "true");
+
+        int port = DEFAULT_PORT;
+        String host = "127.0.0.1";
+        File formatDir = new File("formats");
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        int i = 0;
+        try {
+            while (i < args.length) {
+                if (args[i].equals("-port")) {
+                    i++;
+                    port = Integer.parseInt(args[i]);
+                } else if (args[i].equals("-host")) {
+                    i++;
+                    host = args[i];
+                } else if (args[i].equals("-formatDir")) {
+                    i++;
+                    formatDir = new File(args[i]);
+                } else if (args[i].equals("-threads")) {
+                    i++;
+                    threads = Integer.parseInt(args[i]);
+                } else {
+                    usage();
+                }
+                i++;
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            usage();
+        } catch (NumberFormatException ex) {
+            usage();
+        }
+        if (threads < 1) {
+            usage();
+        }
+
+        try {
+            BuildTree.loadComponents();
+            ExpressionServer server = new ExpressionServer(new InetSocketAddress(host, port), formatDir, threads);
+            server.start();
+            System.err.println("Converting expressions at http://" + host + ":" + server.getAddress().getPort()
+                    + "/convert using " + threads + " threads");
+        } catch (org.jdom.JDOMException ex) {
+            System.err.println("Error reading component file: " + ex.getMessage());
+            System.exit(2);
+        } catch (IOException ex) {
+            System.err.println("Error: " + ex.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Output;
+
+import org.jdom.JDOMException;
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of compiled format files, shared by every <code>OutputFormat</code> in the process.
+ * Formats are kept by name and location together with the time the file was last modified. When a
+ * format is requested and it has not been checked for a while, the time is read again and the format
+ * is recompiled if the file has changed, so format files can be edited without restarting.
+ * The least recently used format is removed when the cache is full. The cache can be used from any thread.
+ * @author Alex Billingsley
+ */
+public class FormatCache {
+
+    /** Default number of formats kept */
+    public static final int DEFAULT_SIZE = 16;
+
+    /** Default time in milliseconds between checks for a changed format file */
+    public static final long DEFAULT_CHECK_INTERVAL = 2000;
+
+    private static final FormatCache shared = new FormatCache(DEFAULT_SIZE, DEFAULT_CHECK_INTERVAL);
+
+    private final Map entries;
+    private volatile long checkInterval;
+
+    // A compiled format with the modification time of the file it was compiled from
+    private static class Entry {
+        final CompiledFormat format;
+        final long lastModified;
+        volatile long lastChecked;
+
+        Entry(CompiledFormat format, long lastModified, long lastChecked) {
+            this.format = format;
+            this.lastModified = lastModified;
+            this.lastChecked = lastChecked;
+        }
+    }
+
+    /** Creates a new instance of FormatCache
+     * @param maxSize the greatest number of formats to keep
+     * @param checkInterval the time in milliseconds between checks for a changed format file,
+     * 0 to check every time a format is requested, or a negative number to never check
+     */
+    public FormatCache(final int maxSize, long checkInterval) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        this.checkInterval = checkInterval;
+        // Access ordered, so the eldest entry is the least recently used
+        entries = new LinkedHashMap(maxSize + 1, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /** Returns the cache shared by the whole process
+     * @return The shared cache
+     */
+    public static FormatCache getShared() {
+        return shared;
+    }
+
+    /** Sets the time between checks for a changed format file
+     * @param checkInterval the time in milliseconds, 0 to check every time, or a negative number to never check
+     */
+    public void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    /** Returns a compiled format, reading and compiling the format file only if it is not in the cache
+     * or the file has changed since it was compiled. If a changed file cannot be compiled
+     * the format compiled before the change is returned.
+     * @param name the name of the format, e.g. Latex
+     * @param source the location of the format file
+     * @return The compiled format
+     * @throws JDOMException if the format file is not well formed
+     * @throws IOException if the format file cannot be read
+     */
+    public CompiledFormat getFormat(String name, URL source) throws JDOMException, IOException {
+        String key = name + "|" + source.toExternalForm();
+        Entry entry;
+        synchronized (entries) {
+            entry = (Entry)entries.get(key);
+        }
+
+        long now = System.currentTimeMillis();
+        if (entry != null) {
+            long interval = checkInterval;
+            if (interval < 0 || now - entry.lastChecked < interval) {
+                return entry.format;
+            }
+            entry.lastChecked = now;
+            long lastModified = getLastModified(source);
+            if (lastModified == entry.lastModified || lastModified == 0) {
+                return entry.format;
+            }
+            try {
+                entry = new Entry(CompiledFormat.compile(name, source), lastModified, now);
+            } catch (JDOMException ex) {
+                // file may be part way through being written, try again at the next check
+                return entry.format;
+            } catch (IOException ex) {
+                return entry.format;
+            }
+        } else {
+            // Time is read before the file, so a change while reading is found at the next check
+            long lastModified = getLastModified(source);
+            entry = new Entry(CompiledFormat.compile(name, source), lastModified, now);
+        }
+
+        // Formats are compiled outside the lock, so a slow file does not hold up other formats
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return entry.format;
+    }
+
+    /** Returns a compiled format read from a resource on the classpath, e.g. MathTran.xml
+     * @param name the name of the format
+     * @param resource the name of the resource, relative to the <code>Output</code> package
+     * @return The compiled format
+     * @throws JDOMException if the format file is not well formed
+     * @throws IOException if the resource cannot be found or read
+     */
+    public CompiledFormat getResourceFormat(String name, String resource) throws JDOMException, IOException {
+        URL source = FormatCache.class.getResource(resource);
+        if (source == null) {
+            throw new FileNotFoundException(resource);
+        }
+        return getFormat(name, source);
+    }
+
+    /** Removes every format from the cache, so each is read again when next requested
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /** Returns the number of formats in the cache
+     * @return The number of formats
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Returns the modification time of a file, or 0 if it is not known
+    private static long getLastModified(URL source) {
+        if (source.getProtocol().equals("file")) {
+            try {
+                return new File(source.toURI()).lastModified();
+            } catch (java.net.URISyntaxException ex) {
+                return new File(source.getPath()).lastModified();
+            } catch (IllegalArgumentException ex) {
+                return new File(source.getPath()).lastModified();
+            }
+        }
+        try {
+            URLConnection connection = source.openConnection();
+            if (connection instanceof HttpURLConnection) {
+                HttpURLConnection http = (HttpURLConnection)connection;
+                http.setRequestMethod("HEAD");
+                try {
+                    return http.getLastModified();
+                } finally {
+                    http.disconnect();
+                }
+            }
+            long lastModified = connection.getLastModified();
+            // Opening a connection to a jar entry or other resource opens a stream that must be closed
+            try {
+                connection.getInputStream().close();
+            } catch (IOException ex) {
+                // nothing was opened
+            }
+            return lastModified;
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+ 
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Output;
+
+import Tree.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Stateless converter from a tree to the syntax of a compiled format. A converter never changes once
+ * created and keeps no state between conversions, so one instance can be shared by many threads.
+ * It does not use AWT or Swing, so it can be used on a server with no display.
+ * @author Alex Billingsley
+ */
+public class FormatConverter {
+    
+    private final CompiledFormat format;
+    private final boolean implicitMult;
+    private final boolean keepAsDouble;
+    private final MathObjectVisitor expander = new ExpandVisitor();
+    
+    /** Creates a new instance of FormatConverter
+     * @param format the compiled format to convert to
+     * @param implicitMult true if multiplication should not be output
+     * @param keepAsDouble true if whole numbers should be output as decimals
+     */
+    public FormatConverter(CompiledFormat format, boolean implicitMult, boolean keepAsDouble) {
+        if (format == null) {
+            throw new IllegalArgumentException("No format to convert to");
+        }
+        this.format = format;
+        this.implicitMult = implicitMult;
+        this.keepAsDouble = keepAsDouble;
+    }
+    
+    /** Converts expression to a format, with explicit multiplication and whole numbers output as integers
+     * @param startNode the root node of the tree to convert
+     * @param format the compiled format to convert to
+     * @return The expression in the format
+     * @throws NullPointerException if the format file is missing data for a component of the tree
+     */
+    public static String convert(MathObject startNode, CompiledFormat format) throws java.lang.NullPointerException {
+        return new FormatConverter(format, false, false).convertToString(startNode);
+    }
+    
+    /** Converts expression to format and returns it as a string
+     * @param startNode the root node of the tree to convert
+     * @return The expression in the format
+     * @throws NullPointerException if the format file is missing data for a component of the tree
+     */
+    public String convertToString(MathObject startNode) throws java.lang.NullPointerException {
+        StringBuilder output = new StringBuilder();
+        try {
+            writeExpression(startNode, output);
+        } catch (IOException ex) {
+            // StringBuilder does not throw IOException
+        }
+        return output.toString();
+    }
+    
+    /** Converts expression to format, writing the syntax directly to <code>out</code>
+     * so that large expressions can be streamed to a file or socket without building the whole string.
+     * If the format file is missing data part of the expression may already have been written.
+     * @param startNode the root node of the tree to convert
+     * @param out the <code>Appendable</code> (e.g. a <code>Writer</code>) to write the expression to
+     * @throws IOException if writing to <code>out</code> fails
+     * @throws NullPointerException if the format file is missing data for a component of the tree
+     */
+    public void writeExpression(MathObject startNode, Appendable out) throws IOException, java.lang.NullPointerException {
+        FormatTemplate initial = getTemplate("Initial");
+        out.append(initial.getOutput(1));
+        convert(startNode, out);
+        out.append(initial.getOutput(2));
+    }
+    
+    /** Returns the format the converter converts to
+     * @return The compiled format
+     */
+    public CompiledFormat getFormat() {
+        return format;
+    }
+    
+    /** Returns whether multiplication is left out of the output
+     * @return true if multiplication is implicit
+     */
+    public boolean isImplicitMult() {
+        return implicitMult;
+    }
+    
+    /** Returns whether whole numbers are output as decimals
+     * @return true if whole numbers are output as decimals
+     */
+    public boolean isKeepAsDouble() {
+        return keepAsDouble;
+    }
+    
+    // Returns the template for a component that must be in the format file
+    private FormatTemplate getTemplate(String tag) {
+        FormatTemplate template = format.getTemplate(tag);
+        if (template == null) {
+            throw new NullPointerException("Missing " + tag + " in format file");
+        }
+        return template;
+    }
+    
+    // Returns the template for a node, which must be in the format file
+    private FormatTemplate getTemplate(MathObject node) {
+        FormatTemplate template = format.getTemplate(node);
+        if (template == null) {
+            throw new NullPointerException("Missing " + node.getName() + " in format file");
+        }
+        return template;
+    }
+    
+    // Decides if brackets are required using precedence table and location in the tree
+    private boolean needsBrackets(MathObject node, FormatTemplate template) {
+        // Checks if user wants auto bracketing, and if brackets are turned on/off in xml
+        if (format.isAutoBrackets() && template.hasBrackets()) {
+            if (node.getParent() != null) {
+                // If precedence is lower
+                if (Precedence.value[node.getID()] <= Precedence.value[node.getParent().getID()]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /** Traverses the tree left-to-right to build up the expression using data from the format file
+     * as the syntax for each component. The tree is traversed with a stack of work in the heap rather
+     * than by recursion, so there is no limit on the depth of the tree.
+     * @param start the node of the tree to start converting from
+     * @param out the <code>Appendable</code> to write the syntax to
+     * @throws IOException if writing to <code>out</code> fails
+     */
+    public void convert(MathObject start, Appendable out) throws IOException, java.lang.NullPointerException {
+        // Text still to append and nodes still to convert, with the next item at the end
+        ArrayList work = new ArrayList();
+        work.add(start);
+        while (work.isEmpty() == false) {
+            Object item = work.remove(work.size()-1);
+            if (item instanceof String) {
+                out.append((String)item);
+            } else {
+                // The visitor adds the output of the node in order, which is reversed to put the first item at the end
+                int mark = work.size();
+                ((MathObject)item).accept(expander, work);
+                reverse(work, mark);
+            }
+        }
+    }
+    
+    // Reverses the items of list from index start to the end
+    static void reverse(ArrayList list, int start) {
+        int end = list.size()-1;
+        while (start < end) {
+            Object temp = list.get(start);
+            list.set(start, list.get(end));
+            list.set(end, temp);
+            start++;
+            end--;
+        }
+    }
+    
+    // Adds the syntax for each type of node, and its children still to be converted, to the list passed as the data of the visitor
+    private class ExpandVisitor implements MathObjectVisitor {
+        
+        public Object visit(Tree.Text textObj, Object data) {
+            ArrayList out = (ArrayList)data;
+            if (textObj.getText().equals(("Infinity"))) {
+                out.add(getTemplate("Infinity").getOutput());
+            } else {
+                FormatTemplate text = getTemplate("Text");
+                out.add(text.getInitial());
+                out.add(text.getOutput(1));
+                out.add(textObj.getText());
+                out.add(text.getOutput(2));
+            }
+            return null;
+        }
+        
+        public Object visit(Tree.RealNumber numberObj, Object data) {
+            ArrayList out = (ArrayList)data;
+            FormatTemplate number = getTemplate("RealNumber");
+            out.add(number.getInitial());
+            out.add(number.getOutput(1));
+            out.add(numberObj.getNumber(keepAsDouble));
+            out.add(number.getOutput(2));
+            return null;
+        }
+        
+        public Object visit(Tree.Variable variableObj, Object data) {
+            ArrayList out = (ArrayList)data;
+            // If there is entry in output file containing symbol e.g. greek letter
+            String symbol = format.getSymbol(variableObj.getVarName());
+            if (symbol != null) {
+                out.add(symbol);
+            } else {
+                FormatTemplate var = getTemplate(variableObj.getName());
+                if (variableObj.getName().equals("Variable")) {
+                    out.add(var.getOutput(1));
+                    out.add(String.valueOf(variableObj.getVarName()));
+                    out.add(var.getOutput(2));
+                } else {
+                    out.add(var.getOutput());
+                }
+            }
+            return null;
+        }
+        
+        public Object visit(BinaryOperator binaryObj, Object data) {
+            ArrayList out = (ArrayList)data;
+            FormatTemplate binary = getTemplate(binaryObj);
+            
+            out.add(binary.getInitial());
+            
+            boolean brackets = needsBrackets(binaryObj, binary);
+            
+            if (brackets) {
+                out.add(getTemplate("BracketsRnd").getOutput(1));
+            }
+            out.add(binary.getOutput(1));
+            
+            // If reverse='true' then swap right and left child
+            if (binary.isReverse()) {
+                out.add(binaryObj.getRightChild());
+            } else {
+                out.add(binaryObj.getLeftChild());
+            }
+            
+            out.add(binary.getOutput(2));
+            
+            if (binary.isReverse()) {
+                out.add(binaryObj.getLeftChild());
+            } else {
+                out.add(binaryObj.getRightChild());
+            }
+            
+            out.add(binary.getOutput(3));
+            if (brackets) {
+                out.add(getTemplate("BracketsRnd").getOutput(2));
+            }
+            return null;
+        }
+        
+        public Object visit(Function functionObj, Object data) {
+            ArrayList out = (ArrayList)data;
+            FormatTemplate function = getTemplate(functionObj);
+            
+            out.add(function.getInitial());
+            out.add(function.getOutput(1));
+            
+            if (function.hasBrackets()) {
+                out.add(getTemplate("BracketsRnd").getOutput(1));
+            }
+            
+            out.add(functionObj.getChild());
+            out.add(function.getOutput(2));
+            
+            if (function.hasBrackets()) {
+                out.add(getTemplate("BracketsRnd").getOutput(2));
+            }
+            return null;
+        }
+        
+        public Object visit(Matrix matrixObj, Object data) {
+            ArrayList out = (ArrayList)data;
+            FormatTemplate matrix = getTemplate(matrixObj);
+            int matrix_m = matrixObj.getM();
+            int matrix_n = matrixObj.getN();
+            
+            out.add(matrix.getOutput("matrixStart"));
+            
+            int x=0; int y=0;
+            while (y < matrix_m) {
+                out.add(matrix.getOutput("rowStart"));
+                while (x < matrix_n) {
+                    out.add(matrix.getOutput("elementStart"));
+                    out.add(matrixObj.getElement(y,x));
+                    out.add(matrix.getOutput("elementEnd"));
+                    if (x != matrix_n-1) {
+                        out.add(matrix.getOutput("elementSeparator"));
+                    }
+                    x++;
+                }
+                out.add(matrix.getOutput("rowEnd"));
+                if (y != matrix_m-1) {
+                    out.add(matrix.getOutput("rowSeparator"));
+                }
+                x=0;
+                y++;
+            }
+            out.add(matrix.getOutput("matrixEnd"));
+            return null;
+        }
+        
+        public Object visit(Grouping groupingObj, Object data) {
+            ArrayList out = (ArrayList)data;
+            FormatTemplate grouping = getTemplate(groupingObj);
+            
+            out.add(grouping.getInitial());
+            out.add(grouping.getOutput(1));
+            out.add(groupingObj.getChild());
+            out.add(grouping.getOutput(2));
+            return null;
+        }
+        
+        public Object visit(NaryOperator naryObj, Object data) {
+            ArrayList out = (ArrayList)data;
+            FormatTemplate nary = getTemplate(naryObj);
+            
+            out.add(nary.getInitial());
+            
+            boolean brackets = needsBrackets(naryObj, nary);
+            
+            if (brackets) {
+                out.add(getTemplate("BracketsRnd").getOutput(1));
+            }
+            int i = naryObj.getSize()-1;
+            while (i >= 1) {
+                out.add(naryObj.getChild(i));
+                
+                // Code added to make multiplication implicit if user chooses so
+                // If implict mult turned on and operator is multiplication then do not output it's display
+                if (implicitMult && naryObj.getID() == 0) {
+                    // do nothing - as above
+                } else {
+                    out.add(nary.getOutput());
+                }
+                i--;
+            }
+            out.add(naryObj.getChild(i));
+            if (brackets) {
+                out.add(getTemplate("BracketsRnd").getOutput(2));
+            }
+            
+            out.add(nary.getFinal());
+            return null;
+        }
+        
+        public Object visit(NaryFunction naryFunctionObj, Object data) {
+            ArrayList out = (ArrayList)data;
+            FormatTemplate naryFunction = getTemplate(naryFunctionObj);
+            
+            out.add(naryFunction.getInitial());
+            out.add(naryFunction.getOutput(1));
+            
+            int[] order = naryFunction.getOrder();
+            
+            int i=0;
+            while (i < naryFunctionObj.getSize()) {
+                if (order != null) {
+                    out.add(naryFunctionObj.getChild(order[i]));
+                } else {
+                    out.add(naryFunctionObj.getChild(i));
+                }
+                out.add(naryFunction.getOutput(i+2));
+                i++;
+            }
+            return null;
+        }
+        
+        public Object visit(MathObject node, Object data) {
+            return null;
+        }
+    }
+}
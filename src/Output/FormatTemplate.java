@@ -0,0 +1,215 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Output;
+
+import java.util.HashMap;
+import java.util.List;
+import org.jdom.*;
+
+/**
+ * Immutable syntax for one component of a format file, with the optional tags and
+ * the <code>brackets</code>, <code>reverse</code> and <code>order</code> attributes resolved
+ * when the format is loaded
+ * @author Alex Billingsley
+ */
+public class FormatTemplate {
+
+    private final String name;
+    private final String initial;
+    private final String finalText;
+    private final String output;
+    private final String[] outputs;
+    private final HashMap texts;
+    private final boolean brackets;
+    private final boolean reverse;
+    private final int[] order;
+
+    /** Creates a new instance of FormatTemplate from an element of a format file
+     * @param element the element of the format file describing the component
+     * @throws JDOMException if the <code>order</code> attribute is not a list of numbers
+     */
+    public FormatTemplate(Element element) throws JDOMException {
+        name = element.getName();
+        initial = getOptionalText(element, "initial");
+        finalText = getOptionalText(element, "final");
+        output = element.getChildText("output");
+
+        // outputN tags are stored at index N, other tags (e.g. for matrices) by name
+        List children = element.getChildren();
+        texts = new HashMap();
+        int max = 0;
+        int i = 0;
+        while (i < children.size()) {
+            Element child = (Element)children.get(i);
+            int n = getOutputNumber(child.getName());
+            if (n > max) {
+                max = n;
+            }
+            if (texts.containsKey(child.getName()) == false) {
+                texts.put(child.getName(), child.getText());
+            }
+            i++;
+        }
+        outputs = new String[max+1];
+        i = 0;
+        while (i < children.size()) {
+            Element child = (Element)children.get(i);
+            int n = getOutputNumber(child.getName());
+            if (n > 0 && outputs[n] == null) {
+                outputs[n] = child.getText();
+            }
+            i++;
+        }
+
+        // If bracket option is not specified, then default is to include brackets
+        String bracketsAttr = element.getAttributeValue("brackets");
+        brackets = (bracketsAttr == null || bracketsAttr.equals("true"));
+        reverse = "true".equals(element.getAttributeValue("reverse"));
+
+        String orderAttr = element.getAttributeValue("order");
+        if (orderAttr != null) {
+            String[] orders = orderAttr.split(",");
+            order = new int[orders.length];
+            try {
+                i = 0;
+                while (i < orders.length) {
+                    order[i] = Integer.parseInt(orders[i]);
+                    i++;
+                }
+            } catch (NumberFormatException ex) {
+                throw new JDOMException("Invalid order attribute for " + name);
+            }
+        } else {
+            order = null;
+        }
+    }
+
+    private static String getOptionalText(Element element, String tag) {
+        String text = element.getChildText(tag);
+        if (text == null) {
+            // tag is optional in file
+            text = "";
+        }
+        return text;
+    }
+
+    // Returns N for a tag named outputN, or -1 for any other tag
+    private static int getOutputNumber(String tag) {
+        if (tag.startsWith("output") && tag.length() > 6) {
+            try {
+                return Integer.parseInt(tag.substring(6));
+            } catch (NumberFormatException ex) {
+                // not an outputN tag
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the name of the element the template was compiled from
+     * @return The name of the component
+     */
+    public String getName() {
+        return name;
+    }
+
+    /** Returns the text of the optional <code>initial</code> tag
+     * @return The text, or an empty string if the tag is not in the file
+     */
+    public String getInitial() {
+        return initial;
+    }
+
+    /** Returns the text of the optional <code>final</code> tag
+     * @return The text, or an empty string if the tag is not in the file
+     */
+    public String getFinal() {
+        return finalText;
+    }
+
+    /** Returns the text of the <code>output</code> tag
+     * @return The text of the tag
+     * @throws NullPointerException if the tag is not in the file
+     */
+    public String getOutput() {
+        if (output == null) {
+            throw new NullPointerException("Missing output tag for " + name);
+        }
+        return output;
+    }
+
+    /** Returns whether the template has an <code>output</code> tag
+     * @return true if the tag is in the file
+     */
+    public boolean hasOutput() {
+        return output != null;
+    }
+
+    /** Returns the text of the tag <code>outputN</code>
+     * @param n the number of the tag
+     * @return The text of the tag
+     * @throws NullPointerException if the tag is not in the file
+     */
+    public String getOutput(int n) {
+        String text = null;
+        if (n >= 0 && n < outputs.length) {
+            text = outputs[n];
+        }
+        if (text == null) {
+            throw new NullPointerException("Missing output" + n + " tag for " + name);
+        }
+        return text;
+    }
+
+    /** Returns the text of a tag that is not numbered, e.g. <code>rowStart</code>
+     * @param tag the name of the tag
+     * @return The text of the tag
+     * @throws NullPointerException if the tag is not in the file
+     */
+    public String getOutput(String tag) {
+        String text = (String)texts.get(tag);
+        if (text == null) {
+            throw new NullPointerException("Missing " + tag + " tag for " + name);
+        }
+        return text;
+    }
+    
+    /** Returns the <code>brackets</code> attribute, which defaults to true if not specified
+     * @return true if brackets should be included
+     */
+    public boolean hasBrackets() {
+        return brackets;
+    }
+
+    /** Returns the <code>reverse</code> attribute, which defaults to false if not specified
+     * @return true if the right and left child should be swapped
+     */
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    /** Returns the child order given by the <code>order</code> attribute
+     * @return The order of the children, or null if not specified
+     */
+    public int[] getOrder() {
+        return order;
+    }
+}
@@ -0,0 +1,546 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Output;
+
+import Tree.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Converts a tree to several formats in a single traversal. Each node is visited once for all the
+ * formats, and the work that does not depend on the format (finding the type of the node, comparing
+ * precedence with the parent, formatting numbers) is only done once. Where formats output the children
+ * of a node in a different order (the <code>reverse</code> and <code>order</code> attributes), the formats
+ * are split into groups that share the same order and each child is visited once per group.
+ * The output for each format is identical to that of <code>FormatConverter</code>. Like
+ * <code>FormatConverter</code>, an instance never changes once created and can be shared by many threads.
+ * @author Alex Billingsley
+ */
+public class MultiFormatConverter {
+
+    private final CompiledFormat[] formats;
+    private final boolean implicitMult;
+    private final boolean keepAsDouble;
+
+    // Indexes of all the formats, passed down the tree while no format needs a different child order
+    private final int[] all;
+
+    // Templates used by every conversion, found once for each format (null if not in the format file)
+    private final FormatTemplate[] brackets;
+    private final FormatTemplate[] initial;
+
+    /** Creates a new instance of MultiFormatConverter
+     * @param formats the compiled formats to convert to
+     * @param implicitMult true if multiplication should not be output
+     * @param keepAsDouble true if whole numbers should be output as decimals
+     */
+    public MultiFormatConverter(CompiledFormat[] formats, boolean implicitMult, boolean keepAsDouble) {
+        if (formats == null || formats.length == 0) {
+            throw new IllegalArgumentException("No formats to convert to");
+        }
+        this.formats = new CompiledFormat[formats.length];
+        this.implicitMult = implicitMult;
+        this.keepAsDouble = keepAsDouble;
+        all = new int[formats.length];
+        brackets = new FormatTemplate[formats.length];
+        initial = new FormatTemplate[formats.length];
+        int i = 0;
+        while (i < formats.length) {
+            if (formats[i] == null) {
+                throw new IllegalArgumentException("No format to convert to");
+            }
+            this.formats[i] = formats[i];
+            all[i] = i;
+            brackets[i] = formats[i].getTemplate("BracketsRnd");
+            initial[i] = formats[i].getTemplate("Initial");
+            i++;
+        }
+    }
+
+    /** Returns the number of formats the converter converts to
+     * @return The number of formats
+     */
+    public int getFormatCount() {
+        return formats.length;
+    }
+
+    /** Returns one of the formats the converter converts to
+     * @param i the index of the format, in the order given to the constructor
+     * @return The compiled format
+     */
+    public CompiledFormat getFormat(int i) {
+        return formats[i];
+    }
+
+    /** Converts expression to every format and returns them as strings
+     * @param startNode the root node of the tree to convert
+     * @return The expression in each format, in the order given to the constructor
+     * @throws NullPointerException if a format file is missing data for a component of the tree
+     */
+    public String[] convertToStrings(MathObject startNode) throws java.lang.NullPointerException {
+        StringBuilder[] outputs = new StringBuilder[formats.length];
+        int i = 0;
+        while (i < outputs.length) {
+            outputs[i] = new StringBuilder();
+            i++;
+        }
+        try {
+            writeExpression(startNode, outputs);
+        } catch (IOException ex) {
+            // StringBuilder does not throw IOException
+        }
+        String[] result = new String[outputs.length];
+        i = 0;
+        while (i < outputs.length) {
+            result[i] = outputs[i].toString();
+            i++;
+        }
+        return result;
+    }
+
+    /** Converts expression to every format, writing the syntax for format <code>i</code> to <code>out[i]</code>
+     * @param startNode the root node of the tree to convert
+     * @param out an <code>Appendable</code> for each format, in the order given to the constructor
+     * @throws IOException if writing to <code>out</code> fails
+     * @throws NullPointerException if a format file is missing data for a component of the tree
+     */
+    public void writeExpression(MathObject startNode, Appendable[] out) throws IOException, java.lang.NullPointerException {
+        int i = 0;
+        while (i < formats.length) {
+            out[i].append(required(initial[i], i, "Initial").getOutput(1));
+            i++;
+        }
+        convert(startNode, out);
+        i = 0;
+        while (i < formats.length) {
+            out[i].append(initial[i].getOutput(2));
+            i++;
+        }
+    }
+
+    /** Traverses the tree once to build up the expression in every format, using a stack of work
+     * in the heap rather than recursion so there is no limit on the depth of the tree
+     * @param start the node of the tree to start converting from
+     * @param out an <code>Appendable</code> for each format, in the order given to the constructor
+     * @throws IOException if writing to <code>out</code> fails
+     * @throws NullPointerException if a format file is missing data for a component of the tree
+     */
+    public void convert(MathObject start, Appendable[] out) throws IOException, java.lang.NullPointerException {
+        // Text still to append and nodes still to convert, with the next item at the end, as in FormatConverter
+        ArrayList work = new ArrayList();
+        MathObjectVisitor expander = new ExpandVisitor(work);
+        work.add(all);
+        work.add(start);
+        while (work.isEmpty() == false) {
+            Object item = work.remove(work.size()-1);
+            if (item instanceof String[]) {
+                String[] text = (String[])item;
+                int i = 0;
+                while (i < text.length) {
+                    if (text[i] != null) {
+                        out[i].append(text[i]);
+                    }
+                    i++;
+                }
+            } else {
+                int[] active = (int[])work.remove(work.size()-1);
+                int mark = work.size();
+                ((MathObject)item).accept(expander, active);
+                FormatConverter.reverse(work, mark);
+            }
+        }
+    }
+
+    // Returns a template that must be in the format file
+    private FormatTemplate required(FormatTemplate template, int f, String tag) {
+        if (template == null) {
+            throw new NullPointerException("Missing " + tag + " in format file " + formats[f].getName());
+        }
+        return template;
+    }
+
+    // Returns the template for a component that must be in the format file
+    private FormatTemplate getTemplate(int f, String tag) {
+        return required(formats[f].getTemplate(tag), f, tag);
+    }
+
+    // Returns the template for a node, which must be in the format file
+    private FormatTemplate getTemplate(int f, MathObject node) {
+        return required(formats[f].getTemplate(node), f, node.getName());
+    }
+
+    // Returns whether the precedence of a node is not higher than its parent, which is the same for all formats
+    private static boolean lowerPrecedence(MathObject node) {
+        if (node.getParent() != null) {
+            return Precedence.value[node.getID()] <= Precedence.value[node.getParent().getID()];
+        }
+        return false;
+    }
+
+    // Returns the formats in active whose key is equal to key, or active itself if they all are
+    private static int[] select(int[] active, int[] keys, int key) {
+        int count = 0;
+        int i = 0;
+        while (i < active.length) {
+            if (keys[active[i]] == key) {
+                count++;
+            }
+            i++;
+        }
+        if (count == active.length) {
+            return active;
+        }
+        int[] group = new int[count];
+        count = 0;
+        i = 0;
+        while (i < active.length) {
+            if (keys[active[i]] == key) {
+                group[count] = active[i];
+                count++;
+            }
+            i++;
+        }
+        return group;
+    }
+
+    // Adds the syntax for each type of node to the list of work, for the formats in the array passed as
+    // the data of the visitor. Text is added as an array with an entry for each format (null for formats
+    // that are not active), and each child is added followed by the formats to convert it for.
+    private class ExpandVisitor implements MathObjectVisitor {
+
+        private final ArrayList work;
+
+        ExpandVisitor(ArrayList work) {
+            this.work = work;
+        }
+
+        // Adds a child to be converted for a group of formats
+        private void addChild(MathObject child, int[] group) {
+            work.add(child);
+            work.add(group);
+        }
+
+        // Adds the child with the index in keys of each active format, adding each different child once
+        private void addChildren(MathObject[] children, int[] active, int[] keys) {
+            int i = 0;
+            while (i < active.length) {
+                int key = keys[active[i]];
+                // Only the first format with each key starts a group
+                boolean first = true;
+                int j = 0;
+                while (j < i) {
+                    if (keys[active[j]] == key) {
+                        first = false;
+                    }
+                    j++;
+                }
+                if (first) {
+                    addChild(children[key], select(active, keys, key));
+                }
+                i++;
+            }
+        }
+
+        // Adds a tag of the template of a node for each active format, e.g. rowStart for a matrix
+        private void addTag(MathObject node, int[] active, String tag) {
+            String[] text = new String[formats.length];
+            int i = 0;
+            while (i < active.length) {
+                int f = active[i];
+                text[f] = getTemplate(f, node).getOutput(tag);
+                i++;
+            }
+            work.add(text);
+        }
+
+        public Object visit(Tree.Text textObj, Object data) {
+            int[] active = (int[])data;
+            String text = textObj.getText();
+            boolean infinity = text.equals("Infinity");
+            String[] output = new String[formats.length];
+
+            int i = 0;
+            while (i < active.length) {
+                int f = active[i];
+                if (infinity) {
+                    output[f] = getTemplate(f, "Infinity").getOutput();
+                } else {
+                    FormatTemplate template = getTemplate(f, "Text");
+                    output[f] = template.getInitial() + template.getOutput(1) + text + template.getOutput(2);
+                }
+                i++;
+            }
+            work.add(output);
+            return null;
+        }
+
+        public Object visit(Tree.RealNumber numberObj, Object data) {
+            int[] active = (int[])data;
+            String number = numberObj.getNumber(keepAsDouble);
+            String[] output = new String[formats.length];
+
+            int i = 0;
+            while (i < active.length) {
+                int f = active[i];
+                FormatTemplate template = getTemplate(f, "RealNumber");
+                output[f] = template.getInitial() + template.getOutput(1) + number + template.getOutput(2);
+                i++;
+            }
+            work.add(output);
+            return null;
+        }
+
+        public Object visit(Tree.Variable variableObj, Object data) {
+            int[] active = (int[])data;
+            char varName = variableObj.getVarName();
+            boolean plain = variableObj.getName().equals("Variable");
+            String[] output = new String[formats.length];
+
+            int i = 0;
+            while (i < active.length) {
+                int f = active[i];
+                // If there is entry in output file containing symbol e.g. greek letter
+                String symbol = formats[f].getSymbol(varName);
+                if (symbol != null) {
+                    output[f] = symbol;
+                } else {
+                    FormatTemplate var = getTemplate(f, variableObj.getName());
+                    if (plain) {
+                        output[f] = var.getOutput(1) + varName + var.getOutput(2);
+                    } else {
+                        output[f] = var.getOutput();
+                    }
+                }
+                i++;
+            }
+            work.add(output);
+            return null;
+        }
+
+        public Object visit(BinaryOperator binaryObj, Object data) {
+            int[] active = (int[])data;
+            MathObject[] children = {binaryObj.getLeftChild(), binaryObj.getRightChild()};
+            boolean lower = lowerPrecedence(binaryObj);
+
+            // Child output first by each format, 1 if reverse='true'
+            int[] keys = new int[formats.length];
+            String[] before = new String[formats.length];
+            String[] middle = new String[formats.length];
+            String[] after = new String[formats.length];
+
+            int i = 0;
+            while (i < active.length) {
+                int f = active[i];
+                FormatTemplate binary = getTemplate(f, binaryObj);
+                if (lower && formats[f].isAutoBrackets() && binary.hasBrackets()) {
+                    before[f] = binary.getInitial() + required(brackets[f], f, "BracketsRnd").getOutput(1) + binary.getOutput(1);
+                    after[f] = binary.getOutput(3) + brackets[f].getOutput(2);
+                } else {
+                    before[f] = binary.getInitial() + binary.getOutput(1);
+                    after[f] = binary.getOutput(3);
+                }
+                middle[f] = binary.getOutput(2);
+                if (binary.isReverse()) {
+                    keys[f] = 1;
+                }
+                i++;
+            }
+
+            work.add(before);
+            addChildren(children, active, keys);
+            work.add(middle);
+            i = 0;
+            while (i < active.length) {
+                keys[active[i]] = 1 - keys[active[i]];
+                i++;
+            }
+            addChildren(children, active, keys);
+            work.add(after);
+            return null;
+        }
+
+        public Object visit(Function functionObj, Object data) {
+            int[] active = (int[])data;
+            String[] before = new String[formats.length];
+            String[] after = new String[formats.length];
+
+            int i = 0;
+            while (i < active.length) {
+                int f = active[i];
+                FormatTemplate function = getTemplate(f, functionObj);
+                if (function.hasBrackets()) {
+                    before[f] = function.getInitial() + function.getOutput(1) + required(brackets[f], f, "BracketsRnd").getOutput(1);
+                    after[f] = function.getOutput(2) + brackets[f].getOutput(2);
+                } else {
+                    before[f] = function.getInitial() + function.getOutput(1);
+                    after[f] = function.getOutput(2);
+                }
+                i++;
+            }
+
+            work.add(before);
+            addChild(functionObj.getChild(), active);
+            work.add(after);
+            return null;
+        }
+
+        public Object visit(Matrix matrixObj, Object data) {
+            int[] active = (int[])data;
+            int matrix_m = matrixObj.getM();
+            int matrix_n = matrixObj.getN();
+
+            addTag(matrixObj, active, "matrixStart");
+
+            int x=0; int y=0;
+            while (y < matrix_m) {
+                addTag(matrixObj, active, "rowStart");
+                while (x < matrix_n) {
+                    addTag(matrixObj, active, "elementStart");
+                    addChild(matrixObj.getElement(y,x), active);
+                    addTag(matrixObj, active, "elementEnd");
+                    if (x != matrix_n-1) {
+                        addTag(matrixObj, active, "elementSeparator");
+                    }
+                    x++;
+                }
+                addTag(matrixObj, active, "rowEnd");
+                if (y != matrix_m-1) {
+                    addTag(matrixObj, active, "rowSeparator");
+                }
+                x=0;
+                y++;
+            }
+            addTag(matrixObj, active, "matrixEnd");
+            return null;
+        }
+
+        public Object visit(Grouping groupingObj, Object data) {
+            int[] active = (int[])data;
+            String[] before = new String[formats.length];
+            String[] after = new String[formats.length];
+
+            int i = 0;
+            while (i < active.length) {
+                int f = active[i];
+                FormatTemplate grouping = getTemplate(f, groupingObj);
+                before[f] = grouping.getInitial() + grouping.getOutput(1);
+                after[f] = grouping.getOutput(2);
+                i++;
+            }
+
+            work.add(before);
+            addChild(groupingObj.getChild(), active);
+            work.add(after);
+            return null;
+        }
+
+        public Object visit(NaryOperator naryObj, Object data) {
+            int[] active = (int[])data;
+            boolean lower = lowerPrecedence(naryObj);
+            // If implict mult turned on and operator is multiplication then do not output it's display
+            boolean hideOperator = implicitMult && naryObj.getID() == 0;
+            String[] before = new String[formats.length];
+            String[] operator = new String[formats.length];
+            String[] after = new String[formats.length];
+
+            int i = 0;
+            while (i < active.length) {
+                int f = active[i];
+                FormatTemplate nary = getTemplate(f, naryObj);
+                if (lower && formats[f].isAutoBrackets() && nary.hasBrackets()) {
+                    before[f] = nary.getInitial() + required(brackets[f], f, "BracketsRnd").getOutput(1);
+                    after[f] = brackets[f].getOutput(2) + nary.getFinal();
+                } else {
+                    before[f] = nary.getInitial();
+                    after[f] = nary.getFinal();
+                }
+                if (hideOperator == false && naryObj.getSize() > 1) {
+                    operator[f] = nary.getOutput();
+                }
+                i++;
+            }
+
+            work.add(before);
+            int c = naryObj.getSize()-1;
+            while (c >= 1) {
+                addChild(naryObj.getChild(c), active);
+                if (hideOperator == false) {
+                    work.add(operator);
+                }
+                c--;
+            }
+            addChild(naryObj.getChild(c), active);
+            work.add(after);
+            return null;
+        }
+
+        public Object visit(NaryFunction naryFunctionObj, Object data) {
+            int[] active = (int[])data;
+            int size = naryFunctionObj.getSize();
+            MathObject[] children = new MathObject[size];
+            int c = 0;
+            while (c < size) {
+                children[c] = naryFunctionObj.getChild(c);
+                c++;
+            }
+
+            String[] before = new String[formats.length];
+            int i = 0;
+            while (i < active.length) {
+                int f = active[i];
+                FormatTemplate naryFunction = getTemplate(f, naryFunctionObj);
+                before[f] = naryFunction.getInitial() + naryFunction.getOutput(1);
+                i++;
+            }
+            work.add(before);
+
+            // Child output in each position by each format, from the order attribute
+            c = 0;
+            while (c < size) {
+                int[] keys = new int[formats.length];
+                String[] after = new String[formats.length];
+                i = 0;
+                while (i < active.length) {
+                    int f = active[i];
+                    FormatTemplate naryFunction = getTemplate(f, naryFunctionObj);
+                    int[] order = naryFunction.getOrder();
+                    if (order != null) {
+                        keys[f] = order[c];
+                    } else {
+                        keys[f] = c;
+                    }
+                    after[f] = naryFunction.getOutput(c+2);
+                    i++;
+                }
+                addChildren(children, active, keys);
+                work.add(after);
+                c++;
+            }
+            return null;
+        }
+
+        public Object visit(MathObject node, Object data) {
+            return null;
+        }
+    }
+}
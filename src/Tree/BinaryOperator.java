@@ -28,6 +28,8 @@ package Tree;
  */
 public class BinaryOperator extends MathObject {
     
+    private static final long serialVersionUID = 4873665218034541336L;
+    
     private MathObject leftChild = null;
     private MathObject rightChild = null;
     
@@ -64,6 +66,36 @@ public class BinaryOperator extends MathObject {
     public void setRightChild(MathObject rightChild) {
         this.rightChild = rightChild;
     }
-
     
-}
\ No newline at end of file
+    int getChildCount() {
+        return 2;
+    }
+    
+    MathObject getChildAt(int i) {
+        if (i == 0) {
+            return leftChild;
+        }
+        return rightChild;
+    }
+    
+    void setChildAt(int i, MathObject child) {
+        if (i == 0) {
+            leftChild = child;
+        } else {
+            rightChild = child;
+        }
+    }
+    
+    MathObject copyNode() {
+        return new BinaryOperator(getID(), getName());
+    }
+    
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
+}
@@ -37,16 +37,54 @@ import Display.LanguageManager;
 public class BuildTree {
     
     private static org.jdom.Element inpComps;
+    private static final MathObjectVisitor treeBuilder = new TreeBuilder();
+    private static volatile JEPTreeBuilder jepTreeBuilder;
+    // One parser for each thread, as a JEP parser cannot be used by two threads at once and is slow to set up
+    private static final ThreadLocal parsers = new ThreadLocal() {
+        protected Object initialValue() {
+            return createParser();
+        }
+    };
     private int copyStart;
     private int copyFinish;
     private JPanel copyLayer;
     private boolean copy;
     private LanguageManager langMan;
+    // Trees of the layers of the display that have not changed since generateTree last built them
+    private final LayerTrees layerTrees = new LayerTrees();
     
     /** Creates a new instance of BuildTree */
     public BuildTree(LanguageManager langMan, org.jdom.Element inpComps) {
         this.langMan=langMan;
         this.inpComps=inpComps;
+        ComponentRegistry.getRegistry(inpComps);
+    }
+    
+    /** Sets the components from the component configuration file used by <code>parseString</code>,
+     * for use without the applet (e.g. batch conversion), where no <code>BuildTree</code> is created
+     * @param components the root element of CompConfig.xml
+     */
+    public static void setComponents(org.jdom.Element components) {
+        inpComps = components;
+    }
+    
+    /** Reads the component configuration file bundled with the classes and sets it as the
+     * components used by <code>parseString</code>, if they have not already been set
+     * @throws org.jdom.JDOMException if the file is not well formed
+     * @throws java.io.IOException if the file cannot be read
+     */
+    public static synchronized void loadComponents() throws org.jdom.JDOMException, java.io.IOException {
+        if (inpComps == null) {
+            java.io.InputStream in = BuildTree.class.getResourceAsStream("/Display/CompConfig.xml");
+            if (in == null) {
+                throw new java.io.FileNotFoundException("/Display/CompConfig.xml");
+            }
+            try {
+                inpComps = new org.jdom.input.SAXBuilder().build(in).getRootElement();
+            } finally {
+                in.close();
+            }
+        }
     }
     
     /** Creates tree from display and returns root node of tree
@@ -64,11 +102,20 @@ public class BuildTree {
             this.copyFinish = copyFinish;
             this.copyLayer = layer;
         }
-        Stack outputStack = toPostfix(layer, new Stack(), new Stack());
+        Stack outputStack;
+        if (copy) {
+            outputStack = toPostfix(layer, new Stack(), new Stack());
+        } else {
+            outputStack = layerPostfix(layer);
+        }
         MathObject tree;
         if (outputStack.empty() != true) {
             tree = (MathObject)outputStack.pop();
             toTree(tree, outputStack);
+            if (copy == false) {
+                // The tree is made of the trees of the layers, which are kept to build the next tree
+                tree = tree.copyTree();
+            }
         } else {
             tree = null;
         }
@@ -172,7 +219,7 @@ public class BuildTree {
                         if (group == AddComponent.FUNCTION) {
                             Container functionLayer = (Container)components[i];
                             Component[] functionComponents = functionLayer.getComponents();
-                            Stack functionOutStack = toPostfix((Container)functionComponents[2], new Stack(), new Stack());
+                            Stack functionOutStack = layerPostfix((Container)functionComponents[2]);
                             outStack.push(functionOutStack);
                             outStack.push(new Function(ID, name));
                         }
@@ -180,7 +227,7 @@ public class BuildTree {
                         if (group == AddComponent.GROUPING) {
                             Container groupLayer = (Container)components[i];
                             Component[] groupComponents = groupLayer.getComponents();
-                            Stack groupOutStack = toPostfix((Container)groupComponents[1], new Stack(), new Stack());
+                            Stack groupOutStack = layerPostfix((Container)groupComponents[1]);
                             outStack.push(groupOutStack);
                             outStack.push(new Grouping(ID, name));
                         }
@@ -196,7 +243,7 @@ public class BuildTree {
                                 Component[] matrixElements = matrix.getComponents();
                                 int j=0;
                                 while (j < matrixElements.length) {
-                                    outStack.push(toPostfix((Container)matrixElements[j], new Stack(), new Stack()));
+                                    outStack.push(layerPostfix((Container)matrixElements[j]));
                                     j++;
                                 }
                                 outStack.push(new Matrix(ID, name, layout.getRows(), layout.getColumns()));
@@ -237,11 +284,11 @@ public class BuildTree {
                             // Evaluate
                             if (ID == 57) {
                                 JPanel temp = (JPanel)layoutComponents[1];
-                                Stack layoutOutStack3 = toPostfix((Container)temp.getComponent(2), new Stack(), new Stack());
+                                Stack layoutOutStack3 = layerPostfix((Container)temp.getComponent(2));
                                 outStack.push(layoutOutStack3);
-                                Stack layoutOutStack2 = toPostfix((Container)temp.getComponent(0), new Stack(), new Stack());
+                                Stack layoutOutStack2 = layerPostfix((Container)temp.getComponent(0));
                                 outStack.push(layoutOutStack2);
-                                Stack layoutOutStack1 = toPostfix((Container)layoutComponents[2], new Stack(), new Stack());
+                                Stack layoutOutStack1 = layerPostfix((Container)layoutComponents[2]);
                                 outStack.push(layoutOutStack1);
                                 outStack.push(new NaryFunction(ID, name, 3));
                             }
@@ -249,38 +296,38 @@ public class BuildTree {
                             if (ID == 56) {
                                 JPanel temp = (JPanel)layoutComponents[0];
                                 temp = (JPanel)temp.getComponent(1);
-                                Stack layoutOutStack3 = toPostfix((Container)temp.getComponent(2), new Stack(), new Stack());
+                                Stack layoutOutStack3 = layerPostfix((Container)temp.getComponent(2));
                                 outStack.push(layoutOutStack3);
-                                Stack layoutOutStack2 = toPostfix((Container)temp.getComponent(0), new Stack(), new Stack());
+                                Stack layoutOutStack2 = layerPostfix((Container)temp.getComponent(0));
                                 outStack.push(layoutOutStack2);
-                                Stack layoutOutStack1 = toPostfix((Container)layoutComponents[1], new Stack(), new Stack());
+                                Stack layoutOutStack1 = layerPostfix((Container)layoutComponents[1]);
                                 outStack.push(layoutOutStack1);
                                 outStack.push(new NaryFunction(ID, name, 3));
                             }
                             // Def. Integral
                             if (ID == 53) {
                                 JPanel temp = (JPanel)layoutComponents[0];
-                                Stack layoutOutStack4 = toPostfix((Container)temp.getComponent(0), new Stack(), new Stack());
+                                Stack layoutOutStack4 = layerPostfix((Container)temp.getComponent(0));
                                 outStack.push(layoutOutStack4);
-                                Stack layoutOutStack3 = toPostfix((Container)temp.getComponent(2), new Stack(), new Stack());
+                                Stack layoutOutStack3 = layerPostfix((Container)temp.getComponent(2));
                                 outStack.push(layoutOutStack3);
-                                Stack layoutOutStack2 = toPostfix((Container)layoutComponents[2], new Stack(), new Stack());
+                                Stack layoutOutStack2 = layerPostfix((Container)layoutComponents[2]);
                                 outStack.push(layoutOutStack2);
-                                Stack layoutOutStack1 = toPostfix((Container)layoutComponents[3], new Stack(), new Stack());
+                                Stack layoutOutStack1 = layerPostfix((Container)layoutComponents[3]);
                                 outStack.push(layoutOutStack1);
                                 outStack.push(new NaryFunction(ID, name, 4));
                             }
                             // Product + Sum
                             if (ID == 54 || ID == 55) {
                                 JPanel temp = (JPanel)layoutComponents[0];
-                                Stack layoutOutStack4 = toPostfix((Container)temp.getComponent(0), new Stack(), new Stack());
+                                Stack layoutOutStack4 = layerPostfix((Container)temp.getComponent(0));
                                 outStack.push(layoutOutStack4);
                                 temp = (JPanel)temp.getComponent(2);
-                                Stack layoutOutStack3 = toPostfix((Container)temp.getComponent(2), new Stack(), new Stack());
+                                Stack layoutOutStack3 = layerPostfix((Container)temp.getComponent(2));
                                 outStack.push(layoutOutStack3);
-                                Stack layoutOutStack2 = toPostfix((Container)temp.getComponent(0), new Stack(), new Stack());
+                                Stack layoutOutStack2 = layerPostfix((Container)temp.getComponent(0));
                                 outStack.push(layoutOutStack2);
-                                Stack layoutOutStack1 = toPostfix((Container)layoutComponents[1], new Stack(), new Stack());
+                                Stack layoutOutStack1 = layerPostfix((Container)layoutComponents[1]);
                                 outStack.push(layoutOutStack1);
                                 outStack.push(new NaryFunction(ID, name, 4));
                             }
@@ -288,30 +335,30 @@ public class BuildTree {
                             if (ID == 46 || ID == 84) {
                                 JPanel temp = (JPanel)layoutComponents[0];
                                 JPanel temp2 = (JPanel)temp.getComponent(2);
-                                Stack layoutOutStack2 = toPostfix((Container)temp2.getComponent(1), new Stack(), new Stack());
+                                Stack layoutOutStack2 = layerPostfix((Container)temp2.getComponent(1));
                                 outStack.push(layoutOutStack2);
-                                Stack layoutOutStack1 = toPostfix((Container)layoutComponents[1], new Stack(), new Stack());
+                                Stack layoutOutStack1 = layerPostfix((Container)layoutComponents[1]);
                                 outStack.push(layoutOutStack1);
                                 outStack.push(new NaryFunction(ID, name, 2));
                             }
                             // Integral
                             if (ID == 45) {
-                                Stack layoutOutStack2 = toPostfix((Container)layoutComponents[2], new Stack(), new Stack());
+                                Stack layoutOutStack2 = layerPostfix((Container)layoutComponents[2]);
                                 outStack.push(layoutOutStack2);
-                                Stack layoutOutStack1 = toPostfix((Container)layoutComponents[3], new Stack(), new Stack());
+                                Stack layoutOutStack1 = layerPostfix((Container)layoutComponents[3]);
                                 outStack.push(layoutOutStack1);
                                 outStack.push(new NaryFunction(ID, name, 2));
                             }
                             
                             if (second != -1) {
-                                Stack layoutOutStack2 = toPostfix((Container)layoutComponents[first], new Stack(), new Stack());
+                                Stack layoutOutStack2 = layerPostfix((Container)layoutComponents[first]);
                                 outStack.push(layoutOutStack2);
-                                Stack layoutOutStack1 = toPostfix((Container)layoutComponents[second], new Stack(), new Stack());
+                                Stack layoutOutStack1 = layerPostfix((Container)layoutComponents[second]);
                                 outStack.push(layoutOutStack1);
                                 outStack.push(new BinaryOperator(ID, name));
                             } else {
                                 if (first != -1) {
-                                    Stack layoutOutStack = toPostfix((Container)layoutComponents[first], new Stack(), new Stack());
+                                    Stack layoutOutStack = layerPostfix((Container)layoutComponents[first]);
                                     outStack.push(layoutOutStack);
                                     outStack.push(new Function(ID, name));
                                 }
@@ -341,84 +388,209 @@ public class BuildTree {
         return outStack;
     }
     
+    /** Creates the postfix expression of a layer inside the display, which is a stack holding only the tree of the layer.
+     * The tree is taken from the trees of layers that have not changed since they were last built, so only layers
+     * that have changed are walked and their text boxes parsed. As <code>toTree</code> takes nothing more
+     * from a stack holding a whole tree, the tree is placed into the tree of the display as it is.
+     * The tree of the layer is used without copying it in the trees of the layers around it, which are all
+     * built again when it changes, and is copied for a selection.
+     * @param layer the layer in the display
+     * @return A Stack containing the tree of the layer, or an empty stack if the layer is empty
+     * @throws ParseException if an error occurs during parsing
+     */
+    private Stack layerPostfix(Container layer) throws java.text.ParseException {
+        MathObject tree = layerTrees.get(layer);
+        if (tree == null) {
+            Stack postfix = toPostfix(layer, new Stack(), new Stack());
+            if (postfix.empty()) {
+                return postfix;
+            }
+            tree = (MathObject)postfix.pop();
+            toTree(tree, postfix);
+            layerTrees.put(layer, tree);
+        }
+        if (copy) {
+            // The tree kept for the layer must not become part of the selection
+            tree = tree.copyTree();
+        }
+        // Linked to its parent when it is placed in the tree, as a newly built tree would be
+        tree.setParent(null);
+        Stack outStack = new Stack();
+        outStack.push(tree);
+        return outStack;
+    }
+    
+    /** Returns the trees of the layers of the display kept between calls to <code>generateTree</code>
+     * @return The trees of the layers
+     */
+    public LayerTrees getLayerTrees() {
+        return layerTrees;
+    }
+    
     
+    /** Parses a linear expression into a postfix expression. Expressions already parsed are taken from the
+     * shared <code>ParseCache</code>, so text that has not changed is not parsed by JEP again.
+     * @param expression the linear expression
+     * @param outputStack the stack to add an empty expression to
+     * @return The postfix expression
+     * @throws org.nfunk.jep.ParseException if the expression cannot be parsed
+     */
     public static Stack parseString(String expression, Stack outputStack) throws org.nfunk.jep.ParseException {
         if (expression.equals("")) {
             outputStack.add(new Tree.Text(expression));
         } else {
-            
-            expression = validateBeforeParsing(expression);
-            
-            JEP parser = new JEP();
-            parser.addStandardFunctions();
-            parser.setAllowUndeclared(true);
-            parser.setImplicitMul(true);
-            parser.addFunction("union", new Union());
-            parser.addFunction("intersection", new Intersection());
-            parser.addFunction("det", new Determinant());
-            parser.addFunction("trace", new Trace());
-            parser.addFunction("subset", new Subset());
-            parser.addFunction("integrate", new Integral());
-            parser.addFunction("diff", new Differential());
-            parser.addFunction("sum", new Sum());
-            parser.addFunction("product", new Product());
-            parser.addFunction("int", new DefiniteIntegral());
-            
-            parser.parseExpression(expression);
-            Node node = parser.getTopNode();
-            
-            if (node == null) {
-                throw new org.nfunk.jep.ParseException();
-            } else {
-                outputStack = convertJEPTree(node, new Stack(), expression);
-            }
+            outputStack = ParseCache.getShared().parse(expression);
         }
         return outputStack;
     }
     
+    /** Creates a new JEP parser, set up with the options and functions needed to parse linear expressions
+     * @return The parser
+     */
+    public static JEP createParser() {
+        JEP parser = new JEP();
+        parser.addStandardFunctions();
+        parser.setAllowUndeclared(true);
+        parser.setImplicitMul(true);
+        parser.addFunction("union", new Union());
+        parser.addFunction("intersection", new Intersection());
+        parser.addFunction("det", new Determinant());
+        parser.addFunction("trace", new Trace());
+        parser.addFunction("subset", new Subset());
+        parser.addFunction("integrate", new Integral());
+        parser.addFunction("diff", new Differential());
+        parser.addFunction("sum", new Sum());
+        parser.addFunction("product", new Product());
+        parser.addFunction("int", new DefiniteIntegral());
+        return parser;
+    }
+    
+    /** Parses a non-empty linear expression into a postfix expression with JEP, without using the cache
+     * @param expression the linear expression
+     * @return The postfix expression
+     * @throws org.nfunk.jep.ParseException if the expression cannot be parsed
+     */
+    public static Stack parseExpression(String expression) throws org.nfunk.jep.ParseException {
+        expression = validateBeforeParsing(expression);
+        return convertJEPTree(parseJEP(expression), new Stack(), expression);
+    }
+    
+    /** Parses a linear expression into a tree. Expressions already parsed are taken from the shared
+     * <code>ParseCache</code>. The tree is created directly from the expression parsed by JEP, so this is
+     * quicker than <code>parseString</code> followed by <code>toTree</code> where the postfix expression is not needed.
+     * @param expression the linear expression
+     * @return The root node of the tree
+     * @throws org.nfunk.jep.ParseException if the expression cannot be parsed
+     */
+    public static MathObject parseTree(String expression) throws org.nfunk.jep.ParseException {
+        if (expression.equals("")) {
+            return new Tree.Text(expression);
+        }
+        return ParseCache.getShared().parseTree(expression);
+    }
+    
+    /** Returns whether a node is text, a variable or a number, which would be a postfix expression of one object
+     * @param node the node
+     * @return true if the node can have no children
+     */
+    public static boolean isLeaf(MathObject node) {
+        return node instanceof Tree.Text || node instanceof Tree.Variable || node instanceof RealNumber;
+    }
+    
+    /** Parses a non-empty linear expression into a tree with JEP, without using the cache
+     * @param expression the linear expression
+     * @return The root node of the tree
+     * @throws org.nfunk.jep.ParseException if the expression cannot be parsed
+     */
+    public static MathObject parseExpressionTree(String expression) throws org.nfunk.jep.ParseException {
+        expression = validateBeforeParsing(expression);
+        return getJEPTreeBuilder().build(parseJEP(expression), expression);
+    }
+    
+    /** Returns the registry of the components used by <code>parseString</code>
+     * @return The registry
+     */
+    public static ComponentRegistry getRegistry() {
+        return ComponentRegistry.getRegistry(inpComps);
+    }
+    
+    /** Returns the builder of trees from parsed expressions, for the components used by <code>parseString</code>
+     * @return The builder
+     */
+    public static JEPTreeBuilder getJEPTreeBuilder() {
+        // Created again if the components have been changed
+        ComponentRegistry registry = getRegistry();
+        JEPTreeBuilder builder = jepTreeBuilder;
+        if (builder == null || builder.getRegistry() != registry) {
+            builder = new JEPTreeBuilder(registry);
+            jepTreeBuilder = builder;
+        }
+        return builder;
+    }
+    
+    // Parses a non-empty expression, already validated, with the parser of this thread and returns the top node
+    private static Node parseJEP(String expression) throws org.nfunk.jep.ParseException {
+        JEP parser = (JEP)parsers.get();
+        Node node;
+        try {
+            parser.parseExpression(expression);
+            node = parser.getTopNode();
+        } finally {
+            // Variables are added to the symbol table as they are parsed, so it is cleared to stop it growing
+            parser.getSymbolTable().clearNonConstants();
+        }
+        
+        if (node == null) {
+            throw new org.nfunk.jep.ParseException();
+        }
+        return node;
+    }
     
+    
+    /** Fixes problems with JEP parser that cannot be fixed directly, by parsing greek letters
+     * and '=' so that it conforms with JEP. A '*' is put after a greek letter that is followed by a letter, digit
+     * or another greek letter, a single '=' is changed to '==' and the infinity sign is changed to "Infinity".
+     * The text is read once, so the time taken grows linearly with its length.
+     * @param theText the linear expression
+     * @return The expression that can be parsed by JEP
+     */
     public static String validateBeforeParsing(String theText) {
-        /* Fixes problems with JEP parser that cannot be fixed directly, by parsing greek letters
-         * and '=' so that it conforms with JEP.
-         */
+        int length = theText.length();
+        StringBuilder output = new StringBuilder(length + 16);
         
         int i=0;
-        while (i < theText.length()) {
-            int ascii_value = (int)theText.charAt(i);
+        while (i < length) {
+            char token = theText.charAt(i);
+            if (token == '\u221e') {
+                output.append("Infinity");
+            } else {
+                output.append(token);
+            }
+            
+            if (i > 0 && i < length-1) {
+                char previous = theText.charAt(i-1);
+                char next = theText.charAt(i+1);
+                // if character is '=' change to '=='
+                if (token == '='
+                        && previous != '='
+                        && next != '='
+                        && previous != '<'
+                        && previous != '>') {
+                    output.append('=');
+                }
+            }
+            
             // if character not ascii, then will be greek letter
-            if (ascii_value > 127 && i < theText.length()-1) {
-                int nextChar = theText.charAt(i+1);
+            if (token > 127 && i < length-1) {
+                char next = theText.charAt(i+1);
                 // if next character is letter, digit or greek letter
-                if (Character.isLetterOrDigit(theText.charAt(i+1)) || nextChar > 127) {
-                    String left = theText.substring(0, i+1);
-                    String right = theText.substring(i+1, theText.length());
-                    theText = left + "*" + right;
+                if (Character.isLetterOrDigit(next) || next > 127) {
+                    output.append('*');
                 }
             }
             i++;
         }
-        
-        i=0;
-        while (i < theText.length()) {
-            char token = theText.charAt(i);
-            char infinity = '\u221e';
-            // if character is '=' change to '=='
-            if (token == '='
-                    && i > 0
-                    && i < theText.length() - 1
-                    && theText.charAt(i-1) != '='
-                    && theText.charAt(i+1) != '='
-                    && theText.charAt(i-1) != '<'
-                    && theText.charAt(i-1) != '>') {
-                theText = theText.substring(0, i+1) + "=" + theText.substring(i+1, theText.length());
-                i++;
-            }
-            if (token == infinity) {
-                theText = theText.substring(0, i) + "Infinity" + theText.substring(i+1, theText.length());
-            }
-            i++;
-        }
-        return theText;
+        return output.toString();
     }
     
     
@@ -426,10 +598,15 @@ public class BuildTree {
         // Node is function/operator
         if (currentNode.getClass().getName().equals("org.nfunk.jep.ASTFunNode")) {
             ASTFunNode funNode = (ASTFunNode)currentNode;
+            ComponentRegistry registry = getRegistry();
             String name = funNode.getPFMC().getClass().getName();
-            int i = name.lastIndexOf(".");
-            String type = name.substring(i+1);
-            org.jdom.Element comp = null;
+            int ID = registry.getIDByClass(name);
+            String type;
+            if (ID != -1) {
+                type = registry.getName(ID);
+            } else {
+                type = name.substring(name.lastIndexOf(".") + 1);
+            }
             
             if (type.equals("Integral")) {
                 if  (funNode.jjtGetNumChildren() >= 4) {
@@ -453,40 +630,39 @@ public class BuildTree {
                 if  (funNode.jjtGetNumChildren() == 2 || funNode.jjtGetNumChildren() == 3) {
                     type = "Integral";
                 }
+                ID = registry.getID(type);
             }
             
-            comp = inpComps.getChild(type);
-            
             // Function is in CompConfig list
             
-            if (comp != null) {
-                int group = Integer.parseInt(comp.getAttributeValue("group"));
+            if (ID != -1) {
+                int group = registry.getGroup(ID);
                 // N-ary
                 if (group == 1) {
                     convertJEPTree(funNode.jjtGetChild(0), outputStack, expression);
                     convertJEPTree(funNode.jjtGetChild(1), outputStack, expression);
-                    outputStack.push(new NaryOperator(Integer.parseInt(comp.getAttributeValue("ID")), type));
+                    outputStack.push(new NaryOperator(ID, type));
                 }
                 
                 // Binary
                 if (group == 2) {
                     convertJEPTree(funNode.jjtGetChild(0), outputStack, expression);
                     convertJEPTree(funNode.jjtGetChild(1), outputStack, expression);
-                    outputStack.push(new BinaryOperator(Integer.parseInt(comp.getAttributeValue("ID")), type));
+                    outputStack.push(new BinaryOperator(ID, type));
                 }
                 
                 // Function
                 if (group == 3) {
                     Stack functionStack = convertJEPTree(funNode.jjtGetChild(0), new Stack(), expression);
                     outputStack.push(functionStack);
-                    outputStack.push(new Function(Integer.parseInt(comp.getAttributeValue("ID")), type));
+                    outputStack.push(new Function(ID, type));
                 }
                 
                 // Grouping
                 if (group == 5) {
                     Stack groupingStack = convertJEPTree(funNode.jjtGetChild(0), new Stack(), expression);
                     outputStack.push(groupingStack);
-                    outputStack.push(new Grouping(Integer.parseInt(comp.getAttributeValue("ID")), type));
+                    outputStack.push(new Grouping(ID, type));
                 }
                 
                 // Layout
@@ -495,7 +671,7 @@ public class BuildTree {
                         // All layout operators are binary currently
                         convertJEPTree(funNode.jjtGetChild(0), outputStack, expression);
                         convertJEPTree(funNode.jjtGetChild(1), outputStack, expression);
-                        outputStack.push(new BinaryOperator(Integer.parseInt(comp.getAttributeValue("ID")), type));
+                        outputStack.push(new BinaryOperator(ID, type));
                     }  else {
                         int j=funNode.jjtGetNumChildren() - 1;
                         while (j >= 0) {
@@ -504,9 +680,9 @@ public class BuildTree {
                             j--;
                         }
                         if (funNode.jjtGetNumChildren() > 1) {
-                            outputStack.push(new NaryFunction(Integer.parseInt(comp.getAttributeValue("ID")), type, funNode.jjtGetNumChildren()));
+                            outputStack.push(new NaryFunction(ID, type, funNode.jjtGetNumChildren()));
                         } else {
-                            outputStack.push(new Function(Integer.parseInt(comp.getAttributeValue("ID")), type));
+                            outputStack.push(new Function(ID, type));
                         }
                     }
                 }
@@ -525,14 +701,14 @@ public class BuildTree {
                     } else if (funNode.getName().equals("==")) {
                         type = "Equals";
                     }
-                    comp = inpComps.getChild(type);
+                    ID = registry.getID(type);
                 }
                 
-                try {
-                    convertJEPTree(funNode.jjtGetChild(0), outputStack, expression);
-                    convertJEPTree(funNode.jjtGetChild(1), outputStack, expression);
-                    outputStack.push(new BinaryOperator(Integer.parseInt(comp.getAttributeValue("ID")), type));
-                } catch (NullPointerException ex) {
+                convertJEPTree(funNode.jjtGetChild(0), outputStack, expression);
+                convertJEPTree(funNode.jjtGetChild(1), outputStack, expression);
+                if (ID != -1) {
+                    outputStack.push(new BinaryOperator(ID, type));
+                } else {
                     outputStack.add(new Tree.Text(expression));
                 }
             }
@@ -562,144 +738,198 @@ public class BuildTree {
     }
     
     
-    /** Creates a tree structure from the postfix expression
+    /** Creates a tree structure from the postfix expression. The tree is built with a stack of
+     * nodes in the heap rather than by recursion, so there is no limit on the depth of the tree.
      * @param currentNode an object of the expression to place into the tree
      * @param currentStack a stack containing the postfix expression
      */
     public static void toTree(MathObject currentNode, Stack currentStack) {
         
         if (currentStack.empty() != true) {
+            // Nodes whose children are still being taken from the stack, with the current node on top
+            Stack frames = new Stack();
+            frames.push(new Frame(currentNode, currentStack));
             
-            if (currentNode.getClass().getName().equals("Tree.NaryFunction")) {
-                NaryFunction naryFunctionObj = (NaryFunction)currentNode;
-                
-                Stack stack;
-                
-                int i=0;
-                while (i < naryFunctionObj.getSize()) {
-                    stack = (Stack)currentStack.pop();
-                    MathObject child1 = (MathObject)stack.pop();
-                    naryFunctionObj.setChild(child1, i);
-                    naryFunctionObj.getChild(i).setParent(naryFunctionObj);
-                    toTree(child1, stack);
-                    i++;
+            while (frames.empty() != true) {
+                Frame frame = (Frame)frames.peek();
+                Frame child = (Frame)frame.node.accept(treeBuilder, frame);
+                if (child == null) {
+                    // All children of the node are in the tree
+                    frames.pop();
+                } else if (child.stack.empty() != true) {
+                    frames.push(child);
                 }
-            } else if (currentNode.getClass().getName().equals("Tree.BinaryOperator")) {
-                BinaryOperator binaryObj = (BinaryOperator)currentNode;
-                
+            }
+        }
+    }
+    
+    // A node of the tree being built, with the postfix expression its children are taken from
+    private static class Frame {
+        MathObject node;
+        Stack stack;
+        // Position in taking the children of the node, and a second stack for some layouts
+        int step = 0;
+        int index = 0;
+        Stack nextStack = null;
+        
+        Frame(MathObject node, Stack stack) {
+            this.node = node;
+            this.stack = stack;
+        }
+    }
+    
+    /* Takes the children of each type of node from the postfix expression. Each call takes the next
+     * child, in the same order as a recursive traversal, and returns the frame to build that child's
+     * subtree from, or null when the node has all its children. The frame of the node is the data of the visitor.
+     */
+    private static class TreeBuilder implements MathObjectVisitor {
+        
+        public Object visit(NaryFunction naryFunctionObj, Object data) {
+            Frame frame = (Frame)data;
+            
+            int i = frame.index;
+            if (i < naryFunctionObj.getSize()) {
+                Stack stack = (Stack)frame.stack.pop();
+                MathObject child1 = (MathObject)stack.pop();
+                naryFunctionObj.setChild(child1, i);
+                naryFunctionObj.getChild(i).setParent(naryFunctionObj);
+                frame.index++;
+                return new Frame(child1, stack);
+            }
+            return null;
+        }
+        
+        public Object visit(BinaryOperator binaryObj, Object data) {
+            Frame frame = (Frame)data;
+            Stack currentStack = frame.stack;
+            
+            if (frame.step == 0) {
+                frame.step = 1;
                 if (binaryObj.getID() == 1 || binaryObj.getID() == 6 || binaryObj.getID() == 7 || binaryObj.getID() == 8
                         || binaryObj.getID() == 45  || binaryObj.getID() == 46 || binaryObj.getID() == 50 || binaryObj.getID() == 84) {
                     Object obj = (Object)currentStack.pop();
                     
                     if (obj.getClass().getName() != ("java.util.Stack")) {
-                        
                         binaryObj.setRightChild((MathObject)obj);
                         binaryObj.getRightChild().setParent(binaryObj);
-                        toTree(binaryObj.getRightChild(), currentStack);
-                        
-                        binaryObj.setLeftChild((MathObject)currentStack.pop());
-                        binaryObj.getLeftChild().setParent(binaryObj);
-                        toTree(binaryObj.getLeftChild(), currentStack);
-                        
+                        return new Frame(binaryObj.getRightChild(), currentStack);
                     } else {
+                        // Left and right child are each in their own stack
                         Stack leftStack = (Stack)obj;
-                        Stack rightStack = (Stack)currentStack.pop();
+                        frame.nextStack = (Stack)currentStack.pop();
                         
                         MathObject leftChild = (MathObject)leftStack.pop();
                         binaryObj.setLeftChild(leftChild);
                         binaryObj.getLeftChild().setParent(binaryObj);
-                        toTree(leftChild, leftStack);
-                        
-                        MathObject rightChild = (MathObject)rightStack.pop();
-                        binaryObj.setRightChild(rightChild);
-                        binaryObj.getRightChild().setParent(binaryObj);
-                        toTree(rightChild, rightStack);
+                        return new Frame(leftChild, leftStack);
                     }
                 } else {
-                    
                     binaryObj.setRightChild((MathObject)currentStack.pop());
                     binaryObj.getRightChild().setParent(binaryObj);
-                    toTree(binaryObj.getRightChild(), currentStack);
-                    
+                    return new Frame(binaryObj.getRightChild(), currentStack);
+                }
+            } else if (frame.step == 1) {
+                frame.step = 2;
+                if (frame.nextStack != null) {
+                    Stack rightStack = frame.nextStack;
+                    MathObject rightChild = (MathObject)rightStack.pop();
+                    binaryObj.setRightChild(rightChild);
+                    binaryObj.getRightChild().setParent(binaryObj);
+                    return new Frame(rightChild, rightStack);
+                } else {
                     binaryObj.setLeftChild((MathObject)currentStack.pop());
                     binaryObj.getLeftChild().setParent(binaryObj);
-                    toTree(binaryObj.getLeftChild(), currentStack);
+                    return new Frame(binaryObj.getLeftChild(), currentStack);
                 }
-                
-            } else if (currentNode.getClass().getName().equals("Tree.NaryOperator")) {
-                NaryOperator naryObj = (NaryOperator)currentNode;
-                
-                int i=-1;
+            }
+            return null;
+        }
+        
+        public Object visit(NaryOperator naryObj, Object data) {
+            Frame frame = (Frame)data;
+            Stack currentStack = frame.stack;
+            
+            // Step 0 takes the extra children before the first, step 1 the extra children before the second
+            if (frame.step < 2) {
                 MathObject nextObject = (MathObject)currentStack.peek();
                 
-                while (nextObject.getID() == naryObj.getID()) {
+                if (nextObject.getID() == naryObj.getID()) {
                     currentStack.remove(currentStack.size() -1);
                     // Add extra
-                    i++;
-                    naryObj.addChild((MathObject)currentStack.pop(), i);
-                    naryObj.getChild(i).setParent(naryObj);
-                    toTree(naryObj.getChild(i), currentStack);
-                    nextObject = (MathObject)currentStack.peek();
-                }
-                i++;
-                // Add first
-                naryObj.addChild((MathObject)currentStack.pop(), i);
-                naryObj.getChild(i).setParent(naryObj);
-                toTree(naryObj.getChild(i), currentStack);
-                
-                nextObject = (MathObject)currentStack.peek();
-                
-                while (nextObject.getID() == naryObj.getID()) {
-                    currentStack.remove(currentStack.size() -1);
-                    // Add extra
-                    i++;
-                    naryObj.addChild((MathObject)currentStack.pop(), i);
-                    naryObj.getChild(i).setParent(naryObj);
-                    toTree(naryObj.getChild(i), currentStack);
-                    nextObject = (MathObject)currentStack.peek();
+                } else {
+                    // Add first, or second
+                    frame.step++;
                 }
-                i++;
-                // Add second
+                int i = frame.index;
                 naryObj.addChild((MathObject)currentStack.pop(), i);
                 naryObj.getChild(i).setParent(naryObj);
-                toTree(naryObj.getChild(i), currentStack);
-                
-            } else if (currentNode.getClass().getName().equals("Tree.Function")) {
-                Function functionObj = (Function)currentNode;
-                Stack functionStack = (Stack)currentStack.pop();
+                frame.index++;
+                return new Frame(naryObj.getChild(i), currentStack);
+            }
+            return null;
+        }
+        
+        public Object visit(Function functionObj, Object data) {
+            Frame frame = (Frame)data;
+            
+            if (frame.step == 0) {
+                frame.step = 1;
+                Stack functionStack = (Stack)frame.stack.pop();
                 MathObject root = (MathObject)functionStack.pop();
-                toTree(root, functionStack);
                 functionObj.setChild(root);
-                
-            } else if (currentNode.getClass().getName().equals("Tree.Grouping")) {
-                Grouping groupingObj = (Grouping)currentNode;
-                Stack groupingStack = (Stack)currentStack.pop();
+                return new Frame(root, functionStack);
+            }
+            return null;
+        }
+        
+        public Object visit(Grouping groupingObj, Object data) {
+            Frame frame = (Frame)data;
+            
+            if (frame.step == 0) {
+                frame.step = 1;
+                Stack groupingStack = (Stack)frame.stack.pop();
                 MathObject root = (MathObject)groupingStack.pop();
-                toTree(root, groupingStack);
                 groupingObj.setChild(root);
-                
-            } else if (currentNode.getClass().getName().equals("Tree.Matrix")) {
-                Matrix matrixObj = (Matrix)currentNode;
-                
-                int m = matrixObj.getM();
-                int n= matrixObj.getN();
-                
-                int i=m-1; int j=n-1;
-                while (i >= 0) {
-                    while (j >= 0) {
-                        Stack matrixStack = (Stack)currentStack.pop();
-                        MathObject element = (MathObject)matrixStack.pop();
-                        matrixObj.setElement(i,j,element);
-                        matrixObj.getElement(i,j).setParent(matrixObj);
-                        toTree(element, matrixStack);
-                        j--;
-                    }
-                    j=n-1;
-                    i--;
-                }
-            } else {
-                
+                return new Frame(root, groupingStack);
+            }
+            return null;
+        }
+        
+        public Object visit(Matrix matrixObj, Object data) {
+            Frame frame = (Frame)data;
+            
+            int m = matrixObj.getM();
+            int n= matrixObj.getN();
+            
+            // Elements are taken from the last to the first, row by row
+            int k = m*n - 1 - frame.index;
+            if (k >= 0) {
+                int i = k / n; int j = k % n;
+                Stack matrixStack = (Stack)frame.stack.pop();
+                MathObject element = (MathObject)matrixStack.pop();
+                matrixObj.setElement(i,j,element);
+                matrixObj.getElement(i,j).setParent(matrixObj);
+                frame.index++;
+                return new Frame(element, matrixStack);
             }
+            return null;
+        }
+        
+        // Leaves of the tree have no children to take from the stack
+        public Object visit(MathObject node, Object data) {
+            return null;
+        }
+        
+        public Object visit(Tree.Text node, Object data) {
+            return null;
+        }
+        
+        public Object visit(Tree.Variable node, Object data) {
+            return null;
+        }
+        
+        public Object visit(RealNumber node, Object data) {
+            return null;
         }
     }
     
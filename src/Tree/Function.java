@@ -28,6 +28,8 @@ package Tree;
  */
 public class Function extends MathObject {
     
+    private static final long serialVersionUID = -2763376999475000874L;
+    
     private MathObject child = null;
     
     /** Creates a new instance of Function */
@@ -49,6 +51,28 @@ public class Function extends MathObject {
         this.child=child;
     }
     
+    int getChildCount() {
+        return 1;
+    }
+    
+    MathObject getChildAt(int i) {
+        return child;
+    }
+    
+    void setChildAt(int i, MathObject child) {
+        this.child = child;
+    }
     
+    MathObject copyNode() {
+        return new Function(getID(), getName());
+    }
     
-}
\ No newline at end of file
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
+}
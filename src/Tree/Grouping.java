@@ -28,6 +28,8 @@ package Tree;
  */
 public class Grouping extends MathObject {
     
+    private static final long serialVersionUID = -4013351715732159183L;
+    
     private MathObject child;
     
     /** Creates a new instance of Grouping
@@ -49,5 +51,29 @@ public class Grouping extends MathObject {
     public void setChild(MathObject child) {
         this.child=child;
     }
-
-}
\ No newline at end of file
+    
+    int getChildCount() {
+        return 1;
+    }
+    
+    MathObject getChildAt(int i) {
+        return child;
+    }
+    
+    void setChildAt(int i, MathObject child) {
+        this.child = child;
+    }
+    
+    MathObject copyNode() {
+        return new Grouping(getID(), getName());
+    }
+    
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
+}
@@ -0,0 +1,348 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Tree;
+
+import Display.ComponentRegistry;
+import java.util.ArrayList;
+import java.util.Stack;
+import org.nfunk.jep.ASTConstant;
+import org.nfunk.jep.ASTFunNode;
+import org.nfunk.jep.ASTVarNode;
+import org.nfunk.jep.Node;
+import org.nfunk.jep.VariableFactory;
+
+/**
+ * Creates a tree directly from the nodes of an expression parsed by JEP, without the postfix expression
+ * made by <code>BuildTree.convertJEPTree</code> for <code>BuildTree.toTree</code>. The trees are the same as those
+ * from the postfix expression. The ID and group of each component are found in the <code>ComponentRegistry</code>,
+ * rather than read from the component configuration for each node. If the expression contains a function or operator
+ * that is not a component, the whole expression is kept as text. A builder can be used from any thread.
+ * @author Alex Billingsley
+ */
+public class JEPTreeBuilder {
+
+    // Kinds of node, from the group of the component
+    private static final int UNKNOWN = 0;
+    private static final int CONSTANT = 1;
+    private static final int VARIABLE = 2;
+    private static final int NARY_OPERATOR = 3;
+    private static final int BINARY_OPERATOR = 4;
+    private static final int FUNCTION = 5;
+    private static final int GROUPING = 6;
+    private static final int NARY_FUNCTION = 7;
+
+    private final ComponentRegistry registry;
+
+    /** Creates a new instance of JEPTreeBuilder
+     * @param registry the components of the component configuration file
+     */
+    public JEPTreeBuilder(ComponentRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Returns the components the builder was created with
+     * @return The registry of components
+     */
+    public ComponentRegistry getRegistry() {
+        return registry;
+    }
+
+    /** Creates a tree from a parsed expression, by recursion. Use <code>build</code> for expressions
+     * that may be nested deeply.
+     * @param node the top node of the expression parsed by JEP
+     * @param expression the linear expression, kept as text if it cannot be made into a tree
+     * @return The root node of the tree
+     */
+    public MathObject buildRecursive(Node node, String expression) {
+        MathObject tree = buildNode(describe(node));
+        if (tree == null) {
+            tree = new Text(expression);
+        }
+        return tree;
+    }
+
+    // Creates the subtree of a node and its children, or returns null if it contains a node that is not a component
+    private MathObject buildNode(Part part) {
+        MathObject object = createObject(part);
+        if (object != null) {
+            Part[] children = getChildren(part);
+            int i = 0;
+            while (i < children.length) {
+                MathObject child = buildNode(children[i]);
+                if (child == null) {
+                    return null;
+                }
+                addChild(part, object, child, i);
+                i++;
+            }
+        }
+        return object;
+    }
+
+    /** Creates a tree from a parsed expression. The tree is built with a stack of nodes in the heap
+     * rather than by recursion, so there is no limit on the depth of the tree.
+     * @param node the top node of the expression parsed by JEP
+     * @param expression the linear expression, kept as text if it cannot be made into a tree
+     * @return The root node of the tree
+     */
+    public MathObject build(Node node, String expression) {
+        Part rootPart = describe(node);
+        MathObject root = createObject(rootPart);
+        if (root == null) {
+            return new Text(expression);
+        }
+
+        // Nodes whose children are still to be created, each followed by its object in the tree
+        Stack nodes = new Stack();
+        nodes.push(root);
+        nodes.push(rootPart);
+        while (nodes.empty() != true) {
+            Part part = (Part)nodes.pop();
+            MathObject object = (MathObject)nodes.pop();
+            Part[] children = getChildren(part);
+            int i = 0;
+            while (i < children.length) {
+                MathObject child = createObject(children[i]);
+                if (child == null) {
+                    return new Text(expression);
+                }
+                addChild(part, object, child, i);
+                if (children[i].kind != CONSTANT && children[i].kind != VARIABLE) {
+                    nodes.push(child);
+                    nodes.push(children[i]);
+                }
+                i++;
+            }
+        }
+        return root;
+    }
+
+    // A node of the parsed expression, with the component it becomes in the tree
+    private static class Part {
+        Node node;
+        int kind = UNKNOWN;
+        int id;
+        String type;
+
+        Part(Node node) {
+            this.node = node;
+        }
+    }
+
+    // Finds the component for a node of the parsed expression, in the same way as BuildTree.convertJEPTree
+    private Part describe(Node node) {
+        Part part = new Part(node);
+
+        if (node instanceof ASTFunNode) {
+            ASTFunNode funNode = (ASTFunNode)node;
+            String name = funNode.getPFMC().getClass().getName();
+            int id = registry.getIDByClass(name);
+            String type;
+            if (id != -1) {
+                type = registry.getName(id);
+            } else {
+                type = name.substring(name.lastIndexOf(".") + 1);
+            }
+
+            if (type.equals("Integral")) {
+                if  (funNode.jjtGetNumChildren() >= 4) {
+                    type = "DefiniteIntegral";
+                }
+                if  (funNode.jjtGetNumChildren() == 1) {
+                    addVariableX(funNode);
+                }
+            }
+            if (type.equals("DefiniteIntegral")) {
+                if  (funNode.jjtGetNumChildren() == 1) {
+                    addVariableX(funNode);
+                }
+                if  (funNode.jjtGetNumChildren() == 2 || funNode.jjtGetNumChildren() == 3) {
+                    type = "Integral";
+                }
+                id = registry.getID(type);
+            }
+
+            int n = funNode.jjtGetNumChildren();
+            if (id != -1) {
+                int group = registry.getGroup(id);
+                if (group == 1 && n >= 2) {
+                    part.kind = NARY_OPERATOR;
+                } else if (group == 2 && n >= 2) {
+                    part.kind = BINARY_OPERATOR;
+                } else if (group == 3 && n >= 1) {
+                    part.kind = FUNCTION;
+                } else if (group == 5 && n >= 1) {
+                    part.kind = GROUPING;
+                } else if (group == 0) {
+                    if (funNode.isOperator()) {
+                        // All layout operators are binary currently
+                        if (n >= 2) {
+                            part.kind = BINARY_OPERATOR;
+                        }
+                    } else if (n > 1) {
+                        part.kind = NARY_FUNCTION;
+                    } else if (n == 1) {
+                        part.kind = FUNCTION;
+                    }
+                }
+            } else {
+                if (type.equals("Comparative")) {
+                    if (funNode.getName().equals("<")) {
+                        type = "LessThan";
+                    } else if (funNode.getName().equals(">")) {
+                        type = "GreaterThan";
+                    } else if (funNode.getName().equals("<=")) {
+                        type = "LTEQ";
+                    } else if (funNode.getName().equals(">=")) {
+                        type = "GTEQ";
+                    } else if (funNode.getName().equals("!=")) {
+                        type = "NotEqual";
+                    } else if (funNode.getName().equals("==")) {
+                        type = "Equals";
+                    }
+                    id = registry.getID(type);
+                }
+                if (id != -1 && n >= 2) {
+                    part.kind = BINARY_OPERATOR;
+                }
+            }
+            part.id = id;
+            part.type = type;
+        } else if (node instanceof ASTConstant) {
+            part.kind = CONSTANT;
+        } else if (node instanceof ASTVarNode) {
+            part.kind = VARIABLE;
+        }
+        return part;
+    }
+
+    // Integrals without a variable of integration are integrated with respect to x
+    private static void addVariableX(ASTFunNode funNode) {
+        VariableFactory varFactory = new VariableFactory();
+        ASTVarNode newChild = new ASTVarNode(0);
+        newChild.setVar(varFactory.createVariable("x"));
+        funNode.jjtAddChild(newChild, 1);
+    }
+
+    // Creates the object in the tree for a node, without its children, or returns null if it is not a component
+    private static MathObject createObject(Part part) {
+        switch (part.kind) {
+            case CONSTANT:
+                try {
+                    return new RealNumber(Double.parseDouble(((ASTConstant)part.node).getValue().toString()));
+                } catch (NumberFormatException ex) {
+                    // Strings and complex numbers are not numbers in the tree
+                    return null;
+                }
+            case VARIABLE:
+                String name = ((ASTVarNode)part.node).getName();
+                if (name.length() > 1) {
+                    return new Text(name);
+                }
+                return new Variable(name.charAt(0), "Variable");
+            case NARY_OPERATOR:
+                return new NaryOperator(part.id, part.type);
+            case BINARY_OPERATOR:
+                return new BinaryOperator(part.id, part.type);
+            case FUNCTION:
+                return new Function(part.id, part.type);
+            case GROUPING:
+                return new Grouping(part.id, part.type);
+            case NARY_FUNCTION:
+                return new NaryFunction(part.id, part.type, part.node.jjtGetNumChildren());
+            default:
+                return null;
+        }
+    }
+
+    /* Returns the children of a node in the order they are added by addChild. Operators of the same
+     * n-ary operator are merged into one, taking the children in the same order as BuildTree.toTree takes
+     * them from the postfix expression: the second operand is taken first, and if an operand is the same operator
+     * it is replaced by its own operands, of which the second is taken without merging it.
+     */
+    private Part[] getChildren(Part part) {
+        Node node = part.node;
+        switch (part.kind) {
+            case NARY_OPERATOR:
+                ArrayList children = new ArrayList();
+                Stack operands = new Stack();
+                operands.push(describe(node.jjtGetChild(0)));
+                operands.push(describe(node.jjtGetChild(1)));
+                int step = 0;
+                while (step < 2) {
+                    Part next = (Part)operands.peek();
+                    if (next.kind == NARY_OPERATOR && next.id == part.id) {
+                        operands.pop();
+                        operands.push(describe(next.node.jjtGetChild(0)));
+                        operands.push(describe(next.node.jjtGetChild(1)));
+                    } else {
+                        step++;
+                    }
+                    children.add(operands.pop());
+                }
+                return (Part[])children.toArray(new Part[children.size()]);
+            case BINARY_OPERATOR:
+                return new Part[] {describe(node.jjtGetChild(0)), describe(node.jjtGetChild(1))};
+            case FUNCTION:
+            case GROUPING:
+                return new Part[] {describe(node.jjtGetChild(0))};
+            case NARY_FUNCTION:
+                Part[] arguments = new Part[node.jjtGetNumChildren()];
+                int i = 0;
+                while (i < arguments.length) {
+                    arguments[i] = describe(node.jjtGetChild(i));
+                    i++;
+                }
+                return arguments;
+            default:
+                return new Part[0];
+        }
+    }
+
+    // Adds a child to the object in the tree, linking it to its parent in the same way as BuildTree.toTree
+    private static void addChild(Part part, MathObject object, MathObject child, int i) {
+        switch (part.kind) {
+            case NARY_OPERATOR:
+                ((NaryOperator)object).addChild(child, i);
+                child.setParent(object);
+                break;
+            case BINARY_OPERATOR:
+                if (i == 0) {
+                    ((BinaryOperator)object).setLeftChild(child);
+                } else {
+                    ((BinaryOperator)object).setRightChild(child);
+                }
+                child.setParent(object);
+                break;
+            case FUNCTION:
+                ((Function)object).setChild(child);
+                break;
+            case GROUPING:
+                ((Grouping)object).setChild(child);
+                break;
+            case NARY_FUNCTION:
+                ((NaryFunction)object).setChild(child, i);
+                child.setParent(object);
+                break;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Tree;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.event.ContainerEvent;
+import java.awt.event.ContainerListener;
+import java.util.Map;
+import java.util.Stack;
+import java.util.WeakHashMap;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.JTextComponent;
+
+/**
+ * The trees of the layers of the display, kept so that <code>BuildTree.generateTree</code> only walks and parses
+ * the layers that have changed since the tree was last generated. When a layer's tree is stored, listeners are added to
+ * the components inside it. A text box being edited, or a component being added to or removed from a container,
+ * marks the layer it is in and every layer around it as changed, by removing their trees.
+ * The trees are kept only while their layers are in use, and must only be used from the event dispatch thread.
+ * @author Alex Billingsley
+ */
+public class LayerTrees {
+
+    // Tree of each layer that has not changed since it was stored
+    private final Map trees = new WeakHashMap();
+    // Components that the listeners have been added to. Every component inside one of these also has the listeners,
+    // as components added later are given them when they are added.
+    private final Map watched = new WeakHashMap();
+
+    private final ContainerListener containerListener = new ContainerListener() {
+        public void componentAdded(ContainerEvent e) {
+            watch(e.getChild());
+            changed(e.getContainer());
+        }
+
+        public void componentRemoved(ContainerEvent e) {
+            changed(e.getContainer());
+        }
+    };
+
+    /** Returns the tree of a layer, if the layer has not changed since it was stored. The tree is also part of the
+     * trees of the layers around it, so it must be copied before it is used outside the trees of the display.
+     * @param layer the layer
+     * @return The root node of the tree, or null if the layer has changed
+     */
+    public MathObject get(Container layer) {
+        return (MathObject)trees.get(layer);
+    }
+
+    /** Stores the tree of a layer, and adds the listeners to the components in the layer that mark it as changed
+     * @param layer the layer
+     * @param tree the root node of the tree made from the layer
+     */
+    public void put(Container layer, MathObject tree) {
+        watch(layer);
+        trees.put(layer, tree);
+    }
+
+    /** Marks a component as changed, removing the trees of every layer it is in
+     * @param component the component that has changed
+     */
+    public void changed(Component component) {
+        while (component != null) {
+            trees.remove(component);
+            component = component.getParent();
+        }
+    }
+
+    /** Removes all the trees */
+    public void clear() {
+        trees.clear();
+    }
+
+    /** Returns the number of layers with a stored tree
+     * @return The number of trees
+     */
+    public int size() {
+        return trees.size();
+    }
+
+    // Adds the listeners to a component and every component inside it, if it does not have them
+    private void watch(Component top) {
+        Stack components = new Stack();
+        components.push(top);
+        while (components.empty() != true) {
+            Component component = (Component)components.pop();
+            if (watched.containsKey(component) == false) {
+                watched.put(component, Boolean.TRUE);
+                if (component instanceof JTextComponent) {
+                    final JTextComponent textBox = (JTextComponent)component;
+                    textBox.getDocument().addDocumentListener(new DocumentListener() {
+                        public void insertUpdate(DocumentEvent e) {
+                            changed(textBox);
+                        }
+
+                        public void removeUpdate(DocumentEvent e) {
+                            changed(textBox);
+                        }
+
+                        public void changedUpdate(DocumentEvent e) {
+                        }
+                    });
+                } else if (component instanceof Container) {
+                    ((Container)component).addContainerListener(containerListener);
+                    Component[] children = ((Container)component).getComponents();
+                    int i = 0;
+                    while (i < children.length) {
+                        components.push(children[i]);
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+}
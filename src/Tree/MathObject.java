@@ -21,6 +21,7 @@ www.dragmath.bham.ac.uk
 
 package Tree;
 
+import java.util.Stack;
 
 /**
  * Superclass for all different Math objects of the tree to inherit fields/methods from
@@ -28,6 +29,9 @@ package Tree;
  */
 public class MathObject implements java.io.Serializable {
     
+    // Fixed to the value computed for earlier versions, so saved expressions can still be opened
+    private static final long serialVersionUID = -6388532064589725242L;
+    
     private String name;
     private int id;
     private MathObject parent = null;
@@ -63,4 +67,168 @@ public class MathObject implements java.io.Serializable {
         return parent;
     }
     
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
+    
+    /** Returns a hash code for the whole tree below this node, computed from the components, their content
+     * (e.g. the text, variable name or number) and the shape of the tree. Trees that are equal by
+     * <code>treeEquals</code> have the same hash code. The tree is walked without recursion, so it can be any depth.
+     * @return The hash code of the tree
+     */
+    public int treeHashCode() {
+        int hash = 1;
+        // Each node is followed by its parent in the tree, to find how it is linked to the parent
+        Stack nodes = new Stack();
+        nodes.push(null);
+        nodes.push(this);
+        while (nodes.empty() != true) {
+            MathObject node = (MathObject)nodes.pop();
+            MathObject treeParent = (MathObject)nodes.pop();
+            if (node == null) {
+                hash = 31*hash;
+            } else {
+                hash = 31*hash + node.nodeHashCode();
+                hash = 31*hash + node.getParentCode(treeParent);
+                int i = node.getChildCount()-1;
+                while (i >= 0) {
+                    nodes.push(node);
+                    nodes.push(node.getChildAt(i));
+                    i--;
+                }
+            }
+        }
+        return hash;
+    }
+    
+    /** Compares two trees by their structure. The trees are equal if they have the same shape and
+     * the same components with the same content at each position. As the parent of a node is used to decide
+     * on brackets when the tree is output, the nodes must also be linked to their parents in the same way.
+     * The tree is walked without recursion, so it can be any depth.
+     * @param other the root of the tree to compare with
+     * @return true if the trees are equal
+     */
+    public boolean treeEquals(MathObject other) {
+        if (other == null) {
+            return false;
+        }
+        // Pairs of nodes to compare, each followed by its parent in the tree
+        Stack nodes = new Stack();
+        nodes.push(null);
+        nodes.push(null);
+        nodes.push(other);
+        nodes.push(this);
+        while (nodes.empty() != true) {
+            MathObject node = (MathObject)nodes.pop();
+            MathObject otherNode = (MathObject)nodes.pop();
+            MathObject treeParent = (MathObject)nodes.pop();
+            MathObject otherTreeParent = (MathObject)nodes.pop();
+            if (node == null || otherNode == null) {
+                if (node != otherNode) {
+                    return false;
+                }
+            } else {
+                if (node.nodeEquals(otherNode) == false || node.getChildCount() != otherNode.getChildCount()
+                        || node.getParentCode(treeParent) != otherNode.getParentCode(otherTreeParent)) {
+                    return false;
+                }
+                int i = node.getChildCount()-1;
+                while (i >= 0) {
+                    nodes.push(otherNode);
+                    nodes.push(node);
+                    nodes.push(otherNode.getChildAt(i));
+                    nodes.push(node.getChildAt(i));
+                    i--;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /** Returns a copy of the whole tree below this node, which can be changed without changing this tree.
+     * Nodes of the copy are linked to their parents in the same way as in this tree, and the copy of this node
+     * has the same parent as this node. The tree is copied without recursion, so it can be any depth.
+     * @return The root of the copy
+     */
+    public MathObject copyTree() {
+        MathObject copy = copyNode();
+        copy.setParent(getParent());
+        // Nodes still to copy the children of, each followed by its copy
+        Stack nodes = new Stack();
+        nodes.push(copy);
+        nodes.push(this);
+        while (nodes.empty() != true) {
+            MathObject node = (MathObject)nodes.pop();
+            MathObject nodeCopy = (MathObject)nodes.pop();
+            int i = 0;
+            while (i < node.getChildCount()) {
+                MathObject child = node.getChildAt(i);
+                MathObject childCopy = null;
+                if (child != null) {
+                    childCopy = child.copyNode();
+                    if (child.getParent() == node) {
+                        childCopy.setParent(nodeCopy);
+                    } else {
+                        childCopy.setParent(child.getParent());
+                    }
+                    nodes.push(childCopy);
+                    nodes.push(child);
+                }
+                nodeCopy.setChildAt(i, childCopy);
+                i++;
+            }
+        }
+        return copy;
+    }
+    
+    // Describes the link from a node to its parent: -1 for none, -2 for its parent in the tree, otherwise the ID of the parent
+    private int getParentCode(MathObject treeParent) {
+        if (parent == null) {
+            return -1;
+        } else if (parent == treeParent) {
+            return -2;
+        }
+        return parent.getID();
+    }
+    
+    // Methods overridden by subclasses to give their content and children to treeHashCode, treeEquals and copyTree
+    
+    int nodeHashCode() {
+        int hash = getClass().getName().hashCode();
+        hash = 31*hash + id;
+        if (name != null) {
+            hash = 31*hash + name.hashCode();
+        }
+        return hash;
+    }
+    
+    boolean nodeEquals(MathObject other) {
+        if (getClass() != other.getClass() || id != other.id) {
+            return false;
+        }
+        if (name == null) {
+            return other.name == null;
+        }
+        return name.equals(other.name);
+    }
+    
+    int getChildCount() {
+        return 0;
+    }
+    
+    MathObject getChildAt(int i) {
+        return null;
+    }
+    
+    void setChildAt(int i, MathObject child) {
+    }
+    
+    MathObject copyNode() {
+        return new MathObject(id, name);
+    }
 }
@@ -0,0 +1,42 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Tree;
+
+/**
+ * Visitor for the nodes of the tree. Calling <code>accept</code> on a node calls the <code>visit</code>
+ * method for the type of that node, so operations on the tree do not need to test the class of each node.
+ * @author Alex Billingsley
+ */
+public interface MathObjectVisitor {
+
+    /** Visits a node that is not one of the subclasses of <code>MathObject</code> */
+    public Object visit(MathObject node, Object data);
+    public Object visit(BinaryOperator node, Object data);
+    public Object visit(NaryOperator node, Object data);
+    public Object visit(Function node, Object data);
+    public Object visit(NaryFunction node, Object data);
+    public Object visit(Grouping node, Object data);
+    public Object visit(Matrix node, Object data);
+    public Object visit(Text node, Object data);
+    public Object visit(Variable node, Object data);
+    public Object visit(RealNumber node, Object data);
+}
@@ -27,6 +27,8 @@ package Tree;
  */
 public class Matrix extends MathObject {
     
+    private static final long serialVersionUID = -1490818202274337358L;
+    
     private MathObject[][] array;
     private int m;
     private int n;
@@ -80,4 +82,33 @@ public class Matrix extends MathObject {
     public int getN() {
         return n;
     }
+    
+    boolean nodeEquals(MathObject other) {
+        return super.nodeEquals(other) && m == ((Matrix)other).m && n == ((Matrix)other).n;
+    }
+    
+    int getChildCount() {
+        return m*n;
+    }
+    
+    MathObject getChildAt(int i) {
+        return array[i / n][i % n];
+    }
+    
+    void setChildAt(int i, MathObject child) {
+        array[i / n][i % n] = child;
+    }
+    
+    MathObject copyNode() {
+        return new Matrix(getID(), getName(), m, n);
+    }
+    
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
 }
@@ -28,6 +28,8 @@ package Tree;
  */
 public class NaryFunction extends MathObject {
     
+    private static final long serialVersionUID = 7547921960404492100L;
+    
     private MathObject[] child;
     
     
@@ -50,5 +52,28 @@ public class NaryFunction extends MathObject {
         child[n] = newChild;
     }
     
+    int getChildCount() {
+        return child.length;
+    }
+    
+    MathObject getChildAt(int i) {
+        return child[i];
+    }
+    
+    void setChildAt(int i, MathObject newChild) {
+        child[i] = newChild;
+    }
     
-}
\ No newline at end of file
+    MathObject copyNode() {
+        return new NaryFunction(getID(), getName(), child.length);
+    }
+    
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
+}
@@ -29,6 +29,8 @@ import java.util.ArrayList;
  */
 public class NaryOperator extends MathObject {
     
+    private static final long serialVersionUID = 6740594457091149971L;
+    
     private ArrayList list = new ArrayList();
     
     /** Creates a new instance of n_aryOperator */
@@ -58,4 +60,30 @@ public class NaryOperator extends MathObject {
     public MathObject getChild(int n) {
         return (MathObject)list.get(n);
     }
+    
+    int getChildCount() {
+        return list.size();
+    }
+    
+    MathObject getChildAt(int i) {
+        return (MathObject)list.get(i);
+    }
+    
+    // Children are set in order when copying, so each is added at the end
+    void setChildAt(int i, MathObject child) {
+        list.add(child);
+    }
+    
+    MathObject copyNode() {
+        return new NaryOperator(getID(), getName());
+    }
+    
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
 }
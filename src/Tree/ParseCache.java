@@ -0,0 +1,233 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Tree;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * Bounded cache of linear expressions parsed by <code>BuildTree.parseString</code> and <code>BuildTree.parseTree</code>,
+ * so the text of a text box that has not changed is not parsed by JEP again each time the tree is generated.
+ * The postfix expression or tree is kept for each text, and a copy with new nodes is returned each time,
+ * as <code>toTree</code> and the display change the nodes. Text that cannot be parsed is also kept,
+ * so the error is thrown again without parsing. The least recently used text is removed when the cache is full.
+ * The cache can be used from any thread.
+ * @author Alex Billingsley
+ */
+public class ParseCache {
+
+    /** Default number of expressions kept */
+    public static final int DEFAULT_SIZE = 1024;
+
+    private static final ParseCache shared = new ParseCache(DEFAULT_SIZE);
+
+    private final Map entries;
+    private final Map trees;
+    private long hits = 0;
+    private long misses = 0;
+
+    /** Creates a new instance of ParseCache
+     * @param maxSize the greatest number of expressions to keep
+     */
+    public ParseCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        // Access ordered, so the eldest entry is the least recently used
+        entries = new LinkedHashMap(maxSize + 1, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > maxSize;
+            }
+        };
+        trees = new LinkedHashMap(maxSize + 1, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /** Returns the cache shared by the whole process, used by <code>BuildTree.parseString</code>
+     * @return The shared cache
+     */
+    public static ParseCache getShared() {
+        return shared;
+    }
+
+    /** Parses a linear expression into a postfix expression, parsing it only if it is not in the cache
+     * @param expression the linear expression, as typed into a text box
+     * @return A new postfix expression, that can be changed by the caller
+     * @throws org.nfunk.jep.ParseException if the expression cannot be parsed
+     */
+    public Stack parse(String expression) throws org.nfunk.jep.ParseException {
+        Object entry;
+        synchronized (entries) {
+            entry = entries.get(expression);
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+
+        if (entry instanceof Stack) {
+            return copyStack((Stack)entry);
+        } else if (entry != null) {
+            throw new org.nfunk.jep.ParseException((String)entry);
+        }
+
+        // Parsed outside the lock, so a long expression does not hold up other threads
+        Stack outputStack;
+        try {
+            outputStack = BuildTree.parseExpression(expression);
+        } catch (org.nfunk.jep.ParseException ex) {
+            // The message is kept for a failure, so each caller is given its own exception
+            String message = ex.getMessage();
+            if (message == null) {
+                message = "";
+            }
+            synchronized (entries) {
+                entries.put(expression, message);
+            }
+            throw ex;
+        }
+        Stack stored = copyStack(outputStack);
+        synchronized (entries) {
+            entries.put(expression, stored);
+        }
+        return outputStack;
+    }
+
+    /** Parses a linear expression into a tree, parsing it only if it is not in the cache
+     * @param expression the linear expression, as typed into a text box
+     * @return A new tree, that can be changed by the caller
+     * @throws org.nfunk.jep.ParseException if the expression cannot be parsed
+     */
+    public MathObject parseTree(String expression) throws org.nfunk.jep.ParseException {
+        Object entry;
+        // Both maps are guarded by the lock on entries
+        synchronized (entries) {
+            entry = trees.get(expression);
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        
+        if (entry instanceof MathObject) {
+            return ((MathObject)entry).copyTree();
+        } else if (entry != null) {
+            throw new org.nfunk.jep.ParseException((String)entry);
+        }
+        
+        MathObject tree;
+        try {
+            tree = BuildTree.parseExpressionTree(expression);
+        } catch (org.nfunk.jep.ParseException ex) {
+            String message = ex.getMessage();
+            if (message == null) {
+                message = "";
+            }
+            synchronized (entries) {
+                trees.put(expression, message);
+            }
+            throw ex;
+        }
+        MathObject stored = tree.copyTree();
+        synchronized (entries) {
+            trees.put(expression, stored);
+        }
+        return tree;
+    }
+
+    /** Returns the number of expressions found in the cache
+     * @return The number of hits
+     */
+    public long getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    /** Returns the number of expressions not found in the cache
+     * @return The number of misses
+     */
+    public long getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    /** Returns the number of postfix expressions and trees in the cache
+     * @return The number of expressions
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size() + trees.size();
+        }
+    }
+
+    /** Removes every expression from the cache and sets the hit and miss counts to zero
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            trees.clear();
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    /** Copies a postfix expression, including the stacks inside it for functions and layouts,
+     * with a copy of each node. The stacks are copied without recursion.
+     * @param source the postfix expression to copy
+     * @return The copy
+     */
+    public static Stack copyStack(Stack source) {
+        Stack copy = new Stack();
+        // Stacks still to copy the items of, each followed by its copy
+        Stack work = new Stack();
+        work.push(copy);
+        work.push(source);
+        while (work.empty() != true) {
+            Stack from = (Stack)work.pop();
+            Stack to = (Stack)work.pop();
+            int i = 0;
+            while (i < from.size()) {
+                Object item = from.get(i);
+                if (item instanceof Stack) {
+                    Stack inner = new Stack();
+                    to.add(inner);
+                    work.push(inner);
+                    work.push(item);
+                } else if (item instanceof MathObject) {
+                    to.add(((MathObject)item).copyTree());
+                } else {
+                    to.add(item);
+                }
+                i++;
+            }
+        }
+        return copy;
+    }
+}
@@ -27,6 +27,8 @@ package Tree;
  */
 public class RealNumber extends MathObject {
     
+    private static final long serialVersionUID = -7032156811665978226L;
+    
     private double number;
     
     /** Creates a new instance of RealNumber
@@ -53,4 +55,32 @@ public class RealNumber extends MathObject {
        return strNum;
     }
     
-}
\ No newline at end of file
+    /** Returns the value of the number
+     * @return The value
+     */
+    public double getValue() {
+        return number;
+    }
+    
+    int nodeHashCode() {
+        long bits = Double.doubleToLongBits(number);
+        return 31*super.nodeHashCode() + (int)(bits ^ (bits >>> 32));
+    }
+    
+    boolean nodeEquals(MathObject other) {
+        return super.nodeEquals(other) && Double.doubleToLongBits(number) == Double.doubleToLongBits(((RealNumber)other).number);
+    }
+    
+    MathObject copyNode() {
+        return new RealNumber(number);
+    }
+    
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
+}
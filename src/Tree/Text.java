@@ -28,6 +28,8 @@ package Tree;
  */
 public class Text extends MathObject {
     
+    private static final long serialVersionUID = 2903131768426742493L;
+    
     private String text;
     
     /** Creates a new instance of Text 
@@ -45,5 +47,30 @@ public class Text extends MathObject {
         return text;
     }
     
-
+    int nodeHashCode() {
+        return 31*super.nodeHashCode() + (text == null ? 0 : text.hashCode());
+    }
+    
+    boolean nodeEquals(MathObject other) {
+        if (super.nodeEquals(other) == false) {
+            return false;
+        }
+        if (text == null) {
+            return ((Text)other).text == null;
+        }
+        return text.equals(((Text)other).text);
+    }
+    
+    MathObject copyNode() {
+        return new Text(text);
+    }
+    
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
 }
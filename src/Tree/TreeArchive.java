@@ -0,0 +1,227 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Tree;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An archive of many trees written by <code>TreeArchiveWriter</code>. The file is mapped into memory with
+ * <code>FileChannel.map</code>, so opening an archive only reads its index, and each tree is decoded directly
+ * from the mapped file when it is asked for, without copying its bytes. The archive is not changed after it is
+ * opened, so trees can be read from any number of threads at once. Archives are limited to 2 GB.
+ * @author Alex Billingsley
+ */
+public class TreeArchive {
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final String[] names;
+
+    /** Opens an archive and reads its index
+     * @param file the archive file
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    public TreeArchive(File file) throws IOException {
+        this.file = file;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Archive too large: " + file);
+            }
+            if (size < TreeArchiveWriter.HEADER_LENGTH + TreeArchiveWriter.TRAILER_LENGTH) {
+                throw new IOException("Not an expression archive: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            in.close();
+        }
+
+        int end = buffer.capacity();
+        if (hasMagic(0) == false || hasMagic(end - 4) == false) {
+            throw new IOException("Not an expression archive: " + file);
+        }
+        int version = buffer.getInt(4);
+        if (version > TreeArchiveWriter.VERSION) {
+            throw new IOException("Expression archive is from a newer version (" + version + "): " + file);
+        }
+        long indexOffset = buffer.getLong(end - TreeArchiveWriter.TRAILER_LENGTH);
+        int count = buffer.getInt(end - TreeArchiveWriter.TRAILER_LENGTH + 8);
+        // Each entry of the index is at least 14 bytes
+        if (indexOffset < TreeArchiveWriter.HEADER_LENGTH || count < 0
+                || indexOffset + 14L * count > end - TreeArchiveWriter.TRAILER_LENGTH) {
+            throw new IOException("Damaged expression archive: " + file);
+        }
+
+        offsets = new long[count];
+        lengths = new int[count];
+        names = new String[count];
+        ByteBuffer index = buffer.duplicate();
+        index.position((int)indexOffset);
+        index.limit(end - TreeArchiveWriter.TRAILER_LENGTH);
+        try {
+            int i = 0;
+            while (i < count) {
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+                if (offsets[i] < TreeArchiveWriter.HEADER_LENGTH || lengths[i] < 0 || offsets[i] + lengths[i] > indexOffset) {
+                    throw new IOException("Damaged expression archive: " + file);
+                }
+                byte[] name = new byte[index.getShort() & 0xFFFF];
+                index.get(name);
+                names[i] = new String(name, "UTF-8");
+                i++;
+            }
+        } catch (java.nio.BufferUnderflowException ex) {
+            throw new IOException("Damaged expression archive: " + file);
+        }
+    }
+
+    /** Returns the archive file
+     * @return The file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /** Returns the number of trees in the archive
+     * @return The number of trees
+     */
+    public int getSize() {
+        return offsets.length;
+    }
+
+    /** Returns the name a tree was added with
+     * @param i the index of the tree
+     * @return The name, which is empty if the tree was added without a name
+     */
+    public String getName(int i) {
+        return names[i];
+    }
+
+    /** Returns the bytes of a tree in the archive, as a read only view of the mapped file
+     * @param i the index of the tree
+     * @return The tree in the binary format of <code>TreeWriter</code>
+     */
+    public ByteBuffer getData(int i) {
+        ByteBuffer data = buffer.asReadOnlyBuffer();
+        data.position((int)offsets[i]);
+        data.limit((int)offsets[i] + lengths[i]);
+        return data.slice();
+    }
+
+    /** Reads a tree from the archive
+     * @param i the index of the tree
+     * @return The root node of the tree
+     * @throws IOException if the tree is damaged
+     */
+    public MathObject getTree(int i) throws IOException {
+        return TreeReader.read(new BufferInputStream(getData(i)));
+    }
+
+    /** Returns a tree of the archive as an item for <code>Output.BatchConvert</code>, which is read when it is converted
+     * @param i the index of the tree
+     * @return The entry
+     */
+    public Entry getEntry(int i) {
+        return new Entry(this, i);
+    }
+
+    /** A tree in an archive, which is read from the archive each time it is asked for */
+    public static class Entry {
+        private final TreeArchive archive;
+        private final int index;
+
+        Entry(TreeArchive archive, int index) {
+            this.archive = archive;
+            this.index = index;
+        }
+
+        /** Returns the name the tree was added with
+         * @return The name
+         */
+        public String getName() {
+            return archive.getName(index);
+        }
+
+        /** Reads the tree from the archive
+         * @return The root node of the tree
+         * @throws IOException if the tree is damaged
+         */
+        public MathObject getTree() throws IOException {
+            return archive.getTree(index);
+        }
+    }
+
+    private boolean hasMagic(int position) {
+        int i = 0;
+        while (i < TreeArchiveWriter.MAGIC.length) {
+            if (buffer.get(position + i) != TreeArchiveWriter.MAGIC[i]) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    // Reads the bytes of a buffer as a stream
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            if (buffer.hasRemaining() == false) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (buffer.hasRemaining() == false) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Tree;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Writes many trees into one archive file, to be read by <code>TreeArchive</code>. Each tree is written
+ * in the binary format of <code>TreeWriter</code> on its own, so any tree can be read without the others.
+ * <p>
+ * The archive starts with the bytes "DRGA" and the version as 4 bytes, followed by the trees. After the trees is
+ * an index with the offset and length of each tree (8 and 4 bytes) and its name (2 bytes of length and the name
+ * in UTF-8). The archive ends with the offset of the index (8 bytes), the number of trees (4 bytes) and "DRGA" again.
+ * @author Alex Billingsley
+ */
+public class TreeArchiveWriter {
+
+    /** Bytes at the start and end of an archive */
+    static final byte[] MAGIC = {'D', 'R', 'G', 'A'};
+
+    /** Version of the format written */
+    public static final int VERSION = 1;
+
+    // Length of the header and of the end of the archive
+    static final int HEADER_LENGTH = 8;
+    static final int TRAILER_LENGTH = 16;
+
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+    private long offset;
+    // Offset, length and name in UTF-8 of each tree
+    private long[] offsets = new long[64];
+    private int[] lengths = new int[64];
+    private final ArrayList names = new ArrayList();
+    private int size = 0;
+    // Length of the index written by close
+    private long indexLength = 0;
+
+    /** Creates a new instance of TreeArchiveWriter, creating or replacing the archive file
+     * @param file the archive to write
+     * @throws IOException if the file cannot be written
+     */
+    public TreeArchiveWriter(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        offset = HEADER_LENGTH;
+    }
+
+    /** Adds a tree to the archive. Nothing is written if the tree cannot be added.
+     * @param name the name of the tree, e.g. the name of the file it was read from, or null
+     * @param tree the root node of the tree
+     * @throws IOException if the archive cannot be written, the tree contains a node of an unknown type,
+     * the name is longer than 65535 bytes in UTF-8 or the archive would be larger than 2 GB
+     */
+    public void add(String name, MathObject tree) throws IOException {
+        if (name == null) {
+            name = "";
+        }
+        byte[] nameBytes = name.getBytes("UTF-8");
+        if (nameBytes.length > 0xFFFF) {
+            throw new IOException("Name too long for archive: " + name);
+        }
+        entry.reset();
+        TreeWriter writer = new TreeWriter(entry);
+        writer.writeTree(tree);
+        long newIndexLength = indexLength + 14 + nameBytes.length;
+        // TreeArchive maps the whole file, so it must stay within 2 GB with its index
+        if (offset + entry.size() + newIndexLength + TRAILER_LENGTH > Integer.MAX_VALUE) {
+            throw new IOException("Archive would be larger than 2 GB");
+        }
+        entry.writeTo(out);
+
+        if (size == offsets.length) {
+            offsets = java.util.Arrays.copyOf(offsets, size * 2);
+            lengths = java.util.Arrays.copyOf(lengths, size * 2);
+        }
+        offsets[size] = offset;
+        lengths[size] = entry.size();
+        names.add(nameBytes);
+        size++;
+        offset = offset + entry.size();
+        indexLength = newIndexLength;
+    }
+
+    /** Returns the number of trees added
+     * @return The number of trees
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /** Writes the index and closes the archive
+     * @throws IOException if the archive cannot be written
+     */
+    public void close() throws IOException {
+        try {
+            long indexOffset = offset;
+            int i = 0;
+            while (i < size) {
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+                byte[] name = (byte[])names.get(i);
+                out.writeShort(name.length);
+                out.write(name);
+                i++;
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(size);
+            out.write(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+}
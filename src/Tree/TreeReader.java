@@ -0,0 +1,518 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Tree;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Stack;
+
+/**
+ * Reads trees written by <code>TreeWriter</code>. The static <code>read</code> methods also read trees saved
+ * by earlier versions with Java serialization, allowing only the classes of the tree to be created.
+ * @author Alex Billingsley
+ */
+public class TreeReader {
+
+    // Limit on the length of a string and the number of children of a node, so damaged data cannot use up the memory
+    private static final int MAX_LENGTH = 1 << 24;
+    // Limit on the children of all the parents written after the nodes of a tree, as they are created without data
+    private static final int MAX_PARENT_SLOTS = 1 << 20;
+    // Size of the first buffer for a string, which grows as the string is read
+    private static final int STRING_BUFFER = 256;
+    // Limits on trees saved with Java serialization, as a pattern of ObjectInputFilter
+    private static final String SERIAL_LIMITS = "maxarray=" + (1 << 20) + ";maxdepth=5000;maxrefs=" + (1 << 22);
+
+    private final InputStream in;
+    private final int version;
+    // Strings read so far, by their index
+    private final ArrayList strings = new ArrayList();
+    // The children still to be read of the node last read, or null if it has none
+    private Frame pending;
+    // Whether the node last read is linked to its parent in the tree
+    private boolean linked;
+    // Children of the parents read for the current tree
+    private int parentSlots;
+
+    /** Creates a new instance of TreeReader and reads the start of the format. The stream should be buffered.
+     * @param in the stream to read from
+     * @throws IOException if the stream cannot be read, or is not in the binary format
+     */
+    public TreeReader(InputStream in) throws IOException {
+        this.in = in;
+        if (readMagic(in) == false) {
+            throw new IOException("Not an expression file");
+        }
+        version = readInt();
+        if (version > TreeWriter.VERSION) {
+            throw new IOException("Expression file is from a newer version (" + version + ")");
+        }
+    }
+
+    /** Returns the version of the format of the stream
+     * @return The version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    // A node whose children are still to be read. Nodes with an array of children are only created once the
+    // children have been read, so damaged data cannot declare more children than it holds
+    private static class Frame {
+        MathObject node;
+        int count;
+        int index = 0;
+        boolean linked;
+        // For a node not yet created: its kind, ID, name, rows of a matrix, parent outside the tree and the
+        // children read so far, with those linked to it
+        int kind;
+        int id;
+        String name;
+        int rows;
+        MathObject parent;
+        ArrayList children;
+        ArrayList linkedChildren;
+
+        Frame(MathObject node, int count, boolean linked) {
+            this.node = node;
+            this.count = count;
+            this.linked = linked;
+        }
+
+        void add(MathObject child, boolean childLinked) {
+            if (node != null) {
+                node.setChildAt(index, child);
+                if (childLinked && child != null) {
+                    child.setParent(node);
+                }
+            } else {
+                children.add(child);
+                if (childLinked && child != null) {
+                    linkedChildren.add(child);
+                }
+            }
+            index++;
+        }
+
+        // Returns the node, creating it if it was waiting for its children
+        MathObject build() {
+            if (node == null) {
+                if (kind == TreeWriter.MATRIX) {
+                    node = new Matrix(id, name, rows, count / rows);
+                } else {
+                    node = new NaryFunction(id, name, count);
+                }
+                int i = 0;
+                while (i < count) {
+                    node.setChildAt(i, (MathObject)children.get(i));
+                    i++;
+                }
+                i = 0;
+                while (i < linkedChildren.size()) {
+                    ((MathObject)linkedChildren.get(i)).setParent(node);
+                    i++;
+                }
+                if (parent != null) {
+                    node.setParent(parent);
+                }
+            }
+            return node;
+        }
+    }
+
+    /** Reads the next tree. The tree is built without recursion, so it can be any depth.
+     * @return The root node of the tree, which may be null if a null tree was written
+     * @throws EOFException if there are no more trees in the stream
+     * @throws IOException if the stream cannot be read or the data is damaged
+     */
+    public MathObject readTree() throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            throw new EOFException();
+        }
+        parentSlots = 0;
+        Stack frames = new Stack();
+        MathObject node = readNode(first, false);
+        boolean nodeLinked = linked;
+        Frame frame = pending;
+        while (true) {
+            if (frame != null && frame.index < frame.count) {
+                frames.push(frame);
+                node = readNode(readByte(), false);
+                nodeLinked = linked;
+                frame = pending;
+            } else {
+                // The node and all its children have been read
+                if (frame != null) {
+                    node = frame.build();
+                    nodeLinked = frame.linked;
+                }
+                if (frames.empty()) {
+                    return node;
+                }
+                frame = (Frame)frames.pop();
+                frame.add(node, nodeLinked);
+            }
+        }
+    }
+
+    /** Closes the stream
+     * @throws IOException if the stream cannot be closed
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /** Reads a tree in either the binary format or the format of Java serialization used by earlier versions
+     * @param in the stream to read from, which is not closed
+     * @return The root node of the tree
+     * @throws IOException if the stream cannot be read or does not contain a tree
+     */
+    public static MathObject read(InputStream in) throws IOException {
+        try {
+            return readEither(in);
+        } catch (EOFException ex) {
+            // Data that ends within the header or before a tree has no message, damaged data says where it ended
+            if (ex.getMessage() == null) {
+                throw new IOException("Not an expression file");
+            }
+            throw new IOException(ex.getMessage());
+        }
+    }
+
+    // Reads a tree in the format given by the start of the stream
+    private static MathObject readEither(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, TreeWriter.MAGIC.length);
+        byte[] start = new byte[TreeWriter.MAGIC.length];
+        int length = 0;
+        while (length < start.length) {
+            int n = pushback.read(start, length, start.length - length);
+            if (n == -1) {
+                break;
+            }
+            length = length + n;
+        }
+        pushback.unread(start, 0, length);
+        if (readMagic(new ByteArrayInputStream(start, 0, length))) {
+            return new TreeReader(pushback).readTree();
+        }
+        return readSerialized(pushback);
+    }
+
+    /** Reads a tree from an array of bytes, in either format
+     * @param data the tree written by <code>TreeWriter</code> or by Java serialization
+     * @return The root node of the tree
+     * @throws IOException if the data does not contain a tree
+     */
+    public static MathObject read(byte[] data) throws IOException {
+        return read(new ByteArrayInputStream(data));
+    }
+
+    /** Reads a tree saved in a .drgm file, in either format
+     * @param file the file to read
+     * @return The root node of the tree
+     * @throws IOException if the file cannot be read or does not contain a tree
+     */
+    public static MathObject read(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Reads a tree saved with Java serialization
+    private static MathObject readSerialized(InputStream in) throws IOException {
+        ObjectInputStream objects = new TreeInputStream(in);
+        try {
+            return (MathObject)objects.readObject();
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Not an expression file: " + ex.getMessage());
+        } catch (ClassCastException ex) {
+            throw new IOException("Not an expression file");
+        }
+    }
+
+    // Reads only the classes that make up a tree, so other objects cannot be created from the data
+    private static class TreeInputStream extends ObjectInputStream {
+
+        TreeInputStream(InputStream in) throws IOException {
+            super(in);
+            setLimits();
+        }
+
+        // Limits the size and depth of the objects read with the ObjectInputFilter of Java 9, or of Java 8 from
+        // update 121, so the data cannot use up the memory or the stack. Older versions only check the classes
+        private void setLimits() {
+            try {
+                Class config = Class.forName("java.io.ObjectInputFilter$Config");
+                Object filter = config.getMethod("createFilter", new Class[] {String.class})
+                        .invoke(null, new Object[] {SERIAL_LIMITS});
+                ObjectInputStream.class.getMethod("setObjectInputFilter", new Class[] {config.getDeclaringClass()})
+                        .invoke(this, new Object[] {filter});
+                return;
+            } catch (Exception ex) {
+                // not Java 9
+            }
+            try {
+                Class config = Class.forName("sun.misc.ObjectInputFilter$Config");
+                Object filter = config.getMethod("createFilter", new Class[] {String.class})
+                        .invoke(null, new Object[] {SERIAL_LIMITS});
+                config.getMethod("setObjectInputFilter", new Class[] {ObjectInputStream.class, config.getDeclaringClass()})
+                        .invoke(null, new Object[] {this, filter});
+            } catch (Exception ex) {
+                // no filter in this version of Java
+            }
+        }
+
+        protected Class resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (name.startsWith("Tree.") || name.startsWith("[LTree.") || name.startsWith("[[LTree.")
+                    || name.equals("java.util.ArrayList")) {
+                return super.resolveClass(desc);
+            }
+            throw new InvalidClassException(name, "Not part of an expression");
+        }
+    }
+
+    private static boolean readMagic(InputStream in) throws IOException {
+        int i = 0;
+        while (i < TreeWriter.MAGIC.length) {
+            if (in.read() != TreeWriter.MAGIC[i]) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    // Reads a node without its children, setting pending to the frame of its children. A parent written after
+    // a node is read detached: it is created at once, and must not be linked to a parent itself
+    private MathObject readNode(int first, boolean detached) throws IOException {
+        int kind = first & 0x0F;
+        int link = first >> 4;
+        MathObject node = null;
+        int count = 0;
+        int rows = 0;
+        int id = 0;
+        String name = null;
+        switch (kind) {
+            case TreeWriter.NULL:
+                if (detached == false) {
+                    pending = null;
+                    linked = false;
+                }
+                return null;
+            case TreeWriter.INTEGER:
+                long whole = readLong();
+                node = new RealNumber((double)((whole >>> 1) ^ -(whole & 1)));
+                break;
+            case TreeWriter.REAL_NUMBER:
+                long bits = 0;
+                int i = 0;
+                while (i < 8) {
+                    bits = (bits << 8) | readByte();
+                    i++;
+                }
+                node = new RealNumber(Double.longBitsToDouble(bits));
+                break;
+            case TreeWriter.TEXT:
+                node = new Text(readString());
+                break;
+            case TreeWriter.VARIABLE:
+                String type = readString();
+                node = new Variable((char)readInt(), type);
+                break;
+            default:
+                int code = readInt();
+                id = (code >>> 1) ^ -(code & 1);
+                name = readString();
+                switch (kind) {
+                    case TreeWriter.MATH_OBJECT:
+                        node = new MathObject(id, name);
+                        break;
+                    case TreeWriter.BINARY_OPERATOR:
+                        node = new BinaryOperator(id, name);
+                        count = 2;
+                        break;
+                    case TreeWriter.NARY_OPERATOR:
+                        node = new NaryOperator(id, name);
+                        count = readCount();
+                        break;
+                    case TreeWriter.FUNCTION:
+                        node = new Function(id, name);
+                        count = 1;
+                        break;
+                    case TreeWriter.GROUPING:
+                        node = new Grouping(id, name);
+                        count = 1;
+                        break;
+                    case TreeWriter.NARY_FUNCTION:
+                        count = readCount();
+                        break;
+                    case TreeWriter.MATRIX:
+                        rows = readCount();
+                        int n = readCount();
+                        if (rows == 0 || n == 0 || (long)rows * n > MAX_LENGTH) {
+                            throw new IOException("Damaged expression file: matrix of " + rows + "x" + n);
+                        }
+                        count = rows * n;
+                        break;
+                    default:
+                        throw new IOException("Damaged expression file: unknown node " + kind);
+                }
+                if (node == null && (detached || count == 0)) {
+                    if (detached) {
+                        parentSlots = parentSlots + count;
+                        if (parentSlots > MAX_PARENT_SLOTS) {
+                            throw new IOException("Damaged expression file: too many children of parents");
+                        }
+                    }
+                    if (kind == TreeWriter.MATRIX) {
+                        node = new Matrix(id, name, rows, count / rows);
+                    } else {
+                        node = new NaryFunction(id, name, count);
+                    }
+                }
+        }
+
+        if (detached) {
+            if (link != TreeWriter.PARENT_NONE) {
+                throw new IOException("Damaged expression file: parent with a link " + link);
+            }
+            return node;
+        }
+        MathObject parent = null;
+        if (link == TreeWriter.PARENT_OTHER) {
+            // The parent is written after the node, without its children
+            parent = readNode(readByte(), true);
+            if (parent == null) {
+                throw new IOException("Damaged expression file: missing parent");
+            }
+            if (node != null) {
+                node.setParent(parent);
+            }
+        } else if (link != TreeWriter.PARENT_NONE && link != TreeWriter.PARENT_TREE) {
+            throw new IOException("Damaged expression file: unknown link " + link);
+        }
+        linked = link == TreeWriter.PARENT_TREE;
+        if (count > 0) {
+            pending = new Frame(node, count, linked);
+            if (node == null) {
+                pending.kind = kind;
+                pending.id = id;
+                pending.name = name;
+                pending.rows = rows;
+                pending.parent = parent;
+                pending.children = new ArrayList();
+                pending.linkedChildren = new ArrayList();
+            }
+        } else {
+            pending = null;
+        }
+        return node;
+    }
+
+    private String readString() throws IOException {
+        int ref = readInt();
+        if (ref == TreeWriter.STRING_NULL) {
+            return null;
+        } else if (ref == TreeWriter.STRING_NEW) {
+            // The buffer grows as the bytes are read, so a damaged length cannot use up the memory
+            int count = readCount();
+            byte[] bytes = new byte[Math.min(count, STRING_BUFFER)];
+            int length = 0;
+            while (length < count) {
+                if (length == bytes.length) {
+                    bytes = java.util.Arrays.copyOf(bytes, (int)Math.min(count, 2L * length));
+                }
+                int n = in.read(bytes, length, bytes.length - length);
+                if (n == -1) {
+                    throw new EOFException("Damaged expression file: missing end");
+                }
+                length = length + n;
+            }
+            String string = new String(bytes, 0, length, "UTF-8");
+            strings.add(string);
+            return string;
+        } else if (ref - 2 < strings.size()) {
+            return (String)strings.get(ref - 2);
+        }
+        throw new IOException("Damaged expression file: unknown string " + ref);
+    }
+
+    // Reads the length of a string or the number of children of a node
+    private int readCount() throws IOException {
+        int count = readInt();
+        if (count < 0 || count > MAX_LENGTH) {
+            throw new IOException("Damaged expression file: length " + count);
+        }
+        return count;
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Damaged expression file: missing end");
+        }
+        return b;
+    }
+
+    // Reads a number written by TreeWriter.writeInt
+    private int readInt() throws IOException {
+        int value = 0;
+        int shift = 0;
+        while (shift < 35) {
+            int b = readByte();
+            value = value | ((b & 0x7F) << shift);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift = shift + 7;
+        }
+        throw new IOException("Damaged expression file: number too long");
+    }
+
+    private long readLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (shift < 70) {
+            int b = readByte();
+            value = value | ((long)(b & 0x7F) << shift);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift = shift + 7;
+        }
+        throw new IOException("Damaged expression file: number too long");
+    }
+}
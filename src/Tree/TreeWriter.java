@@ -0,0 +1,240 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Tree;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Stack;
+
+/**
+ * Writes trees in the binary format of .drgm files, which replaces Java serialization. The format is versioned
+ * and does not depend on the fields of the classes of the tree, so files can still be read when the classes change.
+ * <p>
+ * A stream starts with the bytes "DRGM" and the version, followed by any number of trees. Each tree is written
+ * node by node, parent before children, with the numbers as variable length integers (7 bits to each byte) and
+ * each string written once, then referred to by its index. The parent of each node is not written as an object,
+ * only whether the node is linked to its parent in the tree.
+ * @author Alex Billingsley
+ */
+public class TreeWriter {
+
+    /** Bytes at the start of the binary format, which cannot be the start of a serialized object */
+    static final byte[] MAGIC = {'D', 'R', 'G', 'M'};
+
+    /** Version of the format written */
+    public static final int VERSION = 1;
+
+    // Kinds of node, in the low 4 bits of the first byte of a node
+    static final int NULL = 0;
+    static final int MATH_OBJECT = 1;
+    static final int BINARY_OPERATOR = 2;
+    static final int NARY_OPERATOR = 3;
+    static final int FUNCTION = 4;
+    static final int GROUPING = 5;
+    static final int NARY_FUNCTION = 6;
+    static final int MATRIX = 7;
+    static final int TEXT = 8;
+    static final int VARIABLE = 9;
+    static final int REAL_NUMBER = 10;
+    // A RealNumber with a whole value, written as an integer
+    static final int INTEGER = 11;
+
+    // Links of a node to its parent, in the high 4 bits of the first byte of a node
+    static final int PARENT_NONE = 0;
+    static final int PARENT_TREE = 1;
+    // The parent is not in the tree, so it is written after the node without its children
+    static final int PARENT_OTHER = 2;
+
+    // String references: null, a new string written in full, or the index of a string already written plus 2
+    static final int STRING_NULL = 0;
+    static final int STRING_NEW = 1;
+
+    private final OutputStream out;
+    // Strings already written, to their index
+    private final HashMap strings = new HashMap();
+
+    /** Creates a new instance of TreeWriter and writes the start of the format. The stream should be buffered.
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public TreeWriter(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(MAGIC);
+        writeInt(VERSION);
+    }
+
+    /** Writes a tree. The tree is walked without recursion, so it can be any depth.
+     * @param root the root node of the tree, which may be null
+     * @throws IOException if the stream cannot be written, or the tree contains a node of an unknown type
+     */
+    public void writeTree(MathObject root) throws IOException {
+        // Nodes to write, each followed by its parent in the tree
+        Stack nodes = new Stack();
+        nodes.push(null);
+        nodes.push(root);
+        while (nodes.empty() != true) {
+            MathObject node = (MathObject)nodes.pop();
+            MathObject treeParent = (MathObject)nodes.pop();
+            if (node == null) {
+                out.write(NULL);
+            } else {
+                int link = PARENT_OTHER;
+                if (node.getParent() == null) {
+                    link = PARENT_NONE;
+                } else if (node.getParent() == treeParent) {
+                    link = PARENT_TREE;
+                }
+                writeNode(node, link);
+                if (link == PARENT_OTHER) {
+                    writeNode(node.getParent(), PARENT_NONE);
+                }
+                int i = node.getChildCount()-1;
+                while (i >= 0) {
+                    nodes.push(node);
+                    nodes.push(node.getChildAt(i));
+                    i--;
+                }
+            }
+        }
+    }
+
+    /** Writes any data buffered in the stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /** Closes the stream
+     * @throws IOException if the stream cannot be closed
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /** Writes a tree to an array of bytes
+     * @param root the root node of the tree
+     * @return The tree in the binary format
+     * @throws IOException if the tree contains a node of an unknown type
+     */
+    public static byte[] toBytes(MathObject root) throws IOException {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        TreeWriter writer = new TreeWriter(bytes);
+        writer.writeTree(root);
+        return bytes.toByteArray();
+    }
+
+    // Writes a node without its children
+    private void writeNode(MathObject node, int link) throws IOException {
+        Class type = node.getClass();
+        if (type == RealNumber.class) {
+            double value = ((RealNumber)node).getValue();
+            long whole = (long)value;
+            // Negative zero is kept as a double, as it is not equal to 0 in the tree
+            if (whole == value && whole >= -(1L << 53) && whole <= (1L << 53)
+                    && Double.doubleToLongBits(value) != Double.doubleToLongBits(-0.0)) {
+                writeKind(INTEGER, link);
+                writeLong((whole << 1) ^ (whole >> 63));
+            } else {
+                writeKind(REAL_NUMBER, link);
+                long bits = Double.doubleToLongBits(value);
+                int i = 56;
+                while (i >= 0) {
+                    out.write((int)(bits >>> i));
+                    i = i - 8;
+                }
+            }
+        } else if (type == Text.class) {
+            writeKind(TEXT, link);
+            writeString(((Text)node).getText());
+        } else if (type == Variable.class) {
+            writeKind(VARIABLE, link);
+            writeString(node.getName());
+            writeInt(((Variable)node).getVarName());
+        } else {
+            if (type == BinaryOperator.class) {
+                writeKind(BINARY_OPERATOR, link);
+            } else if (type == NaryOperator.class) {
+                writeKind(NARY_OPERATOR, link);
+            } else if (type == Function.class) {
+                writeKind(FUNCTION, link);
+            } else if (type == Grouping.class) {
+                writeKind(GROUPING, link);
+            } else if (type == NaryFunction.class) {
+                writeKind(NARY_FUNCTION, link);
+            } else if (type == Matrix.class) {
+                writeKind(MATRIX, link);
+            } else if (type == MathObject.class) {
+                writeKind(MATH_OBJECT, link);
+            } else {
+                throw new IOException("Cannot write node of type " + type.getName());
+            }
+            writeInt((node.getID() << 1) ^ (node.getID() >> 31));
+            writeString(node.getName());
+            if (type == NaryOperator.class || type == NaryFunction.class) {
+                writeInt(node.getChildCount());
+            } else if (type == Matrix.class) {
+                writeInt(((Matrix)node).getM());
+                writeInt(((Matrix)node).getN());
+            }
+        }
+    }
+
+    private void writeKind(int kind, int link) throws IOException {
+        out.write(kind | (link << 4));
+    }
+
+    private void writeString(String string) throws IOException {
+        if (string == null) {
+            writeInt(STRING_NULL);
+            return;
+        }
+        Integer index = (Integer)strings.get(string);
+        if (index != null) {
+            writeInt(index.intValue() + 2);
+            return;
+        }
+        strings.put(string, Integer.valueOf(strings.size()));
+        writeInt(STRING_NEW);
+        byte[] bytes = string.getBytes("UTF-8");
+        writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Writes a number that is not negative in 7 bit groups, lowest first, with the top bit set on all but the last byte
+    private void writeInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value = value >>> 7;
+        }
+        out.write(value);
+    }
+
+    private void writeLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int)(value & 0x7F) | 0x80);
+            value = value >>> 7;
+        }
+        out.write((int)value);
+    }
+}
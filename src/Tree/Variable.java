@@ -27,6 +27,8 @@ package Tree;
  */
 public class Variable extends MathObject {
     
+    private static final long serialVersionUID = 2581336686675467896L;
+    
     private char varName;
     
     /** Creates a new instance of Variable
@@ -44,4 +46,24 @@ public class Variable extends MathObject {
         return varName;
     }
     
-}
\ No newline at end of file
+    int nodeHashCode() {
+        return 31*super.nodeHashCode() + varName;
+    }
+    
+    boolean nodeEquals(MathObject other) {
+        return super.nodeEquals(other) && varName == ((Variable)other).varName;
+    }
+    
+    MathObject copyNode() {
+        return new Variable(varName, getName());
+    }
+    
+    /** Calls the <code>visit</code> method of the visitor for this type of node
+     * @param visitor the visitor to accept
+     * @param data data passed on to the visitor
+     * @return The value returned by the visitor
+     */
+    public Object accept(MathObjectVisitor visitor, Object data) {
+        return visitor.visit(this, data);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+Copyright (C) 2010 Alex Billingsley, email@alexbillingsley.co.uk
+www.dragmath.bham.ac.uk
+
+ This file is part of DragMath.
+
+    DragMath is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    DragMath is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with DragMath. If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package Tree;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks that the single pass <code>BuildTree.validateBeforeParsing</code> gives the same text as
+ * the three passes it replaced, which are kept here as <code>threePass</code>.
+ * @author Alex Billingsley
+ */
+public class ValidateBeforeParsingTest {
+
+    /** Expressions and the text expected from them */
+    private static final String[][] CASES = {
+        { "", "" },
+        { "x", "x" },
+        { "x+1", "x+1" },
+        // infinity
+        { "\u221e", "Infinity" },
+        { "-\u221e", "-Infinity" },
+        { "x/\u221e", "x/Infinity" },
+        { "\u221ex", "Infinity*x" },
+        { "\u221e2", "Infinity*2" },
+        { "\u221e\u221e", "Infinity*Infinity" },
+        { "\u221e+1", "Infinity+1" },
+        // '*' after non-ascii characters
+        { "\u03c0", "\u03c0" },
+        { "\u03c0r", "\u03c0*r" },
+        { "2\u03c0r", "2\u03c0*r" },
+        { "\u03b1\u03b2", "\u03b1*\u03b2" },
+        { "\u03b1\u03b2\u03b3", "\u03b1*\u03b2*\u03b3" },
+        { "\u03b81", "\u03b8*1" },
+        { "\u03b8+1", "\u03b8+1" },
+        { "\u03b8(x)", "\u03b8(x)" },
+        { "sin(\u03b8)x", "sin(\u03b8)x" },
+        { "x\u03c0", "x\u03c0" },
+        // '=' to '=='
+        { "x=1", "x==1" },
+        { "x==1", "x==1" },
+        { "x<=1", "x<=1" },
+        { "x>=1", "x>=1" },
+        { "x!=1", "x!==1" },
+        { "x===1", "x===1" },
+        { "=x", "=x" },
+        { "x=", "x=" },
+        { "=", "=" },
+        { "a=b=c", "a==b==c" },
+        { "\u03b1=\u03b2", "\u03b1==\u03b2" },
+        { "x=\u221e", "x==Infinity" },
+        { "\u221e=x", "Infinity==x" },
+        // together
+        { "\u03c0r=\u221e\u03b8", "\u03c0*r==Infinity*\u03b8" },
+        { "2\u03c0\u03c1=\u03b1<=\u03b2", "2\u03c0*\u03c1==\u03b1<=\u03b2" },
+    };
+
+    /** Characters combined into every short expression by <code>allShortExpressions</code> */
+    private static final String ALPHABET = "x1=<>!+(\u03c0\u03b1\u221e";
+
+    @Test
+    public void expectedText() {
+        int i = 0;
+        while (i < CASES.length) {
+            assertEquals(CASES[i][0], CASES[i][1], BuildTree.validateBeforeParsing(CASES[i][0]));
+            assertEquals(CASES[i][0], CASES[i][1], threePass(CASES[i][0]));
+            i++;
+        }
+    }
+
+    @Test
+    public void allShortExpressions() {
+        int base = ALPHABET.length();
+        int length = 1;
+        while (length <= 4) {
+            int count = (int)Math.pow(base, length);
+            int n = 0;
+            while (n < count) {
+                StringBuilder text = new StringBuilder(length);
+                int digits = n;
+                int j = 0;
+                while (j < length) {
+                    text.append(ALPHABET.charAt(digits % base));
+                    digits = digits / base;
+                    j++;
+                }
+                String expression = text.toString();
+                assertEquals(expression, threePass(expression), BuildTree.validateBeforeParsing(expression));
+                n++;
+            }
+            length++;
+        }
+    }
+
+    /** The version of <code>validateBeforeParsing</code> that read the text three times */
+    private static String threePass(String theText) {
+        int i=0;
+        while (i < theText.length()) {
+            int ascii_value = (int)theText.charAt(i);
+            // if character not ascii, then will be greek letter
+            if (ascii_value > 127 && i < theText.length()-1) {
+                int nextChar = theText.charAt(i+1);
+                // if next character is letter, digit or greek letter
+                if (Character.isLetterOrDigit(theText.charAt(i+1)) || nextChar > 127) {
+                    String left = theText.substring(0, i+1);
+                    String right = theText.substring(i+1, theText.length());
+                    theText = left + "*" + right;
+                }
+            }
+            i++;
+        }
+
+        i=0;
+        while (i < theText.length()) {
+            char token = theText.charAt(i);
+            char infinity = '\u221e';
+            // if character is '=' change to '=='
+            if (token == '='
+                    && i > 0
+                    && i < theText.length() - 1
+                    && theText.charAt(i-1) != '='
+                    && theText.charAt(i+1) != '='
+                    && theText.charAt(i-1) != '<'
+                    && theText.charAt(i-1) != '>') {
+                theText = theText.substring(0, i+1) + "=" + theText.substring(i+1, theText.length());
+                i++;
+            }
+            if (token == infinity) {
+                theText = theText.substring(0, i) + "Infinity" + theText.substring(i+1, theText.length());
+            }
+            i++;
+        }
+        return theText;
+    }
+}
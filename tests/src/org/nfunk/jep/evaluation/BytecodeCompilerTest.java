@@ -0,0 +1,193 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+
+package org.nfunk.jep.evaluation;
+
+import static org.junit.Assert.*;
+import static org.nfunk.jep.evaluation.TestExpressions.*;
+
+import java.util.Stack;
+import org.junit.Test;
+import org.nfunk.jep.*;
+import org.nfunk.jep.function.*;
+
+/**
+ * Checks that compiled expressions give the values of JEP.evaluate, whether
+ * they run the generated code, fall back to the RealEvaluator at points where
+ * they are not real, or are not compiled at all.
+ */
+public class BytecodeCompilerTest {
+	/** More variables and constants than fit in a byte of an instruction */
+	private static final int MANY = 200;
+
+	@Test
+	public void randomExpressions() throws ParseException {
+		JEP jep = createParser();
+		TestExpressions expressions = new TestExpressions(11);
+		String[] names = {"x", "y"};
+		double[] point = new double[2];
+		int compiled = 0;
+		int e = 0;
+		while (e < 1000) {
+			Node node = jep.parse(expressions.next(4));
+			CompiledExpression expression = BytecodeCompiler.compile(node,jep.getSymbolTable());
+			if (expression.isCompiled()) compiled++;
+			int k = 0;
+			while (k < 10) {
+				point[0] = expressions.nextValue();
+				point[1] = expressions.nextValue();
+				check(jep,node,expression,names,point);
+				k++;
+			}
+			e++;
+		}
+		assertTrue("compiled " + compiled,compiled > 500);
+	}
+
+	@Test
+	public void notRealPointsFallBack() throws ParseException {
+		JEP jep = createParser();
+		String[] expressions = {"sqrt(x)", "sqrt(x)^2", "x^0.5", "x^y", "ln(x)+log(y)", "atan2(sqrt(x),y)"};
+		String[] names = {"x", "y"};
+		double[][] points = {{-4, 2}, {4, -2}, {-8, 1.0/3}, {2, 3}};
+		int e = 0;
+		while (e < expressions.length) {
+			Node node = jep.parse(expressions[e]);
+			CompiledExpression expression = BytecodeCompiler.compile(node,jep.getSymbolTable());
+			assertTrue(expressions[e],expression.isCompiled());
+			int k = 0;
+			while (k < points.length) {
+				check(jep,node,expression,names,points[k]);
+				k++;
+			}
+			e++;
+		}
+	}
+
+	@Test
+	public void interpretedExpressions() throws ParseException {
+		JEP jep = createParser();
+		jep.addComplex();
+		String[] expressions = {"sum(x,y,2)", "x*i+y", "re(x*i*i)"};
+		String[] names = {"x", "y"};
+		double[] point = {1.5, -2};
+		int e = 0;
+		while (e < expressions.length) {
+			Node node = jep.parse(expressions[e]);
+			CompiledExpression expression = BytecodeCompiler.compile(node,jep.getSymbolTable());
+			assertFalse(expressions[e],expression.isCompiled());
+			check(jep,node,expression,names,point);
+			e++;
+		}
+	}
+
+	@Test
+	public void manyVariablesAndConstants() throws ParseException {
+		JEP jep = createParser();
+		jep.addFunction("weighted",new Weighted());
+		String[] names = new String[MANY];
+		StringBuilder sum = new StringBuilder();
+		StringBuilder call = new StringBuilder("weighted(");
+		int i = 0;
+		while (i < MANY) {
+			names[i] = "x" + i;
+			if (i > 0) {
+				sum.append('+');
+				call.append(',');
+			}
+			// a different constant for each variable
+			sum.append(i + 0.25).append('*').append(names[i]);
+			call.append(names[i]);
+			i++;
+		}
+		call.append(')');
+
+		double[] point = new double[MANY];
+		i = 0;
+		while (i < MANY) {
+			point[i] = (i % 7) - 3.5;
+			i++;
+		}
+		String[] expressions = {sum.toString(), call.toString(), "sqrt(" + call + ")"};
+		int e = 0;
+		while (e < expressions.length) {
+			Node node = jep.parse(expressions[e]);
+			CompiledExpression expression = BytecodeCompiler.compile(node,jep.getSymbolTable());
+			assertTrue("expression " + e + " compiled",expression.isCompiled());
+			assertEquals("variables",MANY,expression.getVariables().length);
+			check(jep,node,expression,names,point);
+			e++;
+		}
+	}
+
+	/**
+	 * Compares eval(double[]) with JEP.evaluate at a point.
+	 */
+	private static void check(JEP jep,Node node,CompiledExpression expression,String[] names,double[] point) {
+		double[] vars = new double[expression.getVariables().length];
+		StringBuilder message = new StringBuilder();
+		int i = 0;
+		while (i < names.length) {
+			jep.addVariable(names[i],point[i]);
+			int slot = expression.getSlot(names[i]);
+			if (slot >= 0) vars[slot] = point[i];
+			if (i < 2) message.append(' ').append(names[i]).append('=').append(point[i]);
+			i++;
+		}
+		Object expected;
+		try {
+			expected = jep.evaluate(node);
+		} catch (ParseException e) {
+			expected = e;
+		}
+		Object value;
+		try {
+			value = new Double(expression.eval(vars));
+		} catch (ParseException e) {
+			value = e;
+		}
+		if (expected instanceof ParseException) {
+			assertSameValue(message.toString(),expected,value);
+		} else {
+			assertTrue(message + " threw " + value,value instanceof Double);
+			assertSameValue(message.toString(),toDouble(expected),((Double)value).doubleValue());
+		}
+	}
+
+	/**
+	 * The sum of its arguments, each multiplied by its position, so that the
+	 * arguments must be passed in order.
+	 */
+	private static class Weighted extends PostfixMathCommand implements RealEvaluationI {
+		Weighted() {
+			numberOfParameters = -1;
+		}
+
+		public void run(Stack stack) throws ParseException {
+			checkStack(stack);
+			double[] args = new double[curNumberOfParameters];
+			int i = args.length - 1;
+			while (i >= 0) {
+				args[i] = ((Number)stack.pop()).doubleValue();
+				i--;
+			}
+			stack.push(new Double(evaluate(args,0,args.length)));
+		}
+
+		public double evaluate(double[] args,int first,int n) {
+			double sum = 0;
+			int i = 0;
+			while (i < n) {
+				sum += (i + 1) * args[first + i];
+				i++;
+			}
+			return sum;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+
+package org.nfunk.jep.evaluation;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.nfunk.jep.*;
+
+/**
+ * Checks the status the EquivalenceChecker gives for pairs of expressions, and
+ * that it does not change from one check to the next.
+ */
+public class EquivalenceCheckerTest {
+	/** Pairs of expressions which are equal wherever both are defined */
+	private static final String[][] EQUIVALENT = {
+		{"sin(x)^2+cos(x)^2", "1"},
+		{"(x+y)^2", "x^2+2x*y+y^2"},
+		{"(x^2-1)/(x-1)", "x+1"},
+		{"sqrt(x)^2", "x"},
+		{"exp(ln(x))", "x"},
+	};
+
+	/** Pairs of expressions which differ */
+	private static final String[][] NOT_EQUIVALENT = {
+		{"x", "x+1e-6"},
+		{"sqrt(x^2)", "x"},
+		{"x*y", "x+y"},
+		{"sin(x)", "sin(y)"},
+	};
+
+	@Test
+	public void equivalentPairs() throws ParseException {
+		int p = 0;
+		while (p < EQUIVALENT.length) {
+			EquivalenceChecker checker = new EquivalenceChecker(EQUIVALENT[p][0],EQUIVALENT[p][1]);
+			EquivalenceChecker.Result result = checker.check();
+			String message = EQUIVALENT[p][0] + " = " + EQUIVALENT[p][1];
+			assertEquals(message,EquivalenceChecker.EQUIVALENT,result.getStatus());
+			assertTrue(message,result.isEquivalent());
+			assertEquals(message,0,result.getMismatches());
+			assertNull(message,result.getCounterexample());
+			p++;
+		}
+	}
+
+	@Test
+	public void notEquivalentPairs() throws ParseException {
+		int p = 0;
+		while (p < NOT_EQUIVALENT.length) {
+			EquivalenceChecker checker = new EquivalenceChecker(NOT_EQUIVALENT[p][0],NOT_EQUIVALENT[p][1]);
+			EquivalenceChecker.Result result = checker.check();
+			String message = NOT_EQUIVALENT[p][0] + " != " + NOT_EQUIVALENT[p][1];
+			assertEquals(message,EquivalenceChecker.NOT_EQUIVALENT,result.getStatus());
+			assertFalse(message,result.isEquivalent());
+			assertTrue(message,result.getMismatches() > 0);
+			assertEquals(message,checker.getVariableNames().length,result.getCounterexample().length);
+			p++;
+		}
+	}
+
+	@Test
+	public void undetermined() throws ParseException {
+		// infinite everywhere, so no point is valid
+		EquivalenceChecker checker = new EquivalenceChecker("x/0","2x/0");
+		EquivalenceChecker.Result result = checker.check();
+		assertEquals(EquivalenceChecker.UNDETERMINED,result.getStatus());
+		assertEquals(0,result.getValid());
+
+		// defined at fewer points than needed
+		checker = new EquivalenceChecker("1/(x-y)","-1/(y-x)");
+		checker.setSamples(20);
+		result = checker.check();
+		assertEquals(EquivalenceChecker.UNDETERMINED,result.getStatus());
+		assertEquals(20,result.getValid());
+		assertNull(result.getCounterexample());
+	}
+
+	@Test
+	public void logarithmOfProduct() throws ParseException {
+		// the same unless x and y are both negative, when they differ by 2*pi*i
+		EquivalenceChecker checker = new EquivalenceChecker("ln(x*y)","ln(x)+ln(y)");
+		checker.setEarlyExit(false);
+		EquivalenceChecker.Result result = checker.check();
+		assertEquals(EquivalenceChecker.NOT_EQUIVALENT,result.getStatus());
+		assertEquals(100,result.getEvaluated());
+		double[] counterexample = result.getCounterexample();
+		assertTrue(counterexample[0] < 0);
+		assertTrue(counterexample[1] < 0);
+
+		// with both positive they are equal
+		checker.setRange(0.1,10);
+		assertEquals(EquivalenceChecker.EQUIVALENT,checker.check().getStatus());
+	}
+
+	@Test
+	public void sameSeedSameResult() throws ParseException {
+		String[][] pairs = {EQUIVALENT[1], NOT_EQUIVALENT[1], {"ln(x*y)", "ln(x)+ln(y)"}, {"1/(x-y)", "-1/(y-x)"}};
+		ForkJoinPool single = new ForkJoinPool(1);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			int p = 0;
+			while (p < pairs.length) {
+				EquivalenceChecker checker = new EquivalenceChecker(pairs[p][0],pairs[p][1]);
+				checker.setSamples(1000);
+				checker.setMinimumValid(600);
+				checker.setEarlyExit(false);
+				checker.setSeed(p);
+				EquivalenceChecker.Result first = checker.check(single);
+				int run = 0;
+				while (run < 10) {
+					String message = pairs[p][0] + ", " + pairs[p][1] + " run " + run;
+					EquivalenceChecker.Result result = checker.check(run % 2 == 0 ? pool : ForkJoinPool.commonPool());
+					assertEquals(message,first.getStatus(),result.getStatus());
+					assertEquals(message,first.getEvaluated(),result.getEvaluated());
+					assertEquals(message,first.getValid(),result.getValid());
+					assertEquals(message,first.getMismatches(),result.getMismatches());
+					assertEquals(message,Arrays.toString(first.getCounterexample()),
+							Arrays.toString(result.getCounterexample()));
+					run++;
+				}
+				p++;
+			}
+		} finally {
+			single.shutdown();
+			pool.shutdown();
+		}
+	}
+}
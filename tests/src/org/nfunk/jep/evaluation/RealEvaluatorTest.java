@@ -0,0 +1,188 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+
+package org.nfunk.jep.evaluation;
+
+import static org.junit.Assert.*;
+import static org.nfunk.jep.evaluation.TestExpressions.*;
+
+import org.junit.Test;
+import org.nfunk.jep.*;
+import org.nfunk.jep.type.*;
+
+/**
+ * Checks that the RealEvaluator gives the values of JEP.evaluate, in particular
+ * where the real program returns NaN and the EvaluatorVisitor is used instead.
+ */
+public class RealEvaluatorTest {
+	/** Expressions of x and y which are not real at some of the points */
+	private static final String[] EXPRESSIONS = {
+		"sqrt(x)", "sqrt(x*y)+1", "sqrt(x)^2", "abs(sqrt(x))",
+		"ln(x)", "ln(x)-ln(y)", "log(x)", "log(x*y)/2",
+		"x^0.5", "x^(1/3)", "x^y", "(-8)^(1/3)", "(x-y)^2.5", "x^2",
+		// added and multiplied from left to right
+		"x+y+1", "1+x+y", "x+y-x", "x*y*1e-300", "x*1e-300*y", "x*y/y",
+	};
+
+	/** Points (x, y), negative for the roots and logarithms, or large so the order of additions matters */
+	private static final double[][] POINTS = {
+		{2.5, 3}, {-4, 2}, {4, -2}, {-1, -1}, {-8, 0.5}, {0, -3}, {-0.0, -2},
+		{1e16, -1e16}, {1e300, 1e10}, {-1e300, 1e10},
+	};
+
+	@Test
+	public void knownExpressions() throws ParseException {
+		JEP jep = createParser();
+		int e = 0;
+		while (e < EXPRESSIONS.length) {
+			check(jep,EXPRESSIONS[e],POINTS);
+			e++;
+		}
+	}
+
+	@Test
+	public void randomExpressions() throws ParseException {
+		JEP jep = createParser();
+		TestExpressions expressions = new TestExpressions(7);
+		double[][] points = new double[10][2];
+		int e = 0;
+		while (e < 500) {
+			int k = 0;
+			while (k < points.length) {
+				points[k][0] = expressions.nextValue();
+				points[k][1] = expressions.nextValue();
+				k++;
+			}
+			check(jep,expressions.next(4),points);
+			e++;
+		}
+	}
+
+	@Test
+	public void notRealFallsBack() throws ParseException {
+		JEP jep = createParser();
+		RealEvaluator evaluator = new RealEvaluator(jep.parse("sqrt(x)"),jep.getSymbolTable());
+		assertTrue(evaluator.isReal());
+		double[] values = {-4};
+		assertTrue(Double.isNaN(evaluator.evaluate(values)));
+		Object value = evaluator.getValue(values);
+		assertTrue(value instanceof Complex);
+		assertSameValue("sqrt(-4)",2.0,((Complex)value).im());
+
+		evaluator = new RealEvaluator(jep.parse("x+y+1"),jep.getSymbolTable());
+		values = new double[2];
+		values[evaluator.getSlot("x")] = 1e16;
+		values[evaluator.getSlot("y")] = -1e16;
+		assertSameValue("x+y+1",1.0,evaluator.evaluate(values));
+	}
+
+	@Test
+	public void blocksMatchPoints() throws ParseException {
+		JEP jep = createParser();
+		TestExpressions expressions = new TestExpressions(13);
+		int e = 0;
+		while (e < EXPRESSIONS.length) {
+			RealEvaluator evaluator = new RealEvaluator(jep.parse(EXPRESSIONS[e]),jep.getSymbolTable());
+			assertTrue(EXPRESSIONS[e],evaluator.isReal());
+			checkBlocks(evaluator,EXPRESSIONS[e],expressions);
+			e++;
+		}
+	}
+
+	@Test
+	public void notRealBlocksFallBack() throws ParseException {
+		JEP jep = createParser();
+		jep.addComplex();
+		TestExpressions expressions = new TestExpressions(17);
+		String[] notReal = {"re(x*i*i)+y", "abs(x+y*i)", "sum(x,y,2)"};
+		int e = 0;
+		while (e < notReal.length) {
+			RealEvaluator evaluator = new RealEvaluator(jep.parse(notReal[e]),jep.getSymbolTable());
+			assertFalse(notReal[e],evaluator.isReal());
+			checkBlocks(evaluator,notReal[e],expressions);
+			e++;
+		}
+	}
+
+	/**
+	 * Compares evaluate(double[][], int) with evaluate(double[]) for numbers of points
+	 * which fill no block, one block, or end part way through a block.
+	 */
+	private static void checkBlocks(RealEvaluator evaluator,String expression,TestExpressions expressions)
+			throws ParseException {
+		int[] sizes = {0, 1, 255, 256, 257, 700};
+		int xSlot = evaluator.getSlot("x");
+		int ySlot = evaluator.getSlot("y");
+		double[] values = new double[evaluator.getVariables().length];
+		int s = 0;
+		while (s < sizes.length) {
+			int n = sizes[s];
+			// longer than n, so the points after n must be left alone
+			double[][] columns = new double[values.length][n + 3];
+			int i = 0;
+			while (i < values.length) {
+				int k = 0;
+				while (k < columns[i].length) {
+					columns[i][k] = expressions.nextValue();
+					k++;
+				}
+				i++;
+			}
+			double[] results = evaluator.evaluate(columns,n);
+			assertEquals(expression + " points",n,results.length);
+			int k = 0;
+			while (k < n) {
+				i = 0;
+				while (i < values.length) {
+					values[i] = columns[i][k];
+					i++;
+				}
+				String message = expression + " at point " + k + " of " + n;
+				if (xSlot >= 0) message += " x=" + values[xSlot];
+				if (ySlot >= 0) message += " y=" + values[ySlot];
+				assertSameValue(message,evaluator.evaluate(values),results[k]);
+				k++;
+			}
+			s++;
+		}
+	}
+
+	/**
+	 * Compares evaluate(double[]) and getValue(double[]) with JEP.evaluate at each point.
+	 */
+	private static void check(JEP jep,String expression,double[][] points) throws ParseException {
+		Node node = jep.parse(expression);
+		RealEvaluator evaluator = new RealEvaluator(node,jep.getSymbolTable());
+		int xSlot = evaluator.getSlot("x");
+		int ySlot = evaluator.getSlot("y");
+		double[] values = new double[evaluator.getVariables().length];
+		int k = 0;
+		while (k < points.length) {
+			double x = points[k][0];
+			double y = points[k][1];
+			if (xSlot >= 0) values[xSlot] = x;
+			if (ySlot >= 0) values[ySlot] = y;
+			String message = expression + " at x=" + x + " y=" + y;
+
+			Object value;
+			try {
+				value = evaluator.getValue(values);
+			} catch (ParseException e) {
+				value = e;
+			}
+			Object expected = evaluate(jep,node,x,y);
+			assertSameValue(message,expected,value);
+
+			if (!(expected instanceof ParseException)) {
+				assertSameValue(message,toDouble(expected),evaluator.evaluate(values));
+			}
+			k++;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*****************************************************************************
+
+ JEP 2.4.1, Extensions 1.1.1
+      April 30 2007
+      (c) Copyright 2007, Nathan Funk and Richard Morris
+      See LICENSE-*.txt for license information.
+
+*****************************************************************************/
+
+package org.nfunk.jep.evaluation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.nfunk.jep.*;
+import org.nfunk.jep.type.*;
+
+/**
+ * Parsers, random expressions and comparisons of values shared by the tests
+ * of the evaluators.
+ */
+class TestExpressions {
+	private static final String[] FUNCTIONS = {"sin","cos","tan","asin","acos","atan",
+		"sinh","cosh","tanh","log","ln","exp","sqrt","abs","floor","ceil","round"};
+
+	private Random random;
+
+	/**
+	 * Creates a generator of random expressions of x and y.
+	 * @param seed the seed, so the expressions are the same on each run
+	 */
+	TestExpressions(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * Creates a parser with the standard functions and constants, which allows
+	 * undeclared variables and implicit multiplication.
+	 */
+	static JEP createParser() {
+		JEP jep = new JEP();
+		jep.addStandardFunctions();
+		jep.addStandardConstants();
+		jep.setAllowUndeclared(true);
+		jep.setImplicitMul(true);
+		return jep;
+	}
+
+	/**
+	 * Returns a random expression of x and y, nested up to depth times.
+	 */
+	String next(int depth) {
+		if (depth == 0 || random.nextInt(4) == 0) {
+			switch (random.nextInt(5)) {
+				case 0: return "x";
+				case 1: return "y";
+				case 2: return "pi";
+				case 3: return String.valueOf(random.nextInt(7) - 2);
+				default: return String.valueOf(random.nextInt(9) / 4.0);
+			}
+		}
+		switch (random.nextInt(10)) {
+			case 0: return "(" + next(depth-1) + "+" + next(depth-1) + "+" + next(depth-1) + ")";
+			case 1: return "(" + next(depth-1) + "-" + next(depth-1) + ")";
+			case 2: return "(" + next(depth-1) + "*" + next(depth-1) + "*" + next(depth-1) + ")";
+			case 3: return "(" + next(depth-1) + "/" + next(depth-1) + ")";
+			case 4: return "(" + next(depth-1) + ")^(" + next(depth-1) + ")";
+			case 5: return "-(" + next(depth-1) + ")";
+			case 6: return "(" + next(depth-1) + "%" + next(depth-1) + ")";
+			case 7: return "atan2(" + next(depth-1) + "," + next(depth-1) + ")";
+			case 8: return "round(" + next(depth-1) + "," + random.nextInt(3) + ")";
+			default: return FUNCTIONS[random.nextInt(FUNCTIONS.length)] + "(" + next(depth-1) + ")";
+		}
+	}
+
+	/**
+	 * Returns a random value for a variable, a whole negative number one time in five
+	 * so that powers and roots are often not real.
+	 */
+	double nextValue() {
+		if (random.nextInt(5) == 0) {
+			return -random.nextInt(3);
+		}
+		return random.nextGaussian() * 3;
+	}
+
+	/**
+	 * Evaluates an expression with JEP, with x and y set to the values given.
+	 * @return the value, or the ParseException thrown
+	 */
+	static Object evaluate(JEP jep,Node node,double x,double y) {
+		jep.addVariable("x",x);
+		jep.addVariable("y",y);
+		try {
+			return jep.evaluate(node);
+		} catch (ParseException e) {
+			return e;
+		}
+	}
+
+	/**
+	 * Returns the double value JEP gives for a value, NaN if it is not real.
+	 */
+	static double toDouble(Object value) {
+		if (value instanceof Complex) {
+			Complex c = (Complex)value;
+			if (c.im() != 0.0) return Double.NaN;
+			return c.re();
+		}
+		if (value instanceof Number) {
+			return ((Number)value).doubleValue();
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Checks that two values are the same, comparing doubles bit for bit.
+	 */
+	static void assertSameValue(String message,Object expected,Object actual) {
+		if (expected instanceof ParseException || actual instanceof ParseException) {
+			assertEquals(message,String.valueOf(expected),String.valueOf(actual));
+		} else if (expected instanceof Double && actual instanceof Double) {
+			assertSameValue(message,((Double)expected).doubleValue(),((Double)actual).doubleValue());
+		} else if (expected instanceof Complex && actual instanceof Complex) {
+			assertSameValue(message + " re",((Complex)expected).re(),((Complex)actual).re());
+			assertSameValue(message + " im",((Complex)expected).im(),((Complex)actual).im());
+		} else {
+			assertEquals(message,expected,actual);
+		}
+	}
+
+	/**
+	 * Checks that two doubles are the same bit for bit, apart from the bits of NaN.
+	 */
+	static void assertSameValue(String message,double expected,double actual) {
+		if (expected != expected && actual != actual) return;
+		assertEquals(message + ": expected " + expected + " got " + actual,
+				Double.doubleToLongBits(expected),Double.doubleToLongBits(actual));
+	}
+}